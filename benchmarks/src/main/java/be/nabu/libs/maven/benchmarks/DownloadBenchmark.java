@@ -0,0 +1,80 @@
+/*
+* Copyright (C) 2016 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package be.nabu.libs.maven.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures complete requests through the listener: artifacts, poms and checksums.
+ * The response is drained completely so the cost of streaming the content is included.
+ */
+@BenchmarkMode({ Mode.AverageTime, Mode.Throughput })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DownloadBenchmark {
+	
+	@State(Scope.Thread)
+	public static class Chunk {
+		public byte [] bytes = new byte[64 * 1024];
+	}
+	
+	@Benchmark
+	public long artifact(RepositoryState state, Chunk chunk) throws IOException {
+		return RepositoryState.drain(state.listener.handle(RepositoryState.get("/" + state.synthetic.getPath(state.next(), "jar"))), chunk.bytes);
+	}
+	
+	@Benchmark
+	@Threads(4)
+	public long artifactConcurrent(RepositoryState state, Chunk chunk) throws IOException {
+		return RepositoryState.drain(state.listener.handle(RepositoryState.get("/" + state.synthetic.getPath(state.next(), "jar"))), chunk.bytes);
+	}
+	
+	@Benchmark
+	public long pom(RepositoryState state, Chunk chunk) throws IOException {
+		return RepositoryState.drain(state.listener.handle(RepositoryState.get("/" + state.synthetic.getPath(state.next(), "pom"))), chunk.bytes);
+	}
+	
+	@Benchmark
+	public long pomGzip(RepositoryState state, Chunk chunk) throws IOException {
+		return RepositoryState.drain(state.listener.handle(RepositoryState.getGzip("/" + state.synthetic.getPath(state.next(), "pom"))), chunk.bytes);
+	}
+	
+	@Benchmark
+	public long checksum(RepositoryState state, Chunk chunk) throws IOException {
+		return RepositoryState.drain(state.listener.handle(RepositoryState.get("/" + state.synthetic.getPath(state.next(), "jar.sha1"))), chunk.bytes);
+	}
+	
+	@Benchmark
+	public long listing(RepositoryState state, Chunk chunk) throws IOException {
+		return RepositoryState.drain(state.listener.handle(RepositoryState.get("/" + state.synthetic.getGroupId(state.next()) + "/")), chunk.bytes);
+	}
+}
@@ -0,0 +1,414 @@
+/*
+* Copyright (C) 2016 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package be.nabu.libs.maven.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.Socket;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.stream.Stream;
+
+import be.nabu.libs.maven.MavenMetrics;
+import be.nabu.libs.maven.MavenServer;
+
+/**
+ * Starts a maven server in-process on a synthetic repository and replays the traffic of a number of build agents resolving (and occasionally deploying) at the same time.
+ * At the end the throughput and the p50, p99 and p999 latency is reported per route, the routes are the same as the ones in the server metrics.
+ * 
+ * Run it with: java -cp target/benchmarks.jar be.nabu.libs.maven.benchmarks.LoadTest --agents=50 --duration=60
+ * 
+ * - agents: the amount of concurrent clients (default 50)
+ * - duration: how long (in seconds) the traffic is measured (default 60)
+ * - warmup: how long (in seconds) traffic is sent before measuring starts (default 10)
+ * - size: the amount of artifacts in the synthetic repository (default 10000)
+ * - skew: how strongly requests favor popular artifacts, 1 is uniform (default 3)
+ * - mix: the relative weight of each operation (default metadata:20,checksum:30,pom:25,artifact:20,deploy:1)
+ * - port: the port of the server (default 18080)
+ * 
+ * A deploy uploads a jar, a pom, their checksums and the metadata like maven does.
+ * The server runs on a temporary copy of the synthetic repository which is removed afterwards, so nothing it writes (checksums, snapshots, deployed artifacts) affects the benchmarks.
+ * All other arguments are passed on to the server (see {@link MavenServer}), so settings like the download limiter or the event queue can be compared.
+ */
+public class LoadTest {
+	
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final String DEPLOY_GROUP = "be.nabu.loadtest";
+	
+	public enum Operation {
+		METADATA, CHECKSUM, POM, ARTIFACT, DEPLOY
+	}
+	
+	private SyntheticRepository synthetic;
+	private String base;
+	private int agents = 50, duration = 60, warmup = 10;
+	private double skew = 3;
+	private Map<Operation, Integer> mix = new EnumMap<Operation, Integer>(Operation.class);
+	
+	private volatile boolean measuring, stopped;
+	
+	public static void main(String...args) throws IOException, URISyntaxException, InterruptedException {
+		int size = getInteger(args, "size", 10000), port = getInteger(args, "port", 18080);
+		SyntheticRepository synthetic = SyntheticRepository.getInstance(size).copyTo(Files.createTempDirectory("maven-loadtest").toFile());
+		
+		List<String> serverArguments = new ArrayList<String>();
+		for (String argument : args) {
+			if (!argument.matches("--(agents|duration|warmup|size|skew|mix|port|root)=.*")) {
+				serverArguments.add(argument);
+			}
+		}
+		serverArguments.add("--port=" + port);
+		serverArguments.add("--root=" + synthetic.getRoot().toURI());
+		MavenServer server = startServer(serverArguments.toArray(new String[0]), port);
+		
+		LoadTest test = new LoadTest(synthetic, "http://localhost:" + port + "/");
+		test.agents = getInteger(args, "agents", test.agents);
+		test.duration = getInteger(args, "duration", test.duration);
+		test.warmup = getInteger(args, "warmup", test.warmup);
+		test.skew = Double.parseDouble(get(args, "skew", "" + test.skew));
+		test.setMix(get(args, "mix", "metadata:20,checksum:30,pom:25,artifact:20,deploy:1"));
+		try {
+			test.run().print(System.out, test.duration);
+		}
+		finally {
+			// the server must no longer write to the copy when it is removed
+			try {
+				server.stop();
+			}
+			finally {
+				test.cleanUp();
+			}
+		}
+		// the server threads are not daemons
+		System.exit(0);
+	}
+	
+	public LoadTest(SyntheticRepository synthetic, String base) {
+		this.synthetic = synthetic;
+		this.base = base;
+	}
+	
+	/**
+	 * The server may block on start, it runs in its own thread and we wait until it accepts connections
+	 */
+	private static MavenServer startServer(String [] arguments, int port) throws InterruptedException, IOException {
+		MavenServer server = new MavenServer(arguments);
+		Thread thread = new Thread(() -> {
+			try {
+				server.start();
+			}
+			catch (Exception e) {
+				e.printStackTrace();
+			}
+		}, "maven-server");
+		thread.setDaemon(true);
+		thread.start();
+		long timeout = System.currentTimeMillis() + 60000;
+		while (System.currentTimeMillis() < timeout) {
+			try {
+				new Socket("localhost", port).close();
+				return server;
+			}
+			catch (IOException e) {
+				Thread.sleep(100);
+			}
+		}
+		throw new IOException("The server did not start on port " + port);
+	}
+	
+	public void setMix(String value) {
+		mix.clear();
+		for (String part : value.split(",")) {
+			String [] pair = part.split(":");
+			mix.put(Operation.valueOf(pair[0].trim().toUpperCase()), Integer.parseInt(pair[1].trim()));
+		}
+	}
+	
+	public Results run() throws InterruptedException {
+		Results results = new Results();
+		List<Thread> threads = new ArrayList<Thread>();
+		CountDownLatch done = new CountDownLatch(agents);
+		for (int i = 0; i < agents; i++) {
+			Agent agent = new Agent(i);
+			results.agents.add(agent);
+			Thread thread = new Thread(() -> {
+				try {
+					agent.run();
+				}
+				finally {
+					done.countDown();
+				}
+			}, "agent-" + i);
+			thread.setDaemon(true);
+			threads.add(thread);
+		}
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		Thread.sleep(warmup * 1000l);
+		measuring = true;
+		Thread.sleep(duration * 1000l);
+		measuring = false;
+		stopped = true;
+		done.await();
+		return results;
+	}
+	
+	/**
+	 * Removes the copy of the synthetic repository the server ran on
+	 */
+	public void cleanUp() throws IOException {
+		File directory = synthetic.getRoot();
+		if (directory.exists()) {
+			try (Stream<Path> paths = Files.walk(directory.toPath())) {
+				paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+			}
+		}
+	}
+	
+	private class Agent implements Runnable {
+		
+		private int id, deploys;
+		private Random random;
+		private byte [] buffer = new byte[64 * 1024];
+		private Map<MavenMetrics.Route, Recorder> recorders = new EnumMap<MavenMetrics.Route, Recorder>(MavenMetrics.Route.class);
+		private long errors;
+		
+		Agent(int id) {
+			this.id = id;
+			this.random = new Random(id);
+		}
+		
+		@Override
+		public void run() {
+			int total = 0;
+			for (int weight : mix.values()) {
+				total += weight;
+			}
+			while (!stopped) {
+				int pick = random.nextInt(total);
+				Operation operation = null;
+				for (Map.Entry<Operation, Integer> entry : mix.entrySet()) {
+					pick -= entry.getValue();
+					if (pick < 0) {
+						operation = entry.getKey();
+						break;
+					}
+				}
+				try {
+					execute(operation);
+				}
+				catch (IOException e) {
+					if (measuring) {
+						errors++;
+					}
+				}
+			}
+		}
+		
+		// popular artifacts are requested more often, like a platform core that every build depends on
+		private int nextIndex() {
+			return (int) (synthetic.getSize() * Math.pow(random.nextDouble(), skew));
+		}
+		
+		private void execute(Operation operation) throws IOException {
+			int index = nextIndex();
+			switch (operation) {
+				case METADATA:
+					String path = synthetic.getPath(index, "jar");
+					request("GET", path.substring(0, path.lastIndexOf('/', path.lastIndexOf('/') - 1)) + "/maven-metadata.xml", null);
+				break;
+				case CHECKSUM:
+					request("GET", synthetic.getPath(index, random.nextBoolean() ? "jar.sha1" : "pom.sha1"), null);
+				break;
+				case POM:
+					request("GET", synthetic.getPath(index, "pom"), null);
+				break;
+				case ARTIFACT:
+					request("GET", synthetic.getPath(index, "jar"), null);
+				break;
+				case DEPLOY:
+					deploy();
+				break;
+			}
+		}
+		
+		private void deploy() throws IOException {
+			// agents deploy to a shared set of artifacts so they contend for the same metadata
+			String artifactId = "deploy-" + random.nextInt(10);
+			String version = id + "." + deploys++;
+			byte [] payload = new byte[16 * 1024];
+			random.nextBytes(payload);
+			byte [][] artifact = synthetic.createArtifact(DEPLOY_GROUP, artifactId, version, payload);
+			String path = DEPLOY_GROUP.replace('.', '/') + "/" + artifactId + "/" + version + "/" + artifactId + "-" + version;
+			request("PUT", path + ".jar", artifact[0]);
+			request("PUT", path + ".jar.sha1", sha1(artifact[0]));
+			request("PUT", path + ".pom", artifact[1]);
+			request("PUT", path + ".pom.sha1", sha1(artifact[1]));
+			String metadata = "<metadata><groupId>" + DEPLOY_GROUP + "</groupId><artifactId>" + artifactId + "</artifactId><versioning><latest>" + version + "</latest></versioning></metadata>";
+			request("PUT", DEPLOY_GROUP.replace('.', '/') + "/" + artifactId + "/maven-metadata.xml", metadata.getBytes(UTF8));
+		}
+		
+		private void request(String method, String path, byte [] content) throws IOException {
+			long started = System.nanoTime();
+			HttpURLConnection connection = (HttpURLConnection) new URL(base + path).openConnection();
+			connection.setRequestMethod(method);
+			connection.setConnectTimeout(10000);
+			connection.setReadTimeout(60000);
+			if (content != null) {
+				connection.setDoOutput(true);
+				connection.setFixedLengthStreamingMode(content.length);
+				try (OutputStream output = connection.getOutputStream()) {
+					output.write(content);
+				}
+			}
+			int code = connection.getResponseCode();
+			// the bytes that were transferred in either direction
+			long bytes = content == null ? 0 : content.length;
+			// the body is always read completely so the connection can be reused
+			try (InputStream input = code >= 400 ? connection.getErrorStream() : connection.getInputStream()) {
+				if (input != null) {
+					int read;
+					while ((read = input.read(buffer)) > 0) {
+						bytes += read;
+					}
+				}
+			}
+			if (measuring) {
+				MavenMetrics.Route route = MavenMetrics.Route.classify(method, path);
+				Recorder recorder = recorders.get(route);
+				if (recorder == null) {
+					recorder = new Recorder();
+					recorders.put(route, recorder);
+				}
+				recorder.record(System.nanoTime() - started, bytes, code >= 400);
+			}
+		}
+	}
+	
+	private static byte [] sha1(byte [] content) {
+		try {
+			StringBuilder builder = new StringBuilder();
+			for (byte single : MessageDigest.getInstance("SHA-1").digest(content)) {
+				builder.append(String.format("%02x", single & 0xff));
+			}
+			return builder.toString().getBytes(UTF8);
+		}
+		catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		}
+	}
+	
+	/**
+	 * The latencies of one route for one agent, they are only merged at the end so the agents never contend
+	 */
+	private static class Recorder {
+		private long [] latencies = new long[1024];
+		private int count;
+		private long bytes, errors;
+		
+		void record(long latency, long bytes, boolean error) {
+			if (count == latencies.length) {
+				latencies = Arrays.copyOf(latencies, count * 2);
+			}
+			latencies[count++] = latency;
+			this.bytes += bytes;
+			if (error) {
+				errors++;
+			}
+		}
+	}
+	
+	public static class Results {
+		private List<Agent> agents = new ArrayList<Agent>();
+		
+		public void print(java.io.PrintStream output, int duration) {
+			output.println(String.format(Locale.ROOT, "%-10s %10s %8s %10s %10s %10s %10s %10s %10s", "route", "requests", "errors", "req/s", "MB/s", "p50 ms", "p99 ms", "p999 ms", "max ms"));
+			long connectionErrors = 0;
+			for (Agent agent : agents) {
+				connectionErrors += agent.errors;
+			}
+			for (MavenMetrics.Route route : MavenMetrics.Route.values()) {
+				int count = 0;
+				long bytes = 0, errors = 0;
+				for (Agent agent : agents) {
+					Recorder recorder = agent.recorders.get(route);
+					if (recorder != null) {
+						count += recorder.count;
+						bytes += recorder.bytes;
+						errors += recorder.errors;
+					}
+				}
+				if (count == 0) {
+					continue;
+				}
+				long [] latencies = new long[count];
+				int offset = 0;
+				for (Agent agent : agents) {
+					Recorder recorder = agent.recorders.get(route);
+					if (recorder != null) {
+						System.arraycopy(recorder.latencies, 0, latencies, offset, recorder.count);
+						offset += recorder.count;
+					}
+				}
+				Arrays.sort(latencies);
+				output.println(String.format(Locale.ROOT, "%-10s %10d %8d %10.1f %10.2f %10.3f %10.3f %10.3f %10.3f", route.name().toLowerCase(), count, errors, 
+					count / (double) duration, bytes / 1024d / 1024d / duration, 
+					percentile(latencies, 0.5), percentile(latencies, 0.99), percentile(latencies, 0.999), latencies[latencies.length - 1] / 1000000d));
+			}
+			if (connectionErrors > 0) {
+				output.println("Requests that failed without a response: " + connectionErrors);
+			}
+		}
+		
+		private static double percentile(long [] sorted, double percentile) {
+			int index = (int) Math.ceil(percentile * sorted.length) - 1;
+			return sorted[Math.max(0, Math.min(sorted.length - 1, index))] / 1000000d;
+		}
+	}
+	
+	private static String get(String [] args, String name, String defaultValue) {
+		for (String argument : args) {
+			if (argument.startsWith("--" + name + "=")) {
+				return argument.substring(name.length() + 3);
+			}
+		}
+		return defaultValue;
+	}
+	
+	private static int getInteger(String [] args, String name, int defaultValue) {
+		return Integer.parseInt(get(args, name, "" + defaultValue));
+	}
+}
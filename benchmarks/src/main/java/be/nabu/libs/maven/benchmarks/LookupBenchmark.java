@@ -0,0 +1,69 @@
+/*
+* Copyright (C) 2016 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package be.nabu.libs.maven.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import be.nabu.libs.maven.api.Artifact;
+
+/**
+ * Measures the lookups that happen on every request against an indexed repository
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LookupBenchmark {
+	
+	@Benchmark
+	public Artifact getArtifact(RepositoryState state) throws IOException {
+		int index = state.next();
+		return state.repository.getArtifact(state.synthetic.getGroupId(index), state.synthetic.getArtifactId(index), state.synthetic.getVersion(index), false);
+	}
+	
+	@Benchmark
+	public Artifact getMissingArtifact(RepositoryState state) throws IOException {
+		int index = state.next();
+		return state.repository.getArtifact(state.synthetic.getGroupId(index), state.synthetic.getArtifactId(index), "0.0", false);
+	}
+	
+	@Benchmark
+	public Object getVersions(RepositoryState state) throws IOException {
+		int index = state.next();
+		return state.repository.getVersions(state.synthetic.getGroupId(index), state.synthetic.getArtifactId(index));
+	}
+	
+	/**
+	 * Runs every time the server checks whether the index is up to date
+	 */
+	@Benchmark
+	public RepositoryState refresh(RepositoryState state) throws IOException {
+		state.repository.refresh();
+		return state;
+	}
+}
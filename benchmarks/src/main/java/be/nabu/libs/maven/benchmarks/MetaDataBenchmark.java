@@ -0,0 +1,75 @@
+/*
+* Copyright (C) 2016 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package be.nabu.libs.maven.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import be.nabu.libs.maven.CachedContent;
+import be.nabu.libs.maven.CreateResourceRepositoryEvent;
+import be.nabu.libs.maven.api.Artifact;
+
+/**
+ * Measures the maven-metadata.xml, both from the cache and rendered from scratch, and the full request as seen by the listener
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MetaDataBenchmark {
+	
+	private static final byte [] CHUNK = new byte[8192];
+	
+	@Benchmark
+	public CachedContent cached(RepositoryState state) throws IOException {
+		int index = state.next();
+		return state.repository.getCachedMetaData(state.synthetic.getGroupId(index), state.synthetic.getArtifactId(index));
+	}
+	
+	/**
+	 * The create event is what invalidates the cached metadata after an upload, so this measures the first request after a deploy
+	 */
+	@Benchmark
+	public CachedContent rendered(RepositoryState state) throws IOException {
+		int index = state.next();
+		Artifact artifact = state.repository.getArtifact(state.synthetic.getGroupId(index), state.synthetic.getArtifactId(index), state.synthetic.getVersion(index), false);
+		state.repository.getInternalDispatcher().fire(new CreateResourceRepositoryEvent(artifact, false), state.repository);
+		return state.repository.getCachedMetaData(artifact.getGroupId(), artifact.getArtifactId());
+	}
+	
+	@Benchmark
+	public long request(RepositoryState state) throws IOException {
+		int index = state.next();
+		return RepositoryState.drain(state.listener.handle(RepositoryState.get("/" + state.synthetic.getPath(index, "jar").replaceAll("/[^/]+/[^/]+$", "") + "/maven-metadata.xml")), CHUNK);
+	}
+	
+	@Benchmark
+	public long requestGzip(RepositoryState state) throws IOException {
+		int index = state.next();
+		return RepositoryState.drain(state.listener.handle(RepositoryState.getGzip("/" + state.synthetic.getPath(index, "jar").replaceAll("/[^/]+/[^/]+$", "") + "/maven-metadata.xml")), CHUNK);
+	}
+}
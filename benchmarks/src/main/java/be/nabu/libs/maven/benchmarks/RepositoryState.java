@@ -0,0 +1,119 @@
+/*
+* Copyright (C) 2016 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package be.nabu.libs.maven.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import be.nabu.libs.http.api.HTTPRequest;
+import be.nabu.libs.http.api.HTTPResponse;
+import be.nabu.libs.http.core.DefaultHTTPRequest;
+import be.nabu.libs.maven.MavenListener;
+import be.nabu.libs.maven.ResourceRepository;
+import be.nabu.libs.resources.ResourceUtils;
+import be.nabu.utils.io.IOUtils;
+import be.nabu.utils.io.api.ByteBuffer;
+import be.nabu.utils.io.api.ReadableContainer;
+import be.nabu.utils.mime.api.ContentPart;
+import be.nabu.utils.mime.api.Header;
+import be.nabu.utils.mime.impl.MimeHeader;
+import be.nabu.utils.mime.impl.PlainMimeEmptyPart;
+
+/**
+ * A scanned repository of a given size with a listener in front of it.
+ * The repository does not persist its index and does not reconcile periodically so nothing but the benchmarked code touches the filesystem.
+ */
+@State(Scope.Benchmark)
+public class RepositoryState {
+	
+	@Param({ "100", "10000", "100000" })
+	public int size;
+	
+	public SyntheticRepository synthetic;
+	public ResourceRepository repository;
+	public MavenListener listener;
+	
+	// random artifacts to request, indexes are picked round robin so every invocation hits a different artifact
+	private int [] sample;
+	private AtomicInteger next = new AtomicInteger();
+	
+	@Setup(Level.Trial)
+	public void setUp() throws IOException, URISyntaxException {
+		synthetic = SyntheticRepository.getInstance(size);
+		repository = newRepository(synthetic);
+		repository.scan();
+		listener = new MavenListener(repository);
+		List<Integer> indexes = synthetic.getSample(1024, 42);
+		sample = new int[indexes.size()];
+		for (int i = 0; i < sample.length; i++) {
+			sample[i] = indexes.get(i);
+		}
+	}
+	
+	public static ResourceRepository newRepository(SyntheticRepository synthetic) throws IOException {
+		ResourceRepository repository = new ResourceRepository(ResourceUtils.mkdir(synthetic.getRoot().toURI(), null));
+		repository.setPersistIndex(false);
+		repository.setReconcileInterval(0);
+		return repository;
+	}
+	
+	/**
+	 * The next artifact index to use, the state is shared by all the benchmark threads
+	 */
+	public int next() {
+		return sample[next.getAndIncrement() & (sample.length - 1)];
+	}
+	
+	public static HTTPRequest get(String target, Header...headers) {
+		return new DefaultHTTPRequest("GET", target, new PlainMimeEmptyPart(null, headers));
+	}
+	
+	public static HTTPRequest getGzip(String target) {
+		return get(target, new MimeHeader("Accept-Encoding", "gzip"));
+	}
+	
+	/**
+	 * Reads the complete response the way the server would write it to the socket, returns the amount of bytes
+	 */
+	public static long drain(HTTPResponse response, byte [] chunk) throws IOException {
+		if (!(response.getContent() instanceof ContentPart)) {
+			return 0;
+		}
+		ReadableContainer<ByteBuffer> readable = ((ContentPart) response.getContent()).getReadable();
+		if (readable == null) {
+			return 0;
+		}
+		long total = 0;
+		try (InputStream input = IOUtils.toInputStream(readable)) {
+			int read;
+			while ((read = input.read(chunk)) > 0) {
+				total += read;
+			}
+		}
+		return total;
+	}
+}
@@ -0,0 +1,76 @@
+/*
+* Copyright (C) 2016 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package be.nabu.libs.maven.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import be.nabu.libs.maven.ResourceRepository;
+
+/**
+ * Measures a full scan of a repository that has not been indexed yet.
+ * A scan is expensive so each invocation is measured separately.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ScanBenchmark {
+	
+	@Param({ "100", "10000", "100000" })
+	public int size;
+	
+	// whether the coordinates are derived from the path or read from the archive
+	@Param({ "true", "false" })
+	public boolean lazy;
+	
+	private SyntheticRepository synthetic;
+	private ResourceRepository repository;
+	
+	@Setup(Level.Trial)
+	public void generate() throws IOException {
+		synthetic = SyntheticRepository.getInstance(size);
+	}
+	
+	@Setup(Level.Invocation)
+	public void setUp() throws IOException {
+		repository = RepositoryState.newRepository(synthetic);
+		repository.setLazy(lazy);
+	}
+	
+	@Benchmark
+	public ResourceRepository scan() throws IOException {
+		repository.scan();
+		return repository;
+	}
+}
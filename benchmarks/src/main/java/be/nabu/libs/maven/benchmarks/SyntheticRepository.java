@@ -0,0 +1,211 @@
+/*
+* Copyright (C) 2016 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package be.nabu.libs.maven.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Generates a repository layout on the filesystem with the given amount of artifacts.
+ * Each artifact has a jar (with pom.properties, pom.xml and a number of classes) and a pom that depends on a few earlier artifacts.
+ * The generation is deterministic so the same size always results in the same repository, a generated repository is reused if it is complete.
+ */
+public class SyntheticRepository {
+	
+	public static final String GROUP_PREFIX = "be.nabu.synthetic.g";
+	
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	
+	private File root;
+	private int size, versionsPerArtifact = 5, artifactsPerGroup = 100, classesPerArtifact = 20, dependenciesPerArtifact = 3;
+	// the size of the incompressible payload in each jar
+	private int payloadSize = 16 * 1024;
+	
+	public SyntheticRepository(File root, int size) {
+		this.root = root;
+		this.size = size;
+	}
+	
+	/**
+	 * Generates the repository in a shared temporary directory per size, an earlier generation is reused
+	 */
+	public static SyntheticRepository getInstance(int size) throws IOException {
+		File directory = new File(System.getProperty("benchmark.directory", new File(System.getProperty("java.io.tmpdir"), "maven-server-benchmarks").getAbsolutePath()), "repository-" + size);
+		SyntheticRepository repository = new SyntheticRepository(directory, size);
+		repository.generate();
+		return repository;
+	}
+	
+	public void generate() throws IOException {
+		File marker = new File(root, ".generated");
+		if (marker.exists()) {
+			return;
+		}
+		Random random = new Random(size);
+		byte [] payload = new byte[payloadSize];
+		for (int i = 0; i < size; i++) {
+			String groupId = getGroupId(i), artifactId = getArtifactId(i), version = getVersion(i);
+			File directory = new File(root, groupId.replace('.', '/') + "/" + artifactId + "/" + version);
+			if (!directory.exists() && !directory.mkdirs()) {
+				throw new IOException("Could not create: " + directory);
+			}
+			byte [] pom = getPom(i).getBytes(UTF8);
+			Files.write(new File(directory, artifactId + "-" + version + ".pom").toPath(), pom);
+			random.nextBytes(payload);
+			try (OutputStream output = new FileOutputStream(new File(directory, artifactId + "-" + version + ".jar"))) {
+				writeJar(output, groupId, artifactId, version, pom, payload);
+			}
+		}
+		Files.write(marker.toPath(), new byte[0]);
+	}
+	
+	/**
+	 * Copies the generated artifacts (and nothing a server added next to them) to the target so it can be modified without affecting later runs.
+	 * The files are hard linked if possible, a server never writes into an existing artifact.
+	 */
+	public SyntheticRepository copyTo(File target) throws IOException {
+		for (int i = 0; i < size; i++) {
+			for (String extension : new String[] { "pom", "jar" }) {
+				File source = new File(root, getPath(i, extension)), copy = new File(target, getPath(i, extension));
+				if (!copy.getParentFile().exists() && !copy.getParentFile().mkdirs()) {
+					throw new IOException("Could not create: " + copy.getParentFile());
+				}
+				try {
+					Files.createLink(copy.toPath(), source.toPath());
+				}
+				catch (IOException | UnsupportedOperationException e) {
+					Files.copy(source.toPath(), copy.toPath());
+				}
+			}
+		}
+		Files.write(new File(target, ".generated").toPath(), new byte[0]);
+		return new SyntheticRepository(target, size);
+	}
+	
+	/**
+	 * Creates the jar and pom of an artifact that is not part of the repository, for example to deploy it
+	 */
+	public byte [][] createArtifact(String groupId, String artifactId, String version, byte [] payload) throws IOException {
+		byte [] pom = ("<project xmlns=\"http://maven.apache.org/POM/4.0.0\">\n"
+			+ "\t<modelVersion>4.0.0</modelVersion>\n"
+			+ "\t<groupId>" + groupId + "</groupId>\n"
+			+ "\t<artifactId>" + artifactId + "</artifactId>\n"
+			+ "\t<version>" + version + "</version>\n"
+			+ "\t<packaging>jar</packaging>\n"
+			+ "</project>\n").getBytes(UTF8);
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		writeJar(output, groupId, artifactId, version, pom, payload);
+		return new byte [][] { output.toByteArray(), pom };
+	}
+	
+	private void writeJar(OutputStream output, String groupId, String artifactId, String version, byte [] pom, byte [] payload) throws IOException {
+		ZipOutputStream zip = new ZipOutputStream(output);
+		zip.putNextEntry(new ZipEntry("META-INF/maven/" + groupId + "/" + artifactId + "/pom.properties"));
+		zip.write(("groupId=" + groupId + "\nartifactId=" + artifactId + "\nversion=" + version + "\n").getBytes(UTF8));
+		zip.closeEntry();
+		zip.putNextEntry(new ZipEntry("META-INF/maven/" + groupId + "/" + artifactId + "/pom.xml"));
+		zip.write(pom);
+		zip.closeEntry();
+		String packageName = groupId.replace('.', '/') + "/" + artifactId.replace('-', '_');
+		for (int i = 0; i < classesPerArtifact; i++) {
+			zip.putNextEntry(new ZipEntry(packageName + "/Class" + i + ".class"));
+			// the magic number is enough, nothing loads these classes
+			zip.write(new byte[] { (byte) 0xCA, (byte) 0xFE, (byte) 0xBA, (byte) 0xBE });
+			zip.closeEntry();
+		}
+		zip.putNextEntry(new ZipEntry("payload.bin"));
+		zip.write(payload);
+		zip.closeEntry();
+		zip.finish();
+	}
+	
+	private String getPom(int index) {
+		StringBuilder builder = new StringBuilder();
+		builder.append("<project xmlns=\"http://maven.apache.org/POM/4.0.0\">\n")
+			.append("\t<modelVersion>4.0.0</modelVersion>\n")
+			.append("\t<groupId>").append(getGroupId(index)).append("</groupId>\n")
+			.append("\t<artifactId>").append(getArtifactId(index)).append("</artifactId>\n")
+			.append("\t<version>").append(getVersion(index)).append("</version>\n")
+			.append("\t<packaging>jar</packaging>\n")
+			.append("\t<dependencies>\n");
+		// depend on the latest version of a few earlier artifacts
+		int artifactIndex = index / versionsPerArtifact;
+		for (int i = 1; i <= dependenciesPerArtifact && artifactIndex - i >= 0; i++) {
+			int dependency = (artifactIndex - i) * versionsPerArtifact + versionsPerArtifact - 1;
+			if (dependency < size) {
+				builder.append("\t\t<dependency>\n")
+					.append("\t\t\t<groupId>").append(getGroupId(dependency)).append("</groupId>\n")
+					.append("\t\t\t<artifactId>").append(getArtifactId(dependency)).append("</artifactId>\n")
+					.append("\t\t\t<version>").append(getVersion(dependency)).append("</version>\n")
+					.append("\t\t</dependency>\n");
+			}
+		}
+		builder.append("\t</dependencies>\n")
+			.append("</project>\n");
+		return builder.toString();
+	}
+	
+	public String getGroupId(int index) {
+		return GROUP_PREFIX + (index / versionsPerArtifact / artifactsPerGroup);
+	}
+	
+	public String getArtifactId(int index) {
+		return "artifact-" + (index / versionsPerArtifact);
+	}
+	
+	public String getVersion(int index) {
+		return "1." + (index % versionsPerArtifact);
+	}
+	
+	/**
+	 * The path of the artifact relative to the root of the repository
+	 */
+	public String getPath(int index, String extension) {
+		return getGroupId(index).replace('.', '/') + "/" + getArtifactId(index) + "/" + getVersion(index) + "/" + getArtifactId(index) + "-" + getVersion(index) + "." + extension;
+	}
+	
+	/**
+	 * A deterministic list of random artifact indexes to use in lookups
+	 */
+	public List<Integer> getSample(int amount, long seed) {
+		Random random = new Random(seed);
+		List<Integer> sample = new ArrayList<Integer>(amount);
+		for (int i = 0; i < amount; i++) {
+			sample.add(random.nextInt(size));
+		}
+		return sample;
+	}
+	
+	public File getRoot() {
+		return root;
+	}
+	
+	public int getSize() {
+		return size;
+	}
+}
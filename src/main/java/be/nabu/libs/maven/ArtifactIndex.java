@@ -0,0 +1,157 @@
+/*
+* Copyright (C) 2016 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package be.nabu.libs.maven;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import be.nabu.libs.maven.api.Artifact;
+
+/**
+ * A groupId > artifactId > version index of artifacts.
+ * Lookups never block and never copy, updates (and rebuilding the snapshot of all artifacts) are serialized.
+ */
+public class ArtifactIndex<T extends Artifact> {
+	
+	private ConcurrentSkipListMap<String, ConcurrentSkipListMap<String, ConcurrentSkipListMap<String, Versioned<T>>>> groups = new ConcurrentSkipListMap<String, ConcurrentSkipListMap<String, ConcurrentSkipListMap<String, Versioned<T>>>>();
+	
+	// a snapshot of all the artifacts, rebuilt only when requested after a change
+	private volatile List<T> snapshot;
+	
+	public T get(String groupId, String artifactId, String version, boolean isTest) {
+		if (groupId == null || artifactId == null || version == null) {
+			return null;
+		}
+		ConcurrentSkipListMap<String, ConcurrentSkipListMap<String, Versioned<T>>> artifacts = groups.get(groupId);
+		if (artifacts == null) {
+			return null;
+		}
+		ConcurrentSkipListMap<String, Versioned<T>> versions = artifacts.get(artifactId);
+		if (versions == null) {
+			return null;
+		}
+		Versioned<T> versioned = versions.get(version);
+		if (versioned == null) {
+			return null;
+		}
+		return isTest ? versioned.test : versioned.artifact;
+	}
+	
+	public SortedSet<String> getGroups() {
+		return Collections.unmodifiableSortedSet(groups.keySet());
+	}
+	
+	public SortedSet<String> getArtifacts(String groupId) {
+		ConcurrentSkipListMap<String, ConcurrentSkipListMap<String, Versioned<T>>> artifacts = groupId == null ? null : groups.get(groupId);
+		return artifacts == null ? Collections.unmodifiableSortedSet(new TreeSet<String>()) : Collections.unmodifiableSortedSet(artifacts.keySet());
+	}
+	
+	public SortedSet<String> getVersions(String groupId, String artifactId) {
+		ConcurrentSkipListMap<String, ConcurrentSkipListMap<String, Versioned<T>>> artifacts = groupId == null ? null : groups.get(groupId);
+		ConcurrentSkipListMap<String, Versioned<T>> versions = artifacts == null || artifactId == null ? null : artifacts.get(artifactId);
+		return versions == null ? Collections.unmodifiableSortedSet(new TreeSet<String>()) : Collections.unmodifiableSortedSet(versions.keySet());
+	}
+	
+	public List<T> getAll() {
+		List<T> snapshot = this.snapshot;
+		return snapshot == null ? buildSnapshot() : snapshot;
+	}
+	
+	// built under the same monitor as the updates, otherwise a change during the build could be lost in a snapshot that is published after it was invalidated
+	private synchronized List<T> buildSnapshot() {
+		if (snapshot == null) {
+			List<T> snapshot = new ArrayList<T>();
+			for (ConcurrentSkipListMap<String, ConcurrentSkipListMap<String, Versioned<T>>> artifacts : groups.values()) {
+				for (ConcurrentSkipListMap<String, Versioned<T>> versions : artifacts.values()) {
+					for (Versioned<T> versioned : versions.values()) {
+						if (versioned.artifact != null) {
+							snapshot.add(versioned.artifact);
+						}
+						if (versioned.test != null) {
+							snapshot.add(versioned.test);
+						}
+					}
+				}
+			}
+			this.snapshot = Collections.unmodifiableList(snapshot);
+		}
+		return snapshot;
+	}
+	
+	public synchronized void put(T artifact) {
+		// an artifact without coordinates can not be looked up
+		if (artifact.getGroupId() == null || artifact.getArtifactId() == null || artifact.getVersion() == null) {
+			return;
+		}
+		ConcurrentSkipListMap<String, ConcurrentSkipListMap<String, Versioned<T>>> artifacts = groups.get(artifact.getGroupId());
+		if (artifacts == null) {
+			artifacts = new ConcurrentSkipListMap<String, ConcurrentSkipListMap<String, Versioned<T>>>();
+			groups.put(artifact.getGroupId(), artifacts);
+		}
+		ConcurrentSkipListMap<String, Versioned<T>> versions = artifacts.get(artifact.getArtifactId());
+		if (versions == null) {
+			versions = new ConcurrentSkipListMap<String, Versioned<T>>();
+			artifacts.put(artifact.getArtifactId(), versions);
+		}
+		Versioned<T> current = versions.get(artifact.getVersion());
+		versions.put(artifact.getVersion(), artifact.isTest()
+			? new Versioned<T>(current == null ? null : current.artifact, artifact)
+			: new Versioned<T>(artifact, current == null ? null : current.test));
+		snapshot = null;
+	}
+	
+	public synchronized void remove(T artifact) {
+		if (artifact.getGroupId() == null || artifact.getArtifactId() == null || artifact.getVersion() == null) {
+			return;
+		}
+		ConcurrentSkipListMap<String, ConcurrentSkipListMap<String, Versioned<T>>> artifacts = groups.get(artifact.getGroupId());
+		ConcurrentSkipListMap<String, Versioned<T>> versions = artifacts == null ? null : artifacts.get(artifact.getArtifactId());
+		Versioned<T> current = versions == null ? null : versions.get(artifact.getVersion());
+		// only remove it if it is still the indexed instance
+		if (current == null || (artifact.isTest() ? current.test : current.artifact) != artifact) {
+			return;
+		}
+		Versioned<T> updated = artifact.isTest() ? new Versioned<T>(current.artifact, null) : new Versioned<T>(null, current.test);
+		if (updated.artifact == null && updated.test == null) {
+			versions.remove(artifact.getVersion());
+			if (versions.isEmpty()) {
+				artifacts.remove(artifact.getArtifactId());
+				if (artifacts.isEmpty()) {
+					groups.remove(artifact.getGroupId());
+				}
+			}
+		}
+		else {
+			versions.put(artifact.getVersion(), updated);
+		}
+		snapshot = null;
+	}
+	
+	private static class Versioned<T> {
+		private final T artifact, test;
+		
+		private Versioned(T artifact, T test) {
+			this.artifact = artifact;
+			this.test = test;
+		}
+	}
+}
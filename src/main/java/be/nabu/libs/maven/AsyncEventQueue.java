@@ -0,0 +1,320 @@
+/*
+* Copyright (C) 2016 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package be.nabu.libs.maven;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import be.nabu.libs.events.api.EventDispatcher;
+
+/**
+ * Delivers events to a dispatcher on background threads so slow listeners do not hold up the thread that fires them.
+ * 
+ * The queue is split in partitions, each with its own bounded queue and worker thread. Events are assigned to a partition based on a key (e.g. the coordinate of the artifact) 
+ * so all events for the same key are delivered in the order they were submitted.
+ * 
+ * When a partition is full, the backpressure policy decides what happens: BLOCK waits until there is room, CALLER_RUNS lets the submitting thread deliver the oldest events of the partition itself.
+ * The worker drains up to the batch size at once, if enabled a {@link ResourceRepositoryEventBatch} is fired after each batch.
+ */
+public class AsyncEventQueue {
+	
+	public enum BackpressurePolicy {
+		BLOCK,
+		CALLER_RUNS
+	}
+	
+	private EventDispatcher dispatcher;
+	private Object source;
+	private Partition [] partitions;
+	private int capacity, batchSize = 100;
+	private BackpressurePolicy backpressurePolicy = BackpressurePolicy.BLOCK;
+	private boolean fireBatches;
+	private volatile boolean running;
+	private ThreadFactory threadFactory;
+	private LongAdder delivered = new LongAdder(), failed = new LongAdder(), callerRuns = new LongAdder(), rejected = new LongAdder();
+	
+	public AsyncEventQueue(EventDispatcher dispatcher, Object source, int partitions, int capacity) {
+		this.dispatcher = dispatcher;
+		this.source = source;
+		this.capacity = capacity;
+		this.partitions = new Partition[partitions];
+		for (int i = 0; i < partitions; i++) {
+			this.partitions[i] = new Partition(i);
+		}
+	}
+	
+	public synchronized void start() {
+		if (!running) {
+			running = true;
+			for (Partition partition : partitions) {
+				partition.start();
+			}
+		}
+	}
+	
+	/**
+	 * Stops the workers after everything that is queued has been delivered
+	 */
+	public synchronized void stop() throws InterruptedException {
+		if (running) {
+			running = false;
+			for (Partition partition : partitions) {
+				partition.wakeUp();
+			}
+			for (Partition partition : partitions) {
+				partition.thread.join();
+			}
+		}
+	}
+	
+	public void submit(String key, Object event) {
+		if (!offer(key, event)) {
+			throw new IllegalStateException("The event queue is not running");
+		}
+	}
+	
+	/**
+	 * Queues the event, returns false if the queue is not running (or we were interrupted while waiting for room) in which case the event will not be delivered by the queue
+	 */
+	public boolean offer(String key, Object event) {
+		Partition partition = partitions[(key.hashCode() & Integer.MAX_VALUE) % partitions.length];
+		try {
+			Boolean offered;
+			while ((offered = partition.offer(event, backpressurePolicy == BackpressurePolicy.BLOCK)) == null) {
+				callerRuns.increment();
+				partition.deliver();
+			}
+			if (!offered) {
+				rejected.increment();
+			}
+			return offered;
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			rejected.increment();
+			return false;
+		}
+	}
+	
+	private class Partition implements Runnable {
+		private ArrayDeque<Object> queue = new ArrayDeque<Object>();
+		// guards the queue
+		private ReentrantLock lock = new ReentrantLock();
+		private Condition notEmpty = lock.newCondition(), notFull = lock.newCondition();
+		// taking events from the queue and delivering them is one step, this guarantees the order even if a caller delivers events
+		private ReentrantLock delivery = new ReentrantLock();
+		private Thread thread;
+		private int index;
+		
+		private Partition(int index) {
+			this.index = index;
+		}
+		
+		private void start() {
+			if (threadFactory != null) {
+				thread = threadFactory.newThread(this);
+			}
+			else {
+				thread = new Thread(this, "maven-events-" + index);
+				thread.setDaemon(true);
+			}
+			thread.start();
+		}
+		
+		// returns null if there is no room and we should not block, false if the queue is stopped
+		private Boolean offer(Object event, boolean block) throws InterruptedException {
+			lock.lock();
+			try {
+				// the worker only stops when it sees an empty queue under this lock, so if we are still running here the event will be delivered
+				if (!running) {
+					return false;
+				}
+				while (queue.size() >= capacity) {
+					if (!block) {
+						return null;
+					}
+					notFull.await();
+					if (!running) {
+						return false;
+					}
+				}
+				queue.add(event);
+				notEmpty.signal();
+				return true;
+			}
+			finally {
+				lock.unlock();
+			}
+		}
+		
+		private void wakeUp() {
+			lock.lock();
+			try {
+				notEmpty.signalAll();
+			}
+			finally {
+				lock.unlock();
+			}
+		}
+		
+		private void deliver() {
+			delivery.lock();
+			try {
+				List<Object> batch = new ArrayList<Object>();
+				lock.lock();
+				try {
+					while (!queue.isEmpty() && batch.size() < batchSize) {
+						batch.add(queue.poll());
+					}
+					notFull.signalAll();
+				}
+				finally {
+					lock.unlock();
+				}
+				for (Object event : batch) {
+					fire(event);
+				}
+				if (fireBatches && !batch.isEmpty()) {
+					fire(new ResourceRepositoryEventBatch(Collections.unmodifiableList(batch)));
+				}
+			}
+			finally {
+				delivery.unlock();
+			}
+		}
+		
+		private void fire(Object event) {
+			try {
+				dispatcher.fire(event, source);
+				delivered.increment();
+			}
+			// a failing listener should not stop the delivery of other events
+			catch (RuntimeException e) {
+				failed.increment();
+			}
+		}
+		
+		@Override
+		public void run() {
+			while (true) {
+				lock.lock();
+				try {
+					while (queue.isEmpty() && running) {
+						notEmpty.await(1, TimeUnit.SECONDS);
+					}
+					if (queue.isEmpty()) {
+						return;
+					}
+				}
+				catch (InterruptedException e) {
+					return;
+				}
+				finally {
+					lock.unlock();
+				}
+				deliver();
+			}
+		}
+	}
+	
+	public boolean isRunning() {
+		return running;
+	}
+	
+	/**
+	 * The amount of events waiting to be delivered
+	 */
+	public int getSize() {
+		int size = 0;
+		for (Partition partition : partitions) {
+			partition.lock.lock();
+			try {
+				size += partition.queue.size();
+			}
+			finally {
+				partition.lock.unlock();
+			}
+		}
+		return size;
+	}
+	
+	public long getDelivered() {
+		return delivered.sum();
+	}
+	
+	public long getFailed() {
+		return failed.sum();
+	}
+	
+	public long getCallerRuns() {
+		return callerRuns.sum();
+	}
+	
+	/**
+	 * The amount of events that were offered when the queue was not running
+	 */
+	public long getRejected() {
+		return rejected.sum();
+	}
+	
+	public int getCapacity() {
+		return capacity;
+	}
+	
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	public BackpressurePolicy getBackpressurePolicy() {
+		return backpressurePolicy;
+	}
+
+	public void setBackpressurePolicy(BackpressurePolicy backpressurePolicy) {
+		this.backpressurePolicy = backpressurePolicy;
+	}
+
+	public ThreadFactory getThreadFactory() {
+		return threadFactory;
+	}
+
+	/**
+	 * The factory for the worker threads, this must be set before the queue is started
+	 */
+	public void setThreadFactory(ThreadFactory threadFactory) {
+		this.threadFactory = threadFactory;
+	}
+
+	public boolean isFireBatches() {
+		return fireBatches;
+	}
+
+	public void setFireBatches(boolean fireBatches) {
+		this.fireBatches = fireBatches;
+	}
+}
@@ -0,0 +1,245 @@
+/*
+* Copyright (C) 2016 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package be.nabu.libs.maven;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+
+import be.nabu.libs.maven.api.Artifact;
+import be.nabu.libs.maven.api.Repository;
+import be.nabu.utils.io.api.ByteBuffer;
+import be.nabu.utils.io.api.ReadableContainer;
+
+/**
+ * Resolves a list of coordinates (and optionally their transitive dependencies) into one newline delimited json stream.
+ * Each line holds the pom, the checksums and the metadata of one artifact so a client can resolve many artifacts in a single request.
+ * The lines are only generated when the stream is read, so the response starts immediately and never has to be held in memory completely.
+ * 
+ * The first version encountered for a groupId:artifactId wins, see {@link DependencyResolver} for how the versions are resolved.
+ */
+public class BatchResolver implements ReadableContainer<ByteBuffer> {
+	
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	
+	public static class Coordinate {
+		private String groupId, artifactId, version;
+		private boolean isTest;
+		
+		public Coordinate(String groupId, String artifactId, String version, boolean isTest) {
+			this.groupId = groupId;
+			this.artifactId = artifactId;
+			this.version = version;
+			this.isTest = isTest;
+		}
+		
+		/**
+		 * Parses groupId:artifactId:version with an optional ":tests" suffix, returns null if it is not a valid coordinate
+		 */
+		public static Coordinate parse(String value) {
+			String [] parts = value.trim().split(":");
+			if (parts.length < 3 || parts.length > 4 || (parts.length == 4 && !parts[3].equals("tests"))) {
+				return null;
+			}
+			return new Coordinate(parts[0], parts[1], parts[2], parts.length == 4);
+		}
+		
+		public String getGroupId() {
+			return groupId;
+		}
+
+		public String getArtifactId() {
+			return artifactId;
+		}
+
+		public String getVersion() {
+			return version;
+		}
+
+		public boolean isTest() {
+			return isTest;
+		}
+		
+		@Override
+		public String toString() {
+			return groupId + ":" + artifactId + ":" + version + (isTest ? ":tests" : "");
+		}
+	}
+	
+	private Repository repository;
+	private Queue<Coordinate> queue = new ArrayDeque<Coordinate>();
+	// the groupId:artifactId that were already added, the first version wins
+	private Set<String> seen = new HashSet<String>();
+	private boolean transitive;
+	private DependencyResolver dependencyResolver;
+	private int remaining;
+	
+	private byte [] current;
+	private int position;
+	
+	public BatchResolver(Repository repository, List<Coordinate> coordinates, boolean transitive, Set<String> scopes, int limit) {
+		this.repository = repository;
+		this.transitive = transitive;
+		this.dependencyResolver = new DependencyResolver(repository, scopes);
+		this.remaining = limit;
+		// explicitly requested coordinates are always returned, even if they share a groupId:artifactId
+		for (Coordinate coordinate : coordinates) {
+			seen.add(getKey(coordinate));
+			queue.add(coordinate);
+		}
+	}
+	
+	private void add(Coordinate coordinate) {
+		if (seen.add(getKey(coordinate))) {
+			queue.add(coordinate);
+		}
+	}
+	
+	private static String getKey(Coordinate coordinate) {
+		return coordinate.groupId + ":" + coordinate.artifactId + (coordinate.isTest ? ":tests" : "");
+	}
+	
+	@Override
+	public long read(ByteBuffer target) throws IOException {
+		long total = 0;
+		while (target.remainingSpace() > 0) {
+			if (current == null || position >= current.length) {
+				current = next();
+				position = 0;
+				if (current == null) {
+					return total == 0 ? -1 : total;
+				}
+			}
+			int written = target.write(current, position, (int) Math.min(target.remainingSpace(), current.length - position));
+			if (written <= 0) {
+				break;
+			}
+			position += written;
+			total += written;
+		}
+		return total;
+	}
+	
+	@Override
+	public void close() {
+		queue.clear();
+		current = null;
+	}
+	
+	/**
+	 * Generates the next line, returns null if there is nothing left
+	 */
+	private byte [] next() throws IOException {
+		Coordinate coordinate = remaining-- > 0 ? queue.poll() : null;
+		if (coordinate == null) {
+			return null;
+		}
+		StringBuilder builder = new StringBuilder();
+		builder.append("{\"groupId\":\"").append(escape(coordinate.groupId))
+			.append("\",\"artifactId\":\"").append(escape(coordinate.artifactId))
+			.append("\",\"version\":\"").append(escape(coordinate.version))
+			.append("\",\"tests\":").append(coordinate.isTest);
+		Artifact artifact = coordinate.version.startsWith("[") || coordinate.version.startsWith("(") 
+			? null 
+			: repository.getArtifact(coordinate.groupId, coordinate.artifactId, coordinate.version, coordinate.isTest);
+		if (artifact == null) {
+			builder.append(",\"found\":false}\n");
+			return builder.toString().getBytes(UTF8);
+		}
+		builder.append(",\"found\":true,\"packaging\":\"").append(escape(artifact.getPackaging())).append("\"");
+		appendChecksums(builder, "checksums", getChecksums(artifact, false));
+		byte [] pom = read(artifact.getPom());
+		if (pom != null) {
+			builder.append(",\"pom\":\"").append(escape(new String(pom, UTF8))).append("\"");
+			appendChecksums(builder, "pomChecksums", getChecksums(artifact, true));
+		}
+		CachedContent metadata = getMetaData(artifact);
+		if (metadata != null) {
+			builder.append(",\"metadata\":\"").append(escape(new String(metadata.getContent(), UTF8))).append("\"");
+		}
+		if (transitive && pom != null) {
+			builder.append(",\"dependencies\":[");
+			boolean first = true;
+			for (Coordinate dependency : dependencyResolver.getDependencies(PomParser.parse(new ByteArrayInputStream(pom)))) {
+				if (!first) {
+					builder.append(",");
+				}
+				first = false;
+				builder.append("\"").append(escape(dependency.toString())).append("\"");
+				add(dependency);
+			}
+			builder.append("]");
+		}
+		builder.append("}\n");
+		return builder.toString().getBytes(UTF8);
+	}
+	
+	private Checksums getChecksums(Artifact artifact, boolean pom) throws IOException {
+		if (repository instanceof ResourceRepository) {
+			return pom ? ((ResourceRepository) repository).getPomChecksums(artifact) : ((ResourceRepository) repository).getChecksums(artifact);
+		}
+		InputStream input = pom ? artifact.getPom() : artifact.getContent();
+		return input == null ? null : Checksums.calculate(input);
+	}
+	
+	private CachedContent getMetaData(Artifact artifact) throws IOException {
+		if (repository instanceof ResourceRepository) {
+			return ((ResourceRepository) repository).getCachedMetaData(artifact.getGroupId(), artifact.getArtifactId());
+		}
+		return CachedContent.read(repository.getMetaData(artifact.getGroupId(), artifact.getArtifactId()));
+	}
+	
+	private static void appendChecksums(StringBuilder builder, String name, Checksums checksums) {
+		if (checksums == null) {
+			return;
+		}
+		builder.append(",\"").append(name).append("\":{");
+		boolean first = true;
+		for (ChecksumAlgorithm algorithm : ChecksumAlgorithm.values()) {
+			if (!first) {
+				builder.append(",");
+			}
+			first = false;
+			builder.append("\"").append(algorithm.getExtension()).append("\":\"").append(checksums.get(algorithm)).append("\"");
+		}
+		builder.append("}");
+	}
+	
+	private static byte [] read(InputStream input) throws IOException {
+		return input == null ? null : CachedContent.read(input).getContent();
+	}
+	
+	private static String escape(String value) {
+		return value == null ? "" : ListingRenderer.escapeJSON(value);
+	}
+	
+	/**
+	 * The scopes that are followed by default, like maven does for transitive dependencies
+	 */
+	public static Set<String> getDefaultScopes() {
+		return new HashSet<String>(Arrays.asList("compile", "runtime"));
+	}
+}
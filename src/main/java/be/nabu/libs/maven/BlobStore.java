@@ -0,0 +1,172 @@
+/*
+* Copyright (C) 2016 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package be.nabu.libs.maven;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.UUID;
+
+/**
+ * Stores the content of artifacts once per sha-256 in "{root}/.blobs/{first two characters}/{sha-256}".
+ * The artifact on its coordinate path is a hard link to the blob so uploading the same content again (under the same or another coordinate) does not write the content again.
+ * If the filesystem does not support hard links, the content is copied so the repository keeps working without deduplication.
+ * Note that a linked artifact has the modification date of the blob: the time its content was first stored.
+ */
+public class BlobStore {
+	
+	private File root;
+	// a hit means the content was already stored
+	private CacheStatistics statistics = new CacheStatistics();
+	// uploads of the same content are serialized so they share the same blob
+	private CoordinateLocks locks = new CoordinateLocks();
+	
+	public BlobStore(File root) {
+		this.root = root;
+	}
+	
+	public File getBlob(String sha256) {
+		return new File(root, sha256.substring(0, 2) + "/" + sha256);
+	}
+	
+	/**
+	 * Puts the upload at the target location, returns false if the upload could not be stored in the blob store in which case it should be stored the regular way.
+	 * If the target already contains this exact content, nothing is written at all.
+	 */
+	public boolean store(SpooledUpload upload, File target) throws IOException {
+		String sha256 = upload.getChecksums().getSha256();
+		File blob = getBlob(sha256);
+		locks.lock(sha256);
+		try {
+			if (blob.exists() && target.exists() && Files.isSameFile(blob.toPath(), target.toPath())) {
+				statistics.hit();
+				return true;
+			}
+			boolean created = false;
+			if (blob.exists()) {
+				statistics.hit();
+			}
+			else {
+				if (!blob.getParentFile().exists() && !blob.getParentFile().mkdirs() && !blob.getParentFile().exists()) {
+					throw new IOException("Could not create the blob directory: " + blob.getParentFile());
+				}
+				if (!upload.moveTo(blob)) {
+					return false;
+				}
+				statistics.miss();
+				created = true;
+			}
+			// link next to the target and move it in place so the target is replaced atomically
+			File link = new File(target.getParentFile(), "." + target.getName() + "." + UUID.randomUUID().toString() + ".link");
+			try {
+				Files.createLink(link.toPath(), blob.toPath());
+			}
+			catch (IOException | UnsupportedOperationException e) {
+				// no hard links, if no one else uses the blob yet we simply move it to the target, otherwise we need a copy
+				if (created) {
+					Files.move(blob.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+					return true;
+				}
+				Files.copy(blob.toPath(), link.toPath());
+			}
+			// the link keeps the modification date of the blob, changing it would make every other coordinate that links to it look modified
+			// the etag of the target still changes with its content and the repository rewrites the checksum sidecars
+			try {
+				Files.move(link.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			}
+			finally {
+				Files.deleteIfExists(link.toPath());
+			}
+			return true;
+		}
+		finally {
+			locks.unlock(sha256);
+		}
+	}
+	
+	/**
+	 * Removes the blob if it is no longer linked from any coordinate, this should be called after a coordinate that may link to it is deleted or replaced.
+	 * Returns true if the blob was removed.
+	 */
+	public boolean release(String sha256) throws IOException {
+		locks.lock(sha256);
+		try {
+			return release(getBlob(sha256).toPath());
+		}
+		finally {
+			locks.unlock(sha256);
+		}
+	}
+	
+	private boolean release(Path blob) throws IOException {
+		try {
+			if (Files.exists(blob) && ((Number) Files.getAttribute(blob, "unix:nlink")).intValue() <= 1) {
+				Files.delete(blob);
+				return true;
+			}
+		}
+		catch (UnsupportedOperationException | IllegalArgumentException e) {
+			// the link count is not known, we can not know if it is still used
+		}
+		return false;
+	}
+	
+	/**
+	 * Removes the blobs that are no longer linked from any coordinate, returns the amount of blobs that were removed.
+	 * This only works on filesystems that report the link count (unix), on other filesystems nothing is removed.
+	 */
+	public int collect() throws IOException {
+		int removed = 0;
+		if (!root.exists()) {
+			return removed;
+		}
+		try (DirectoryStream<Path> prefixes = Files.newDirectoryStream(root.toPath())) {
+			for (Path prefix : prefixes) {
+				if (!Files.isDirectory(prefix)) {
+					continue;
+				}
+				try (DirectoryStream<Path> blobs = Files.newDirectoryStream(prefix)) {
+					for (Path blob : blobs) {
+						String sha256 = blob.getFileName().toString();
+						locks.lock(sha256);
+						try {
+							if (release(blob)) {
+								removed++;
+							}
+						}
+						finally {
+							locks.unlock(sha256);
+						}
+					}
+				}
+			}
+		}
+		return removed;
+	}
+	
+	public CacheStatistics getStatistics() {
+		return statistics;
+	}
+	
+	public File getRoot() {
+		return root;
+	}
+}
@@ -0,0 +1,67 @@
+/*
+* Copyright (C) 2016 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package be.nabu.libs.maven;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Hit and miss counters of a cache, these are always kept because they cost next to nothing
+ */
+public class CacheStatistics {
+	
+	private LongAdder hits = new LongAdder(), misses = new LongAdder(), evictions = new LongAdder(), bytes = new LongAdder();
+	// only caches with a byte budget track their size
+	private volatile boolean sized;
+	
+	public void hit() {
+		hits.increment();
+	}
+	
+	public void miss() {
+		misses.increment();
+	}
+	
+	public void evict() {
+		evictions.increment();
+	}
+	
+	public void resize(long delta) {
+		sized = true;
+		bytes.add(delta);
+	}
+	
+	public long getHits() {
+		return hits.sum();
+	}
+	
+	public long getMisses() {
+		return misses.sum();
+	}
+	
+	public long getEvictions() {
+		return evictions.sum();
+	}
+	
+	public boolean isSized() {
+		return sized;
+	}
+	
+	public long getBytes() {
+		return bytes.sum();
+	}
+}
@@ -0,0 +1,84 @@
+/*
+* Copyright (C) 2016 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package be.nabu.libs.maven;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import be.nabu.utils.io.IOUtils;
+
+/**
+ * Rendered content that is kept in memory along with its checksums and its encoded variants
+ */
+public class CachedContent {
+	
+	// content that is smaller than this is not worth encoding
+	private static final int MIN_ENCODING_SIZE = 256;
+	private static final byte [] NOT_ENCODED = new byte[0];
+	
+	private byte [] content;
+	private volatile Checksums checksums;
+	private Map<ContentEncoding, byte[]> encoded = new ConcurrentHashMap<ContentEncoding, byte[]>();
+	
+	public CachedContent(byte [] content) {
+		this.content = content;
+	}
+	
+	/**
+	 * Reads the stream into memory and closes it, returns null if there is no stream
+	 */
+	public static CachedContent read(InputStream input) throws IOException {
+		if (input == null) {
+			return null;
+		}
+		try {
+			return new CachedContent(IOUtils.toBytes(IOUtils.wrap(input)));
+		}
+		finally {
+			input.close();
+		}
+	}
+
+	public byte[] getContent() {
+		return content;
+	}
+	
+	/**
+	 * Returns the content in the given encoding, the encoding is only done once.
+	 * Returns null if the content is not worth encoding, for example because it is too small.
+	 */
+	public byte[] getContent(ContentEncoding encoding) {
+		if (encoding == null || content.length < MIN_ENCODING_SIZE) {
+			return null;
+		}
+		byte [] result = encoded.computeIfAbsent(encoding, k -> {
+			byte [] bytes = k.encode(content);
+			return bytes.length < content.length ? bytes : NOT_ENCODED;
+		});
+		return result == NOT_ENCODED ? null : result;
+	}
+	
+	public Checksums getChecksums() {
+		if (checksums == null) {
+			checksums = Checksums.calculate(content);
+		}
+		return checksums;
+	}
+}
@@ -0,0 +1,56 @@
+/*
+* Copyright (C) 2016 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package be.nabu.libs.maven;
+
+public enum ChecksumAlgorithm {
+	MD5("MD5", "md5"),
+	SHA1("SHA-1", "sha1"),
+	SHA256("SHA-256", "sha256"),
+	SHA512("SHA-512", "sha512");
+	
+	private String digestName, extension;
+
+	private ChecksumAlgorithm(String digestName, String extension) {
+		this.digestName = digestName;
+		this.extension = extension;
+	}
+
+	public String getDigestName() {
+		return digestName;
+	}
+
+	public String getExtension() {
+		return extension;
+	}
+	
+	/**
+	 * Returns the algorithm for a file name like "test.jar.sha1" or null if it is not a checksum file
+	 */
+	public static ChecksumAlgorithm fromFileName(String name) {
+		int index = name.lastIndexOf('.');
+		if (index >= 0) {
+			String extension = name.substring(index + 1).toLowerCase();
+			for (ChecksumAlgorithm algorithm : values()) {
+				if (algorithm.extension.equals(extension)) {
+					return algorithm;
+				}
+			}
+		}
+		return null;
+	}
+}
@@ -0,0 +1,84 @@
+/*
+* Copyright (C) 2016 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package be.nabu.libs.maven;
+
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Calculates the checksums for all algorithms over whatever is written to it
+ */
+public class ChecksumCalculator extends OutputStream {
+
+	private static final char [] HEX = "0123456789abcdef".toCharArray();
+	
+	private Map<ChecksumAlgorithm, MessageDigest> digests = new EnumMap<ChecksumAlgorithm, MessageDigest>(ChecksumAlgorithm.class);
+	private long size;
+	
+	public ChecksumCalculator() {
+		for (ChecksumAlgorithm algorithm : ChecksumAlgorithm.values()) {
+			try {
+				digests.put(algorithm, MessageDigest.getInstance(algorithm.getDigestName()));
+			}
+			catch (NoSuchAlgorithmException e) {
+				// all of these are required to be present in every java runtime
+				throw new RuntimeException(e);
+			}
+		}
+	}
+	
+	@Override
+	public void write(int b) {
+		for (MessageDigest digest : digests.values()) {
+			digest.update((byte) b);
+		}
+		size++;
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) {
+		for (MessageDigest digest : digests.values()) {
+			digest.update(b, off, len);
+		}
+		size += len;
+	}
+	
+	public long getSize() {
+		return size;
+	}
+	
+	public Checksums getChecksums() {
+		Map<ChecksumAlgorithm, String> checksums = new EnumMap<ChecksumAlgorithm, String>(ChecksumAlgorithm.class);
+		for (Map.Entry<ChecksumAlgorithm, MessageDigest> entry : digests.entrySet()) {
+			checksums.put(entry.getKey(), toHex(entry.getValue().digest()));
+		}
+		return new Checksums(checksums, size);
+	}
+	
+	private static String toHex(byte [] bytes) {
+		char [] chars = new char[bytes.length * 2];
+		for (int i = 0; i < bytes.length; i++) {
+			chars[i * 2] = HEX[(bytes[i] >> 4) & 0xf];
+			chars[i * 2 + 1] = HEX[bytes[i] & 0xf];
+		}
+		return new String(chars);
+	}
+}
@@ -0,0 +1,206 @@
+/*
+* Copyright (C) 2016 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package be.nabu.libs.maven;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.EnumMap;
+import java.util.Map;
+
+import be.nabu.libs.resources.api.ManageableContainer;
+import be.nabu.libs.resources.api.ReadableResource;
+import be.nabu.libs.resources.api.Resource;
+import be.nabu.libs.resources.api.ResourceContainer;
+import be.nabu.libs.resources.api.TimestampedResource;
+import be.nabu.libs.resources.api.WritableResource;
+import be.nabu.utils.io.IOUtils;
+import be.nabu.utils.io.api.ByteBuffer;
+import be.nabu.utils.io.api.ReadableContainer;
+import be.nabu.utils.io.api.WritableContainer;
+
+/**
+ * Keeps the checksums of the artifacts in sidecar files next to the artifact (e.g. "test-1.0.jar.sha1") like a regular maven repository does.
+ * The checksums are calculated only once: either when the artifact is created or the first time they are requested for an artifact that was scanned.
+ */
+public class ChecksumStore {
+	
+	private static Charset charset = Charset.forName("UTF-8");
+	
+	// a hit means the checksums did not have to be calculated
+	private CacheStatistics statistics = new CacheStatistics();
+	
+	/**
+	 * Returns the checksums of the artifact itself
+	 */
+	public Checksums getChecksums(ResourceArtifact artifact) throws IOException {
+		return getChecksums(artifact, false);
+	}
+	
+	/**
+	 * Returns the checksums of the pom of the artifact
+	 */
+	public Checksums getPomChecksums(ResourceArtifact artifact) throws IOException {
+		// if the artifact is a pom, the checksums are the same
+		return getChecksums(artifact, !artifact.getResource().getName().endsWith(".pom"));
+	}
+	
+	/**
+	 * Returns the checksums of the artifact (or its pom) only if they are known or stored in sidecars, they are never calculated.
+	 * Returns null if they would have to be calculated.
+	 */
+	public Checksums getStoredChecksums(ResourceArtifact artifact, boolean pom) throws IOException {
+		return getChecksums(artifact, pom && !artifact.getResource().getName().endsWith(".pom"), false);
+	}
+	
+	private Checksums getChecksums(ResourceArtifact artifact, boolean pom) throws IOException {
+		return getChecksums(artifact, pom, true);
+	}
+	
+	private Checksums getChecksums(ResourceArtifact artifact, boolean pom, boolean calculate) throws IOException {
+		Checksums checksums = artifact.getChecksums(pom);
+		if (checksums == null) {
+			synchronized(artifact) {
+				checksums = artifact.getChecksums(pom);
+				if (checksums == null) {
+					String name = getName(artifact, pom);
+					checksums = read(artifact, name);
+					if (checksums != null) {
+						statistics.hit();
+					}
+					else if (!calculate) {
+						return null;
+					}
+					else {
+						statistics.miss();
+						InputStream input = pom ? artifact.getPom() : artifact.getContent();
+						if (input == null) {
+							return null;
+						}
+						checksums = Checksums.calculate(input);
+						write(artifact.getResource().getParent(), name, checksums);
+					}
+					artifact.setChecksums(checksums, pom);
+				}
+				else {
+					statistics.hit();
+				}
+			}
+		}
+		else {
+			statistics.hit();
+		}
+		return checksums;
+	}
+	
+	/**
+	 * Stores checksums that were calculated elsewhere, for example while writing the artifact.
+	 * The checksums of its pom are removed, they are calculated again when needed.
+	 */
+	public void put(ResourceArtifact artifact, Checksums checksums) throws IOException {
+		write(artifact.getResource().getParent(), artifact.getResource().getName(), checksums);
+		artifact.setChecksums(checksums, false);
+		if (!artifact.getResource().getName().endsWith(".pom")) {
+			remove(artifact.getResource().getParent(), getName(artifact, true));
+		}
+	}
+	
+	public CacheStatistics getStatistics() {
+		return statistics;
+	}
+	
+	private String getName(ResourceArtifact artifact, boolean pom) {
+		String name = artifact.getResource().getName();
+		return pom ? ResourceArtifact.getPomName(name) : name;
+	}
+	
+	private Checksums read(ResourceArtifact artifact, String name) throws IOException {
+		ResourceContainer<?> parent = artifact.getResource().getParent();
+		if (parent == null) {
+			return null;
+		}
+		Map<ChecksumAlgorithm, String> checksums = new EnumMap<ChecksumAlgorithm, String>(ChecksumAlgorithm.class);
+		for (ChecksumAlgorithm algorithm : ChecksumAlgorithm.values()) {
+			Resource sidecar = parent.getChild(name + "." + algorithm.getExtension());
+			if (!(sidecar instanceof ReadableResource)) {
+				return null;
+			}
+			// a sidecar that is older than the artifact is stale
+			if (sidecar instanceof TimestampedResource && ((TimestampedResource) sidecar).getLastModified().before(artifact.getLastModified())) {
+				return null;
+			}
+			ReadableContainer<ByteBuffer> readable = ((ReadableResource) sidecar).getReadable();
+			try {
+				String content = new String(IOUtils.toBytes(readable), charset).trim();
+				// some tools append the file name to the checksum
+				String checksum = content.split("\\s+")[0];
+				if (checksum.isEmpty()) {
+					return null;
+				}
+				checksums.put(algorithm, checksum);
+			}
+			finally {
+				readable.close();
+			}
+		}
+		return new Checksums(checksums, -1);
+	}
+	
+	// the modification date of an artifact can go back in time (see BlobStore), so sidecars that may be outdated are removed rather than relying on their date
+	private void remove(ResourceContainer<?> parent, String name) {
+		if (!(parent instanceof ManageableContainer)) {
+			return;
+		}
+		for (ChecksumAlgorithm algorithm : ChecksumAlgorithm.values()) {
+			String sidecarName = name + "." + algorithm.getExtension();
+			try {
+				if (parent.getChild(sidecarName) != null) {
+					((ManageableContainer<?>) parent).delete(sidecarName);
+				}
+			}
+			catch (IOException e) {
+				// it is only used if it is newer than the artifact
+			}
+		}
+	}
+	
+	private void write(ResourceContainer<?> parent, String name, Checksums checksums) {
+		if (!(parent instanceof ManageableContainer)) {
+			return;
+		}
+		for (ChecksumAlgorithm algorithm : ChecksumAlgorithm.values()) {
+			String sidecarName = name + "." + algorithm.getExtension();
+			try {
+				Resource sidecar = parent.getChild(sidecarName);
+				if (sidecar == null) {
+					sidecar = ((ManageableContainer<?>) parent).create(sidecarName, "text/plain");
+				}
+				WritableContainer<ByteBuffer> output = ((WritableResource) sidecar).getWritable();
+				try {
+					IOUtils.copyBytes(IOUtils.wrap(checksums.get(algorithm).getBytes(charset), true), output);
+				}
+				finally {
+					output.close();
+				}
+			}
+			catch (IOException e) {
+				// if we can not persist it, it is simply recalculated after a restart
+			}
+		}
+	}
+}
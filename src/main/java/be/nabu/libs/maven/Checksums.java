@@ -0,0 +1,88 @@
+/*
+* Copyright (C) 2016 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package be.nabu.libs.maven;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * The checksums of a single piece of content for all the supported algorithms
+ */
+public class Checksums {
+	
+	private Map<ChecksumAlgorithm, String> checksums;
+	private long size;
+	
+	public Checksums(Map<ChecksumAlgorithm, String> checksums, long size) {
+		this.checksums = new EnumMap<ChecksumAlgorithm, String>(checksums);
+		this.size = size;
+	}
+	
+	public String get(ChecksumAlgorithm algorithm) {
+		return checksums.get(algorithm);
+	}
+	
+	public String getMd5() {
+		return get(ChecksumAlgorithm.MD5);
+	}
+	
+	public String getSha1() {
+		return get(ChecksumAlgorithm.SHA1);
+	}
+	
+	public String getSha256() {
+		return get(ChecksumAlgorithm.SHA256);
+	}
+	
+	public String getSha512() {
+		return get(ChecksumAlgorithm.SHA512);
+	}
+	
+	/**
+	 * The size of the content in bytes or -1 if it is not known
+	 */
+	public long getSize() {
+		return size;
+	}
+	
+	/**
+	 * Calculates all the checksums in a single pass, the stream is closed afterwards
+	 */
+	public static Checksums calculate(InputStream input) throws IOException {
+		try {
+			ChecksumCalculator calculator = new ChecksumCalculator();
+			byte [] buffer = new byte[8192];
+			int read;
+			while ((read = input.read(buffer)) > 0) {
+				calculator.write(buffer, 0, read);
+			}
+			return calculator.getChecksums();
+		}
+		finally {
+			input.close();
+		}
+	}
+	
+	public static Checksums calculate(byte [] bytes) {
+		ChecksumCalculator calculator = new ChecksumCalculator();
+		calculator.write(bytes, 0, bytes.length);
+		return calculator.getChecksums();
+	}
+}
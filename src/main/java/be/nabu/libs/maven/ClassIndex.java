@@ -0,0 +1,603 @@
+/*
+* Copyright (C) 2016 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package be.nabu.libs.maven;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import be.nabu.libs.resources.api.ManageableContainer;
+import be.nabu.libs.resources.api.ReadableResource;
+import be.nabu.libs.resources.api.Resource;
+import be.nabu.libs.resources.api.ResourceContainer;
+import be.nabu.utils.io.IOUtils;
+
+/**
+ * An index of the classes and packages in the archives of the repository.
+ * 
+ * The class names of each artifact are read from the central directory of the archive in the background, nothing is read until the index is searched for the first time.
+ * By default only archives on the local file system are indexed, for other backends this would mean downloading every archive in the repository.
+ * For searching, all the names are kept in one sorted table: a single byte array with the utf-8 encoded names and an array of offsets, so there is no object per class.
+ * A lookup is a binary search in that table. When the index changes, the table is rebuilt in the background and swapped in, searches always use the last completed table.
+ */
+public class ClassIndex {
+	
+	public static final String NAME = ".classes";
+	
+	private static final int MAGIC = 0x4d56434c;
+	private static final int VERSION = 1;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	
+	/**
+	 * The classes of a single artifact, the names are sorted and separated by newlines
+	 */
+	public static class Indexed {
+		private String groupId, artifactId, version;
+		private boolean isTest;
+		private long lastModified, size;
+		private byte [] classes;
+		
+		public String getGroupId() {
+			return groupId;
+		}
+		public String getArtifactId() {
+			return artifactId;
+		}
+		public String getVersion() {
+			return version;
+		}
+		public boolean isTest() {
+			return isTest;
+		}
+	}
+	
+	public static class Match {
+		private String name;
+		private Indexed artifact;
+		
+		public String getName() {
+			return name;
+		}
+		public Indexed getArtifact() {
+			return artifact;
+		}
+	}
+	
+	/**
+	 * A sorted table of names: name i is at names[offsets[i]] until names[offsets[i + 1]] and belongs to owners[i]
+	 */
+	private static class Table {
+		private byte [] names;
+		private int [] offsets;
+		private Indexed [] owners;
+		
+		private int size() {
+			return owners.length;
+		}
+		
+		private int compare(int index, byte [] value, int length) {
+			int start = offsets[index], end = offsets[index + 1];
+			int max = Math.min(end - start, length);
+			for (int i = 0; i < max; i++) {
+				int difference = (names[start + i] & 0xff) - (value[i] & 0xff);
+				if (difference != 0) {
+					return difference;
+				}
+			}
+			return (end - start) - length;
+		}
+		
+		private boolean startsWith(int index, byte [] prefix) {
+			int start = offsets[index];
+			if (offsets[index + 1] - start < prefix.length) {
+				return false;
+			}
+			for (int i = 0; i < prefix.length; i++) {
+				if (names[start + i] != prefix[i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+		
+		// the first index that is not smaller than the value
+		private int lowerBound(byte [] value) {
+			int low = 0, high = size();
+			while (low < high) {
+				int middle = (low + high) >>> 1;
+				if (compare(middle, value, value.length) < 0) {
+					low = middle + 1;
+				}
+				else {
+					high = middle;
+				}
+			}
+			return low;
+		}
+		
+		private String getName(int index) {
+			return new String(names, offsets[index], offsets[index + 1] - offsets[index], UTF8);
+		}
+	}
+	
+	// the artifacts that are indexed, keyed on their path
+	private Map<String, Indexed> indexed = new ConcurrentHashMap<String, Indexed>();
+	// the artifacts that still have to be read
+	private Map<String, ResourceArtifact> pending = new ConcurrentHashMap<String, ResourceArtifact>();
+	// the entries that were loaded from disk, they are only used once the artifact is added again
+	private Map<String, Indexed> persisted = new ConcurrentHashMap<String, Indexed>();
+	private volatile Table classes, packages;
+	// whether the tables have to be rebuilt and whether the index has to be persisted again
+	private volatile boolean stale = true, changed;
+	// changes are batched for this many ms before the tables are rebuilt
+	private long updateDelay = 1000;
+	private ScheduledThreadPoolExecutor executor;
+	private AtomicBoolean scheduled = new AtomicBoolean();
+	// the archives are only read once the index has been used
+	private volatile boolean active;
+	// whether archives that are not on the local file system are indexed, their entire content has to be read for this
+	private boolean indexRemote;
+	
+	/**
+	 * Registers an artifact, the archive is read in the background once the index is in use unless we already have an up to date entry for it
+	 */
+	public void add(String path, ResourceArtifact artifact) {
+		Indexed current = indexed.get(path);
+		if (current == null) {
+			current = persisted.remove(path);
+			if (current != null && isValid(current, artifact)) {
+				indexed.put(path, current);
+				stale = true;
+				schedule();
+				return;
+			}
+		}
+		if (current == null || !isValid(current, artifact)) {
+			pending.put(path, artifact);
+			schedule();
+		}
+	}
+	
+	public void remove(String path) {
+		pending.remove(path);
+		if (indexed.remove(path) != null) {
+			stale = true;
+			changed = true;
+			schedule();
+		}
+	}
+	
+	/**
+	 * Updates the index in the background, multiple changes within the update delay are handled at once
+	 */
+	private void schedule() {
+		if (active && scheduled.compareAndSet(false, true)) {
+			getExecutor().schedule(new Runnable() {
+				@Override
+				public void run() {
+					scheduled.set(false);
+					update();
+				}
+			}, updateDelay, TimeUnit.MILLISECONDS);
+		}
+	}
+	
+	private synchronized ScheduledThreadPoolExecutor getExecutor() {
+		if (executor == null) {
+			executor = new ScheduledThreadPoolExecutor(1, MavenServer.newThreadFactory("maven-classes", false));
+			executor.setKeepAliveTime(60, TimeUnit.SECONDS);
+			executor.allowCoreThreadTimeOut(true);
+		}
+		return executor;
+	}
+	
+	private void put(String path, ResourceArtifact artifact) throws IOException {
+		// without coordinates a match is useless
+		if (artifact.getGroupId() == null || artifact.getArtifactId() == null || artifact.getVersion() == null) {
+			return;
+		}
+		Indexed entry = new Indexed();
+		entry.groupId = artifact.getGroupId();
+		entry.artifactId = artifact.getArtifactId();
+		entry.version = artifact.getVersion();
+		entry.isTest = artifact.isTest();
+		entry.lastModified = artifact.getLastModified() == null ? 0 : artifact.getLastModified().getTime();
+		entry.size = artifact.getSize();
+		File file = artifact.getFile();
+		if (file == null && !indexRemote) {
+			return;
+		}
+		entry.classes = readClasses(artifact, file);
+		indexed.put(path, entry);
+		stale = true;
+		changed = true;
+	}
+	
+	private static boolean isValid(Indexed entry, ResourceArtifact artifact) {
+		return artifact.getLastModified() != null && entry.lastModified == artifact.getLastModified().getTime() && entry.size == artifact.getSize();
+	}
+	
+	/**
+	 * Reads the class names from the archive, for a war only the classes of the war itself are indexed (not those of its libraries)
+	 */
+	private static byte [] readClasses(ResourceArtifact artifact, File file) throws IOException {
+		String name = artifact.getResource().getName();
+		if (!name.endsWith(".jar") && !name.endsWith(".war")) {
+			return new byte[0];
+		}
+		Set<String> classes = new TreeSet<String>();
+		// the central directory allows us to list the entries without reading the content
+		if (file != null) {
+			ZipFile zip = new ZipFile(file);
+			try {
+				Enumeration<? extends ZipEntry> entries = zip.entries();
+				while (entries.hasMoreElements()) {
+					addClass(classes, entries.nextElement().getName());
+				}
+			}
+			finally {
+				zip.close();
+			}
+		}
+		else {
+			InputStream content = artifact.getContent();
+			if (content == null) {
+				return new byte[0];
+			}
+			ZipInputStream zip = new ZipInputStream(content);
+			try {
+				ZipEntry entry;
+				while ((entry = zip.getNextEntry()) != null) {
+					addClass(classes, entry.getName());
+				}
+			}
+			finally {
+				zip.close();
+			}
+		}
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		for (String className : classes) {
+			if (output.size() > 0) {
+				output.write('\n');
+			}
+			byte [] bytes = className.getBytes(UTF8);
+			output.write(bytes, 0, bytes.length);
+		}
+		return output.toByteArray();
+	}
+	
+	private static void addClass(Set<String> classes, String entry) {
+		if (entry.startsWith("WEB-INF/classes/")) {
+			entry = entry.substring("WEB-INF/classes/".length());
+		}
+		else if (entry.startsWith("WEB-INF/") || entry.startsWith("META-INF/")) {
+			return;
+		}
+		// inner classes are found through their outer class
+		if (entry.endsWith(".class") && entry.indexOf('$') < 0 && !entry.endsWith("module-info.class") && !entry.endsWith("package-info.class")) {
+			classes.add(entry.substring(0, entry.length() - ".class".length()).replace('/', '.'));
+		}
+	}
+	
+	/**
+	 * Reads all the pending artifacts and rebuilds the tables if necessary, artifacts that can not be read are not indexed.
+	 * This is done in the background after every change once the index is in use, it only needs to be called explicitly to have an up to date index immediately.
+	 */
+	public synchronized void update() {
+		active = true;
+		for (Map.Entry<String, ResourceArtifact> entry : new ArrayList<Map.Entry<String, ResourceArtifact>>(pending.entrySet())) {
+			if (pending.remove(entry.getKey(), entry.getValue())) {
+				try {
+					put(entry.getKey(), entry.getValue());
+				}
+				catch (IOException e) {
+					// a corrupt archive has no classes
+				}
+			}
+		}
+		if (stale) {
+			stale = false;
+			rebuild();
+		}
+	}
+	
+	private void rebuild() {
+		List<Indexed> owners = new ArrayList<Indexed>(indexed.values());
+		// classes
+		int amount = 0, length = 0;
+		for (Indexed owner : owners) {
+			if (owner.classes.length > 0) {
+				length += owner.classes.length;
+				for (byte single : owner.classes) {
+					if (single == '\n') {
+						amount++;
+					}
+				}
+				amount++;
+			}
+		}
+		byte [] names = new byte[length];
+		int [] starts = new int[amount], ends = new int[amount];
+		Indexed [] ownerOf = new Indexed[amount];
+		int position = 0, index = 0;
+		for (Indexed owner : owners) {
+			if (owner.classes.length == 0) {
+				continue;
+			}
+			System.arraycopy(owner.classes, 0, names, position, owner.classes.length);
+			int start = position;
+			for (int i = 0; i <= owner.classes.length; i++) {
+				if (i == owner.classes.length || owner.classes[i] == '\n') {
+					starts[index] = start;
+					ends[index] = position + i;
+					ownerOf[index++] = owner;
+					start = position + i + 1;
+				}
+			}
+			position += owner.classes.length;
+		}
+		classes = build(names, starts, ends, ownerOf, index);
+		
+		// packages, each package is listed once per artifact
+		ByteArrayOutputStream packageNames = new ByteArrayOutputStream();
+		List<int[]> packageRanges = new ArrayList<int[]>();
+		List<Indexed> packageOwners = new ArrayList<Indexed>();
+		// the classes of an artifact are next to each other
+		Set<String> seen = new HashSet<String>();
+		for (int i = 0; i < index; i++) {
+			if (i > 0 && ownerOf[i] != ownerOf[i - 1]) {
+				seen.clear();
+			}
+			int separator = -1;
+			for (int j = ends[i] - 1; j >= starts[i]; j--) {
+				if (names[j] == '.') {
+					separator = j;
+					break;
+				}
+			}
+			if (separator > starts[i]) {
+				String packageName = new String(names, starts[i], separator - starts[i], UTF8);
+				if (seen.add(packageName)) {
+					byte [] bytes = packageName.getBytes(UTF8);
+					packageRanges.add(new int[] { packageNames.size(), packageNames.size() + bytes.length });
+					packageNames.write(bytes, 0, bytes.length);
+					packageOwners.add(ownerOf[i]);
+				}
+			}
+		}
+		int [] packageStarts = new int[packageRanges.size()], packageEnds = new int[packageRanges.size()];
+		for (int i = 0; i < packageRanges.size(); i++) {
+			packageStarts[i] = packageRanges.get(i)[0];
+			packageEnds[i] = packageRanges.get(i)[1];
+		}
+		packages = build(packageNames.toByteArray(), packageStarts, packageEnds, packageOwners.toArray(new Indexed[0]), packageRanges.size());
+	}
+	
+	/**
+	 * Sorts the names and copies them in sorted order into a new table
+	 */
+	private static Table build(byte [] names, int [] starts, int [] ends, Indexed [] owners, int amount) {
+		int [] order = new int[amount];
+		for (int i = 0; i < amount; i++) {
+			order[i] = i;
+		}
+		sort(order, new int[amount], 0, amount, names, starts, ends);
+		Table table = new Table();
+		table.offsets = new int[amount + 1];
+		table.owners = new Indexed[amount];
+		int length = 0;
+		for (int i = 0; i < amount; i++) {
+			length += ends[i] - starts[i];
+		}
+		table.names = new byte[length];
+		int position = 0;
+		for (int i = 0; i < amount; i++) {
+			int entry = order[i];
+			table.offsets[i] = position;
+			System.arraycopy(names, starts[entry], table.names, position, ends[entry] - starts[entry]);
+			position += ends[entry] - starts[entry];
+			table.owners[i] = owners[entry];
+		}
+		table.offsets[amount] = position;
+		return table;
+	}
+	
+	// a merge sort on the indexes so we don't need an object per name
+	private static void sort(int [] order, int [] buffer, int from, int to, byte [] names, int [] starts, int [] ends) {
+		if (to - from < 2) {
+			return;
+		}
+		int middle = (from + to) >>> 1;
+		sort(order, buffer, from, middle, names, starts, ends);
+		sort(order, buffer, middle, to, names, starts, ends);
+		if (compare(names, starts, ends, order[middle - 1], order[middle]) <= 0) {
+			return;
+		}
+		System.arraycopy(order, from, buffer, from, to - from);
+		int left = from, right = middle;
+		for (int i = from; i < to; i++) {
+			if (right >= to || (left < middle && compare(names, starts, ends, buffer[left], buffer[right]) <= 0)) {
+				order[i] = buffer[left++];
+			}
+			else {
+				order[i] = buffer[right++];
+			}
+		}
+	}
+	
+	private static int compare(byte [] names, int [] starts, int [] ends, int first, int second) {
+		int firstLength = ends[first] - starts[first], secondLength = ends[second] - starts[second];
+		int max = Math.min(firstLength, secondLength);
+		for (int i = 0; i < max; i++) {
+			int difference = (names[starts[first] + i] & 0xff) - (names[starts[second] + i] & 0xff);
+			if (difference != 0) {
+				return difference;
+			}
+		}
+		return firstLength - secondLength;
+	}
+	
+	/**
+	 * Searches the classes (or packages) by exact name or by prefix, at most limit matches are returned in alphabetical order.
+	 * Artifacts that were changed since the last update in the background are not found yet.
+	 * The first search starts the indexing in the background, until it has completed nothing is found.
+	 */
+	public List<Match> search(String query, boolean exact, boolean searchPackages, int limit) {
+		if (!active) {
+			active = true;
+			schedule();
+		}
+		Table table = searchPackages ? packages : classes;
+		List<Match> matches = new ArrayList<Match>();
+		// the first update has not completed yet
+		if (table == null) {
+			return matches;
+		}
+		byte [] value = query.getBytes(UTF8);
+		for (int i = table.lowerBound(value); i < table.size() && matches.size() < limit; i++) {
+			if (exact ? table.compare(i, value, value.length) != 0 : !table.startsWith(i, value)) {
+				break;
+			}
+			Match match = new Match();
+			match.name = exact ? query : table.getName(i);
+			match.artifact = table.owners[i];
+			matches.add(match);
+		}
+		return matches;
+	}
+	
+	/**
+	 * Loads the persisted index from the root, entries are only used for artifacts that have not changed since
+	 */
+	public void read(ResourceContainer<?> root) {
+		Resource resource = root.getChild(NAME);
+		if (!(resource instanceof ReadableResource)) {
+			return;
+		}
+		try {
+			DataInputStream input = new DataInputStream(new BufferedInputStream(IOUtils.toInputStream(((ReadableResource) resource).getReadable())));
+			try {
+				if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+					return;
+				}
+				int amount = input.readInt();
+				Map<String, Indexed> entries = new ConcurrentHashMap<String, Indexed>();
+				for (int i = 0; i < amount; i++) {
+					String path = input.readUTF();
+					Indexed entry = new Indexed();
+					entry.groupId = input.readUTF();
+					entry.artifactId = input.readUTF();
+					entry.version = input.readUTF();
+					entry.isTest = input.readBoolean();
+					entry.lastModified = input.readLong();
+					entry.size = input.readLong();
+					entry.classes = new byte[input.readInt()];
+					input.readFully(entry.classes);
+					entries.put(path, entry);
+				}
+				// the trailing count protects against an index that was only partially written
+				if (input.readInt() == amount) {
+					persisted.putAll(entries);
+				}
+			}
+			finally {
+				input.close();
+			}
+		}
+		catch (IOException e) {
+			// the artifacts are simply read again
+		}
+	}
+	
+	/**
+	 * Persists the index if it has changed since it was last written
+	 */
+	public void write(ResourceContainer<?> root) throws IOException {
+		if (!changed || !(root instanceof ManageableContainer)) {
+			return;
+		}
+		changed = false;
+		// anything that was not added again since it was loaded, no longer exists
+		persisted.clear();
+		List<Map.Entry<String, Indexed>> entries = new ArrayList<Map.Entry<String, Indexed>>();
+		for (Map.Entry<String, Indexed> entry : indexed.entrySet()) {
+			if (entry.getValue().groupId != null && entry.getValue().artifactId != null && entry.getValue().version != null) {
+				entries.add(entry);
+			}
+		}
+		IndexSnapshot.write(root, NAME, output -> {
+			output.writeInt(MAGIC);
+			output.writeInt(VERSION);
+			output.writeInt(entries.size());
+			for (Map.Entry<String, Indexed> entry : entries) {
+				Indexed value = entry.getValue();
+				output.writeUTF(entry.getKey());
+				output.writeUTF(value.groupId);
+				output.writeUTF(value.artifactId);
+				output.writeUTF(value.version);
+				output.writeBoolean(value.isTest);
+				output.writeLong(value.lastModified);
+				output.writeLong(value.size);
+				output.writeInt(value.classes.length);
+				output.write(value.classes);
+			}
+			output.writeInt(entries.size());
+		});
+	}
+	
+	/**
+	 * Whether every known artifact is in the tables that are searched
+	 */
+	public boolean isComplete() {
+		return classes != null && !stale && pending.isEmpty();
+	}
+	
+	public long getUpdateDelay() {
+		return updateDelay;
+	}
+
+	public void setUpdateDelay(long updateDelay) {
+		this.updateDelay = updateDelay;
+	}
+	
+	public boolean isIndexRemote() {
+		return indexRemote;
+	}
+	
+	public void setIndexRemote(boolean indexRemote) {
+		this.indexRemote = indexRemote;
+	}
+}
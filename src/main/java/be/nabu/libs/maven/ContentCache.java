@@ -0,0 +1,105 @@
+/*
+* Copyright (C) 2016 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package be.nabu.libs.maven;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded least recently used cache of rendered content, for example poms or listings.
+ * Each entry is stored with a stamp (e.g. a modification date), if the stamp no longer matches the entry is reloaded.
+ */
+public class ContentCache {
+	
+	public interface ContentLoader {
+		public CachedContent load() throws IOException;
+	}
+	
+	private static class CacheEntry {
+		private long stamp;
+		private CachedContent content;
+		
+		private CacheEntry(long stamp, CachedContent content) {
+			this.stamp = stamp;
+			this.content = content;
+		}
+	}
+	
+	private int maxEntries;
+	private Map<String, CacheEntry> entries;
+	private CacheStatistics statistics = new CacheStatistics();
+	
+	public ContentCache(final int maxEntries) {
+		this.maxEntries = maxEntries;
+		this.entries = new LinkedHashMap<String, CacheEntry>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest) {
+				if (size() > ContentCache.this.maxEntries) {
+					statistics.evict();
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+	
+	/**
+	 * Loading happens outside of the lock, concurrent misses on the same key may load it more than once
+	 */
+	public CachedContent get(String key, long stamp, ContentLoader loader) throws IOException {
+		CacheEntry entry;
+		synchronized(entries) {
+			entry = entries.get(key);
+		}
+		if (entry != null && entry.stamp == stamp) {
+			statistics.hit();
+			return entry.content;
+		}
+		statistics.miss();
+		CachedContent content = loader.load();
+		// if nothing is found, nothing is cached
+		if (content != null) {
+			synchronized(entries) {
+				entries.put(key, new CacheEntry(stamp, content));
+			}
+		}
+		return content;
+	}
+	
+	public void invalidate(String key) {
+		synchronized(entries) {
+			entries.remove(key);
+		}
+	}
+	
+	public void clear() {
+		synchronized(entries) {
+			entries.clear();
+		}
+	}
+	
+	public CacheStatistics getStatistics() {
+		return statistics;
+	}
+	
+	public int getMaxEntries() {
+		return maxEntries;
+	}
+}
@@ -0,0 +1,113 @@
+/*
+* Copyright (C) 2016 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package be.nabu.libs.maven;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The content encodings we can negotiate with the client
+ */
+public enum ContentEncoding {
+	// in order of preference
+	GZIP("gzip"),
+	DEFLATE("deflate");
+	
+	private String name;
+
+	private ContentEncoding(String name) {
+		this.name = name;
+	}
+
+	public String getName() {
+		return name;
+	}
+	
+	public byte [] encode(byte [] content) {
+		ByteArrayOutputStream output = new ByteArrayOutputStream(Math.max(64, content.length / 4));
+		try {
+			OutputStream encoder = this == GZIP ? new GZIPOutputStream(output) : new DeflaterOutputStream(output);
+			try {
+				encoder.write(content);
+			}
+			finally {
+				encoder.close();
+			}
+		}
+		catch (IOException e) {
+			// can not happen on a byte array
+			throw new UncheckedIOException(e);
+		}
+		return output.toByteArray();
+	}
+	
+	/**
+	 * Picks the best supported encoding from an Accept-Encoding header, returns null if the content should not be encoded
+	 */
+	public static ContentEncoding negotiate(String acceptEncoding) {
+		if (acceptEncoding == null) {
+			return null;
+		}
+		ContentEncoding best = null;
+		double bestQuality = 0;
+		double wildcard = -1;
+		double [] qualities = new double[values().length];
+		for (String part : acceptEncoding.split(",")) {
+			String [] parameters = part.trim().split(";");
+			String name = parameters[0].trim();
+			double quality = 1;
+			for (int i = 1; i < parameters.length; i++) {
+				String parameter = parameters[i].trim();
+				if (parameter.startsWith("q=")) {
+					try {
+						quality = Double.parseDouble(parameter.substring(2).trim());
+					}
+					catch (NumberFormatException e) {
+						quality = 0;
+					}
+				}
+			}
+			if (name.equals("*")) {
+				wildcard = quality;
+			}
+			else {
+				for (ContentEncoding encoding : values()) {
+					if (encoding.name.equalsIgnoreCase(name)) {
+						qualities[encoding.ordinal()] = quality;
+						// use -1 to differentiate between "not mentioned" and "explicitly refused"
+						if (quality == 0) {
+							qualities[encoding.ordinal()] = -1;
+						}
+					}
+				}
+			}
+		}
+		for (ContentEncoding encoding : values()) {
+			double quality = qualities[encoding.ordinal()] == 0 ? wildcard : qualities[encoding.ordinal()];
+			if (quality > bestQuality) {
+				best = encoding;
+				bestQuality = quality;
+			}
+		}
+		return best;
+	}
+}
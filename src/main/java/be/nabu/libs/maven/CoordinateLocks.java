@@ -0,0 +1,60 @@
+/*
+* Copyright (C) 2016 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package be.nabu.libs.maven;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Hands out a lock per coordinate, locks are removed again once no one is using them
+ */
+public class CoordinateLocks {
+
+	private Map<String, CoordinateLock> locks = new ConcurrentHashMap<String, CoordinateLock>();
+	
+	public void lock(String coordinate) {
+		CoordinateLock lock = locks.compute(coordinate, (key, current) -> {
+			if (current == null) {
+				current = new CoordinateLock();
+			}
+			current.users++;
+			return current;
+		});
+		lock.lock();
+	}
+	
+	public void unlock(String coordinate) {
+		CoordinateLock lock = locks.get(coordinate);
+		if (lock == null || !lock.isHeldByCurrentThread()) {
+			throw new IllegalMonitorStateException("The coordinate is not locked by this thread: " + coordinate);
+		}
+		lock.unlock();
+		locks.computeIfPresent(coordinate, (key, current) -> --current.users == 0 ? null : current);
+	}
+	
+	public static String getCoordinate(String groupId, String artifactId, String version) {
+		return groupId + ":" + artifactId + ":" + version;
+	}
+	
+	private static class CoordinateLock extends ReentrantLock {
+		private static final long serialVersionUID = 1L;
+		// only modified within the compute of the map
+		private int users;
+	}
+}
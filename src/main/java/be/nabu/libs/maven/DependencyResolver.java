@@ -0,0 +1,118 @@
+/*
+* Copyright (C) 2016 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package be.nabu.libs.maven;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import be.nabu.libs.maven.api.Artifact;
+import be.nabu.libs.maven.api.Repository;
+
+/**
+ * Resolves the declared dependencies of a pom against the repository.
+ * Resolution is kept simple: versions are taken from the pom itself, its dependency management or that of its parents (as far as they are in the repository) and properties are interpolated.
+ * Version ranges and imported boms are not supported, such dependencies are skipped.
+ * 
+ * The parsed parents are kept for the lifetime of the resolver, it is meant to be used for one request or task.
+ */
+public class DependencyResolver {
+	
+	private Repository repository;
+	private Set<String> scopes;
+	// parsed poms of parents, they are shared by many artifacts
+	private Map<String, PomParser.Pom> parents = new HashMap<String, PomParser.Pom>();
+	
+	public DependencyResolver(Repository repository, Set<String> scopes) {
+		this.repository = repository;
+		this.scopes = scopes;
+	}
+	
+	/**
+	 * The dependencies in the given scopes that are not optional
+	 */
+	public List<BatchResolver.Coordinate> getDependencies(PomParser.Pom pom) throws IOException {
+		// collect the properties and managed versions of the pom and its parents, the closest one wins
+		Map<String, String> properties = new HashMap<String, String>();
+		List<PomParser.Dependency> managedDependencies = new ArrayList<PomParser.Dependency>();
+		PomParser.Pom current = pom;
+		for (int depth = 0; current != null && depth < 10; depth++) {
+			for (Map.Entry<String, String> entry : PomParser.getProperties(current).entrySet()) {
+				properties.putIfAbsent(entry.getKey(), entry.getValue());
+			}
+			managedDependencies.addAll(current.getManagedDependencies());
+			current = getParent(current);
+		}
+		// like the dependencies themselves, the managed ones can use properties (e.g. ${project.groupId}) so they are only keyed once all properties are known
+		Map<String, String> managed = new HashMap<String, String>();
+		for (PomParser.Dependency dependency : managedDependencies) {
+			if (dependency.getVersion() != null) {
+				managed.putIfAbsent(PomParser.interpolate(dependency.getGroupId(), properties) + ":" + PomParser.interpolate(dependency.getArtifactId(), properties), dependency.getVersion());
+			}
+		}
+		List<BatchResolver.Coordinate> dependencies = new ArrayList<BatchResolver.Coordinate>();
+		for (PomParser.Dependency dependency : pom.getDependencies()) {
+			if (dependency.isOptional() || !scopes.contains(dependency.getScope())) {
+				continue;
+			}
+			String groupId = PomParser.interpolate(dependency.getGroupId(), properties);
+			String artifactId = PomParser.interpolate(dependency.getArtifactId(), properties);
+			String version = dependency.getVersion();
+			if (version == null) {
+				version = managed.get(groupId + ":" + artifactId);
+			}
+			version = PomParser.interpolate(version, properties);
+			// can not be resolved
+			if (groupId == null || artifactId == null || version == null || version.contains("${")) {
+				continue;
+			}
+			dependencies.add(new BatchResolver.Coordinate(groupId, artifactId, version, dependency.isTest()));
+		}
+		return dependencies;
+	}
+	
+	/**
+	 * The parsed parent of the pom or null if it has none or it is not in the repository
+	 */
+	public PomParser.Pom getParent(PomParser.Pom pom) throws IOException {
+		if (pom.getParentGroupId() == null || pom.getParentArtifactId() == null || pom.getParentVersion() == null) {
+			return null;
+		}
+		String key = pom.getParentGroupId() + ":" + pom.getParentArtifactId() + ":" + pom.getParentVersion();
+		if (!parents.containsKey(key)) {
+			Artifact parent = repository.getArtifact(pom.getParentGroupId(), pom.getParentArtifactId(), pom.getParentVersion(), false);
+			InputStream input = parent == null ? null : parent.getPom();
+			if (input == null) {
+				parents.put(key, null);
+			}
+			else {
+				try {
+					parents.put(key, PomParser.parse(input));
+				}
+				finally {
+					input.close();
+				}
+			}
+		}
+		return parents.get(key);
+	}
+}
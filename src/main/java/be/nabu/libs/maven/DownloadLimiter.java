@@ -0,0 +1,153 @@
+/*
+* Copyright (C) 2016 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package be.nabu.libs.maven;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+
+import be.nabu.utils.io.api.ByteBuffer;
+import be.nabu.utils.io.api.ReadableContainer;
+
+/**
+ * Limits the amount of large downloads that are streamed at the same time so they can not starve the cheap requests (metadata, checksums, poms).
+ * A permit is taken when the response is created and released when the server closes the content. 
+ * If no permit is available, the client is immediately asked to retry later: waiting for a permit would hold a thread of the server pool, which is exactly what the limit protects.
+ * 
+ * If a response is aborted before it is streamed, the server may never close the content. To prevent such a permit from leaking, a permit that has not been read from for the lease timeout is reclaimed.
+ * A download whose permit was reclaimed fails if it is read from again, so it can never stream without a permit.
+ */
+public class DownloadLimiter {
+	
+	private Semaphore permits;
+	private int maxConcurrent;
+	// only downloads of at least this size are limited
+	private long threshold;
+	// the amount of seconds the client is asked to wait
+	private int retryAfter = 5;
+	// a permit that is not read from for this long (in ms) is reclaimed
+	private long leaseTimeout = 1000l * 60;
+	private Set<Lease> leases = ConcurrentHashMap.newKeySet();
+	
+	public DownloadLimiter(int maxConcurrent, long threshold) {
+		this.maxConcurrent = maxConcurrent;
+		this.threshold = threshold;
+		this.permits = new Semaphore(maxConcurrent);
+	}
+	
+	public boolean isLimited(long size) {
+		return size >= threshold;
+	}
+	
+	/**
+	 * Wraps the content so the permit is released when it is closed, returns null (and closes the content) if no permit is available
+	 */
+	public ReadableContainer<ByteBuffer> acquire(ReadableContainer<ByteBuffer> content) throws IOException {
+		reclaim();
+		if (!permits.tryAcquire()) {
+			content.close();
+			return null;
+		}
+		Lease lease = new Lease(content);
+		leases.add(lease);
+		return lease;
+	}
+	
+	// releases the permits of downloads that have not been read from for too long
+	private void reclaim() {
+		long now = System.currentTimeMillis();
+		for (Lease lease : leases) {
+			lease.reclaim(now);
+		}
+	}
+	
+	private class Lease implements ReadableContainer<ByteBuffer> {
+		private ReadableContainer<ByteBuffer> content;
+		private long lastRead = System.currentTimeMillis();
+		private boolean released;
+		
+		private Lease(ReadableContainer<ByteBuffer> content) {
+			this.content = content;
+		}
+		
+		@Override
+		public long read(ByteBuffer target) throws IOException {
+			// once reclaimed, the permit may be used by another download
+			synchronized(this) {
+				if (released) {
+					throw new IOException("The download was idle for more than " + leaseTimeout + "ms");
+				}
+				lastRead = System.currentTimeMillis();
+			}
+			return content.read(target);
+		}
+		
+		private synchronized void reclaim(long now) {
+			if (now - lastRead > leaseTimeout) {
+				release();
+			}
+		}
+		
+		@Override
+		public void close() throws IOException {
+			try {
+				content.close();
+			}
+			finally {
+				release();
+			}
+		}
+		
+		private synchronized void release() {
+			if (!released) {
+				released = true;
+				leases.remove(this);
+				permits.release();
+			}
+		}
+	}
+	
+	public int getAvailable() {
+		return permits.availablePermits();
+	}
+	
+	public int getMaxConcurrent() {
+		return maxConcurrent;
+	}
+	
+	public long getThreshold() {
+		return threshold;
+	}
+
+	public int getRetryAfter() {
+		return retryAfter;
+	}
+
+	public void setRetryAfter(int retryAfter) {
+		this.retryAfter = retryAfter;
+	}
+
+	public long getLeaseTimeout() {
+		return leaseTimeout;
+	}
+
+	public void setLeaseTimeout(long leaseTimeout) {
+		this.leaseTimeout = leaseTimeout;
+	}
+}
@@ -0,0 +1,100 @@
+/*
+* Copyright (C) 2016 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package be.nabu.libs.maven;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+
+import be.nabu.utils.io.api.ByteBuffer;
+import be.nabu.utils.io.api.ReadableContainer;
+
+/**
+ * Streams a local file through a file channel using a fixed size chunk so the memory used does not depend on the size of the file.
+ * Exactly the size of the file at the time it was opened is streamed, so it can be used as the content length even if the file changes while streaming.
+ * If the file is truncated before that size is reached, the read fails so the connection is aborted instead of ending normally.
+ */
+public class FileReadableContainer implements ReadableContainer<ByteBuffer> {
+
+	private static final int CHUNK_SIZE = 1024 * 64;
+	
+	private FileChannel channel;
+	private long size, remaining;
+	private byte [] chunk;
+	private java.nio.ByteBuffer wrapper;
+	private int position, limit;
+	private boolean eof;
+	
+	@SuppressWarnings("resource")
+	public FileReadableContainer(File file) throws IOException {
+		this.channel = new RandomAccessFile(file, "r").getChannel();
+		this.size = channel.size();
+		this.remaining = size;
+		// don't allocate more than we need for small files
+		this.chunk = new byte[(int) Math.max(1, Math.min(CHUNK_SIZE, size))];
+		this.wrapper = java.nio.ByteBuffer.wrap(chunk);
+	}
+	
+	@Override
+	public long read(ByteBuffer target) throws IOException {
+		long total = 0;
+		while (true) {
+			// first write whatever is left over from the last read
+			if (position < limit) {
+				int written = target.write(chunk, position, limit - position);
+				position += written;
+				total += written;
+				// the target is full
+				if (position < limit) {
+					break;
+				}
+			}
+			if (eof) {
+				break;
+			}
+			wrapper.clear();
+			wrapper.limit((int) Math.min(chunk.length, remaining));
+			int read = remaining == 0 ? -1 : channel.read(wrapper);
+			// the size was promised to the client, ending early would make a truncated artifact look complete
+			if (read < 0 && remaining > 0) {
+				throw new IOException("The file was truncated while it was being read, " + remaining + " of " + size + " bytes are missing");
+			}
+			else if (read < 0) {
+				eof = true;
+				break;
+			}
+			remaining -= read;
+			position = 0;
+			limit = read;
+		}
+		return total == 0 && eof ? -1 : total;
+	}
+
+	/**
+	 * The size of the file when it was opened
+	 */
+	public long getSize() {
+		return size;
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+}
@@ -0,0 +1,106 @@
+/*
+* Copyright (C) 2016 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package be.nabu.libs.maven;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock free histogram with fixed exponential buckets.
+ * Values are recorded in their base unit (e.g. nanoseconds) and are scaled when they are written out (e.g. to seconds).
+ */
+public class Histogram {
+	
+	private long [] bounds;
+	private double scale;
+	// the last bucket is for everything above the highest bound
+	private LongAdder [] buckets;
+	private LongAdder sum = new LongAdder();
+	
+	public Histogram(long [] bounds, double scale) {
+		this.bounds = bounds;
+		this.scale = scale;
+		this.buckets = new LongAdder[bounds.length + 1];
+		for (int i = 0; i < buckets.length; i++) {
+			buckets[i] = new LongAdder();
+		}
+	}
+	
+	/**
+	 * Creates the bounds start, start * factor, start * factor^2...
+	 */
+	public static long [] exponential(long start, int factor, int amount) {
+		long [] bounds = new long[amount];
+		for (int i = 0; i < amount; i++) {
+			bounds[i] = i == 0 ? start : bounds[i - 1] * factor;
+		}
+		return bounds;
+	}
+	
+	/**
+	 * Latencies in nanoseconds, from 50 microseconds up to about 52 seconds, written out in seconds
+	 */
+	public static Histogram latency() {
+		return new Histogram(exponential(50000, 2, 21), 1e-9);
+	}
+	
+	/**
+	 * Sizes in bytes, from 1kb up to 1gb
+	 */
+	public static Histogram size() {
+		return new Histogram(exponential(1024, 4, 11), 1);
+	}
+	
+	public void record(long value) {
+		int index = Arrays.binarySearch(bounds, value);
+		// the bounds are inclusive, if the value is not an exact bound we get the insertion point
+		buckets[index < 0 ? -index - 1 : index].increment();
+		sum.add(value);
+	}
+	
+	public long getCount() {
+		long count = 0;
+		for (LongAdder bucket : buckets) {
+			count += bucket.sum();
+		}
+		return count;
+	}
+	
+	public double getSum() {
+		return sum.sum() * scale;
+	}
+	
+	/**
+	 * Writes the histogram in prometheus text format, the labels (if any) should be formatted as: key="value"
+	 */
+	public void write(Writer writer, String name, String labels) throws IOException {
+		String prefix = labels == null || labels.isEmpty() ? "" : labels + ",";
+		long cumulative = 0;
+		for (int i = 0; i < bounds.length; i++) {
+			cumulative += buckets[i].sum();
+			writer.write(name + "_bucket{" + prefix + "le=\"" + (bounds[i] * scale) + "\"} " + cumulative + "\n");
+		}
+		cumulative += buckets[bounds.length].sum();
+		writer.write(name + "_bucket{" + prefix + "le=\"+Inf\"} " + cumulative + "\n");
+		String suffix = labels == null || labels.isEmpty() ? "" : "{" + labels + "}";
+		writer.write(name + "_sum" + suffix + " " + getSum() + "\n");
+		writer.write(name + "_count" + suffix + " " + cumulative + "\n");
+	}
+}
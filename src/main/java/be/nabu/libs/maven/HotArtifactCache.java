@@ -0,0 +1,269 @@
+/*
+* Copyright (C) 2016 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package be.nabu.libs.maven;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import be.nabu.libs.events.api.EventDispatcher;
+import be.nabu.libs.events.api.EventHandler;
+import be.nabu.libs.maven.api.Artifact;
+import be.nabu.utils.io.api.ByteBuffer;
+import be.nabu.utils.io.api.ReadableContainer;
+
+/**
+ * Keeps the content of frequently downloaded artifacts in direct buffers so they are served from memory instead of the backend.
+ * This is only useful for artifacts that do not live on the local file system (those are already in the page cache), the caller decides when to use it.
+ * 
+ * The cache has a budget in bytes and evicts the least recently used artifacts when it is full.
+ * An artifact is only admitted once it has been requested a number of times, a single large download does not push out the popular artifacts.
+ * Because the content lives outside of the heap it does not add to the garbage collection, an evicted buffer is released once the last download using it is done.
+ */
+public class HotArtifactCache {
+
+	private static final int CHUNK_SIZE = 1024 * 64;
+	
+	private long budget, used;
+	// artifacts larger than this are never cached
+	private long maxEntrySize;
+	// how often an artifact must be requested before it is cached
+	private int admissionThreshold = 2;
+	// the amount of artifacts that are tracked for admission, it is reset when it grows beyond this
+	private int maxCandidates = 10000;
+	
+	private Map<String, CacheEntry> entries = new LinkedHashMap<String, CacheEntry>(16, 0.75f, true);
+	private Map<String, Integer> candidates = new ConcurrentHashMap<String, Integer>();
+	private CacheStatistics statistics = new CacheStatistics();
+	
+	private static class CacheEntry {
+		private java.nio.ByteBuffer buffer;
+		private long stamp;
+		
+		CacheEntry(java.nio.ByteBuffer buffer, long stamp) {
+			this.buffer = buffer;
+			this.stamp = stamp;
+		}
+	}
+	
+	public HotArtifactCache(long budget) {
+		this.budget = budget;
+		this.maxEntrySize = Math.max(1, budget / 16);
+		statistics.resize(0);
+	}
+	
+	/**
+	 * Returns the content of the artifact from memory, it is loaded if it is popular enough. Returns null if the artifact is not (yet) cached, the caller should stream it from the backend.
+	 */
+	public ReadableContainer<ByteBuffer> get(ResourceArtifact artifact) throws IOException {
+		String key = getKey(artifact);
+		long stamp = getStamp(artifact);
+		synchronized (this) {
+			CacheEntry entry = entries.get(key);
+			if (entry != null) {
+				if (entry.stamp == stamp) {
+					statistics.hit();
+					return new DirectReadableContainer(entry.buffer.duplicate());
+				}
+				remove(key);
+			}
+		}
+		statistics.miss();
+		long size = artifact.getSize();
+		if (size <= 0 || size > maxEntrySize) {
+			return null;
+		}
+		Integer requests = candidates.merge(key, 1, Integer::sum);
+		if (requests < admissionThreshold) {
+			if (candidates.size() > maxCandidates) {
+				candidates.clear();
+			}
+			return null;
+		}
+		candidates.remove(key);
+		java.nio.ByteBuffer buffer = load(artifact, (int) size);
+		// it changed while we were reading it
+		if (buffer == null) {
+			return null;
+		}
+		synchronized (this) {
+			remove(key);
+			entries.put(key, new CacheEntry(buffer, stamp));
+			used += size;
+			statistics.resize(size);
+			Iterator<Map.Entry<String, CacheEntry>> iterator = entries.entrySet().iterator();
+			while (used > budget && iterator.hasNext()) {
+				Map.Entry<String, CacheEntry> eldest = iterator.next();
+				iterator.remove();
+				used -= eldest.getValue().buffer.capacity();
+				statistics.resize(-eldest.getValue().buffer.capacity());
+				statistics.evict();
+			}
+		}
+		return new DirectReadableContainer(buffer.duplicate());
+	}
+	
+	private static java.nio.ByteBuffer load(ResourceArtifact artifact, int size) throws IOException {
+		java.nio.ByteBuffer buffer = java.nio.ByteBuffer.allocateDirect(size);
+		byte [] chunk = new byte[Math.min(CHUNK_SIZE, size)];
+		InputStream input = artifact.getContent();
+		try {
+			int read;
+			while ((read = input.read(chunk)) > 0) {
+				if (read > buffer.remaining()) {
+					return null;
+				}
+				buffer.put(chunk, 0, read);
+			}
+		}
+		finally {
+			input.close();
+		}
+		if (buffer.hasRemaining()) {
+			return null;
+		}
+		buffer.flip();
+		return buffer.asReadOnlyBuffer();
+	}
+	
+	private void remove(String key) {
+		CacheEntry entry = entries.remove(key);
+		if (entry != null) {
+			used -= entry.buffer.capacity();
+			statistics.resize(-entry.buffer.capacity());
+		}
+	}
+	
+	public synchronized void invalidate(Artifact artifact) {
+		remove(getKey(artifact));
+	}
+	
+	public synchronized void clear() {
+		entries.clear();
+		statistics.resize(-used);
+		used = 0;
+		candidates.clear();
+	}
+	
+	/**
+	 * Drops artifacts from the cache when they are replaced or deleted, artifacts changed behind our back are detected by their modification date and size
+	 */
+	public void subscribe(EventDispatcher dispatcher) {
+		dispatcher.subscribe(CreateResourceRepositoryEvent.class, new EventHandler<CreateResourceRepositoryEvent, Void>() {
+			@Override
+			public Void handle(CreateResourceRepositoryEvent event) {
+				invalidate(event.getArtifact());
+				return null;
+			}
+		});
+		dispatcher.subscribe(DeleteResourceRepositoryEvent.class, new EventHandler<DeleteResourceRepositoryEvent, Void>() {
+			@Override
+			public Void handle(DeleteResourceRepositoryEvent event) {
+				invalidate(event.getArtifact());
+				return null;
+			}
+		});
+	}
+	
+	private static String getKey(Artifact artifact) {
+		return artifact.getGroupId() + ":" + artifact.getArtifactId() + ":" + artifact.getVersion() + (artifact.isTest() ? ":tests" : "");
+	}
+	
+	private static long getStamp(ResourceArtifact artifact) {
+		return (artifact.getLastModified() == null ? 0 : artifact.getLastModified().getTime()) * 31 + artifact.getSize();
+	}
+	
+	/**
+	 * Reads from a (shared) direct buffer, every reader has its own position
+	 */
+	private static class DirectReadableContainer implements ReadableContainer<ByteBuffer> {
+		
+		private java.nio.ByteBuffer buffer;
+		private byte [] chunk;
+		
+		DirectReadableContainer(java.nio.ByteBuffer buffer) {
+			this.buffer = buffer;
+			this.chunk = new byte[Math.max(1, Math.min(CHUNK_SIZE, buffer.remaining()))];
+		}
+		
+		@Override
+		public long read(ByteBuffer target) throws IOException {
+			if (!buffer.hasRemaining()) {
+				return -1;
+			}
+			long total = 0;
+			while (buffer.hasRemaining() && target.remainingSpace() > 0) {
+				int length = (int) Math.min(Math.min(chunk.length, buffer.remaining()), target.remainingSpace());
+				int position = buffer.position();
+				buffer.get(chunk, 0, length);
+				int written = target.write(chunk, 0, length);
+				// put back what the target did not take
+				buffer.position(position + written);
+				total += written;
+				if (written < length) {
+					break;
+				}
+			}
+			return total;
+		}
+
+		@Override
+		public void close() {
+			buffer.position(buffer.limit());
+		}
+	}
+	
+	public CacheStatistics getStatistics() {
+		return statistics;
+	}
+	
+	public long getBudget() {
+		return budget;
+	}
+	
+	public synchronized long getUsed() {
+		return used;
+	}
+	
+	public long getMaxEntrySize() {
+		return maxEntrySize;
+	}
+
+	public void setMaxEntrySize(long maxEntrySize) {
+		this.maxEntrySize = maxEntrySize;
+	}
+
+	public int getAdmissionThreshold() {
+		return admissionThreshold;
+	}
+
+	public void setAdmissionThreshold(int admissionThreshold) {
+		this.admissionThreshold = admissionThreshold;
+	}
+
+	public int getMaxCandidates() {
+		return maxCandidates;
+	}
+
+	public void setMaxCandidates(int maxCandidates) {
+		this.maxCandidates = maxCandidates;
+	}
+}
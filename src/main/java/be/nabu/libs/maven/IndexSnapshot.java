@@ -0,0 +1,235 @@
+/*
+* Copyright (C) 2016 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package be.nabu.libs.maven;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import be.nabu.libs.resources.api.ManageableContainer;
+import be.nabu.libs.resources.api.ReadableResource;
+import be.nabu.libs.resources.api.Resource;
+import be.nabu.libs.resources.api.ResourceContainer;
+import be.nabu.libs.resources.api.WritableResource;
+import be.nabu.utils.io.IOUtils;
+
+/**
+ * A compact binary snapshot of the artifact index so a restart does not have to open every archive again.
+ * Each entry holds the coordinates, the size, the modification date and (if known) the checksums of an artifact.
+ */
+public class IndexSnapshot {
+	
+	public static final String NAME = ".index";
+	
+	private static final int MAGIC = 0x4d564958;
+	private static final int VERSION = 1;
+	
+	public static class Entry {
+		private String path, groupId, artifactId, version, packaging;
+		private boolean isTest;
+		private long size, lastModified;
+		private Checksums checksums;
+		
+		public String getPath() {
+			return path;
+		}
+		public String getGroupId() {
+			return groupId;
+		}
+		public String getArtifactId() {
+			return artifactId;
+		}
+		public String getVersion() {
+			return version;
+		}
+		public String getPackaging() {
+			return packaging;
+		}
+		public boolean isTest() {
+			return isTest;
+		}
+		public long getSize() {
+			return size;
+		}
+		public long getLastModified() {
+			return lastModified;
+		}
+		public Checksums getChecksums() {
+			return checksums;
+		}
+	}
+	
+	/**
+	 * Reads the snapshot from the root, returns null if there is none or if it is not valid
+	 */
+	public static List<Entry> read(ResourceContainer<?> root) {
+		Resource resource = root.getChild(NAME);
+		if (!(resource instanceof ReadableResource)) {
+			return null;
+		}
+		try {
+			DataInputStream input = new DataInputStream(new BufferedInputStream(IOUtils.toInputStream(((ReadableResource) resource).getReadable())));
+			try {
+				if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+					return null;
+				}
+				int amount = input.readInt();
+				List<Entry> entries = new ArrayList<Entry>(amount);
+				for (int i = 0; i < amount; i++) {
+					Entry entry = new Entry();
+					entry.path = input.readUTF();
+					entry.groupId = input.readUTF();
+					entry.artifactId = input.readUTF();
+					entry.version = input.readUTF();
+					entry.packaging = input.readUTF();
+					entry.isTest = input.readBoolean();
+					entry.size = input.readLong();
+					entry.lastModified = input.readLong();
+					if (input.readBoolean()) {
+						Map<ChecksumAlgorithm, String> checksums = new EnumMap<ChecksumAlgorithm, String>(ChecksumAlgorithm.class);
+						for (ChecksumAlgorithm algorithm : ChecksumAlgorithm.values()) {
+							checksums.put(algorithm, input.readUTF());
+						}
+						entry.checksums = new Checksums(checksums, entry.size);
+					}
+					entries.add(entry);
+				}
+				// the trailing count protects against a snapshot that was only partially written
+				if (input.readInt() != amount) {
+					return null;
+				}
+				return entries;
+			}
+			finally {
+				input.close();
+			}
+		}
+		catch (IOException e) {
+			return null;
+		}
+	}
+	
+	/**
+	 * Writes a snapshot of the given artifacts (keyed on their path) to the root
+	 */
+	public static void write(ResourceContainer<?> root, Map<String, ResourceArtifact> artifacts) throws IOException {
+		if (!(root instanceof ManageableContainer)) {
+			return;
+		}
+		// take a stable copy, the map can change while we write
+		List<Map.Entry<String, ResourceArtifact>> entries = new ArrayList<Map.Entry<String, ResourceArtifact>>(artifacts.entrySet());
+		write(root, NAME, output -> {
+			output.writeInt(MAGIC);
+			output.writeInt(VERSION);
+			int amount = 0;
+			for (Map.Entry<String, ResourceArtifact> entry : entries) {
+				if (isComplete(entry.getValue())) {
+					amount++;
+				}
+			}
+			output.writeInt(amount);
+			for (Map.Entry<String, ResourceArtifact> entry : entries) {
+				ResourceArtifact artifact = entry.getValue();
+				if (!isComplete(artifact)) {
+					continue;
+				}
+				output.writeUTF(entry.getKey());
+				output.writeUTF(artifact.getGroupId());
+				output.writeUTF(artifact.getArtifactId());
+				output.writeUTF(artifact.getVersion());
+				output.writeUTF(artifact.getPackaging());
+				output.writeBoolean(artifact.isTest());
+				output.writeLong(artifact.getSize());
+				output.writeLong(artifact.getLastModified().getTime());
+				Checksums checksums = artifact.getChecksums(false);
+				output.writeBoolean(checksums != null);
+				if (checksums != null) {
+					for (ChecksumAlgorithm algorithm : ChecksumAlgorithm.values()) {
+						output.writeUTF(checksums.get(algorithm));
+					}
+				}
+			}
+			output.writeInt(amount);
+		});
+	}
+	
+	interface Writer {
+		public void write(DataOutputStream output) throws IOException;
+	}
+	
+	/**
+	 * Writes a file in the root. On the local filesystem it is written next to the target and moved in place, so a reader never sees a partially written file.
+	 */
+	static void write(ResourceContainer<?> root, String name, Writer writer) throws IOException {
+		File directory = ResourceRepository.getFile(root);
+		if (directory != null) {
+			File temporary = new File(directory, name + "." + UUID.randomUUID().toString() + ".tmp");
+			try {
+				DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)));
+				try {
+					writer.write(output);
+				}
+				finally {
+					output.close();
+				}
+				Files.move(temporary.toPath(), new File(directory, name).toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			}
+			finally {
+				Files.deleteIfExists(temporary.toPath());
+			}
+		}
+		// other backends can only overwrite, the trailing count protects readers against a partial file
+		else {
+			Resource resource = root.getChild(name);
+			if (resource == null) {
+				resource = ((ManageableContainer<?>) root).create(name, "application/octet-stream");
+			}
+			OutputStream stream = IOUtils.toOutputStream(((WritableResource) resource).getWritable());
+			DataOutputStream output = new DataOutputStream(new BufferedOutputStream(stream));
+			try {
+				writer.write(output);
+			}
+			finally {
+				output.close();
+			}
+		}
+	}
+	
+	private static boolean isComplete(ResourceArtifact artifact) {
+		return artifact.getGroupId() != null && artifact.getArtifactId() != null && artifact.getVersion() != null && artifact.getPackaging() != null;
+	}
+	
+	/**
+	 * Checks an entry against the current state of the resource, this only uses the metadata of the resource
+	 */
+	public static boolean isValid(Entry entry, ResourceArtifact artifact) {
+		return artifact.getLastModified().getTime() == entry.lastModified && artifact.getSize() == entry.size;
+	}
+}
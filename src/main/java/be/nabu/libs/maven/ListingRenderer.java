@@ -0,0 +1,230 @@
+/*
+* Copyright (C) 2016 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package be.nabu.libs.maven;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.net.URLEncoder;
+import java.util.Arrays;
+import java.util.SortedSet;
+
+import be.nabu.libs.maven.api.Artifact;
+
+/**
+ * Renders the directory listings straight to a writer, large listings are paged using the last item of the previous page as a cursor
+ */
+public class ListingRenderer {
+
+	public interface Rendering {
+		public void render(Writer writer) throws IOException;
+	}
+	
+	public static final int DEFAULT_LIMIT = 1000;
+	public static final int MAX_LIMIT = 10000;
+	
+	private String root;
+	
+	public ListingRenderer(String root) {
+		this.root = root;
+	}
+	
+	public void groups(Writer writer, SortedSet<String> groups, String cursor, int limit) throws IOException {
+		start(writer);
+		writer.append("<a href='").append(root).append("'>Repository</a>");
+		writer.append("<h1>Groups</h1><ul>");
+		String next = items(writer, root, groups, cursor, limit);
+		writer.append("</ul>");
+		next(writer, root, next, limit);
+		end(writer);
+	}
+	
+	public void artifacts(Writer writer, String groupId, SortedSet<String> artifacts, String cursor, int limit) throws IOException {
+		String path = root + escape(groupId);
+		start(writer);
+		writer.append("<a href='").append(root).append("'>Repository</a> &gt; <a href='").append(path).append("'>").append(escape(groupId)).append("</a>");
+		writer.append("<h1 title=\"").append(escape(groupId)).append("\">Artifacts</h1><ul>");
+		writer.append("<li><a href='").append(path).append("/..'>..</a></li>");
+		String next = items(writer, path + "/", artifacts, cursor, limit);
+		writer.append("</ul>");
+		next(writer, path, next, limit);
+		end(writer);
+	}
+	
+	public void versions(Writer writer, String groupId, String artifactId, SortedSet<String> versions, String cursor, int limit) throws IOException {
+		String path = root + escape(groupId) + "/" + escape(artifactId);
+		start(writer);
+		breadcrumbs(writer, groupId, artifactId);
+		writer.append("<h1 title=\"").append(escape(groupId)).append(".").append(escape(artifactId)).append("\">Versions</h1><ul>");
+		writer.append("<li><a href='").append(path).append("/..'>..</a></li>");
+		writer.append("<li><a href='").append(path).append("/maven-metadata.xml'>maven-metadata.xml</a></li>");
+		String next = items(writer, path + "/", versions, cursor, limit);
+		writer.append("</ul>");
+		next(writer, path, next, limit);
+		end(writer);
+	}
+	
+	public void artifact(Writer writer, Artifact artifact) throws IOException {
+		String path = root + escape(artifact.getGroupId()) + "/" + escape(artifact.getArtifactId()) + "/" + escape(artifact.getVersion());
+		String artifactName = escape(artifact.getArtifactId() + "-" + artifact.getVersion() + "." + artifact.getPackaging());
+		String pomName = escape(artifact.getArtifactId() + "-" + artifact.getVersion() + ".pom");
+		start(writer);
+		breadcrumbs(writer, artifact.getGroupId(), artifact.getArtifactId());
+		writer.append(" &gt; <a href='").append(path).append("'>").append(escape(artifact.getVersion())).append("</a>");
+		writer.append("<h1 title=\"").append(escape(artifact.getGroupId() + "." + artifact.getArtifactId() + "-" + artifact.getVersion())).append("\">Resources</h1><ul>");
+		writer.append("<li><a href='").append(path).append("/..'>..</a></li>");
+		for (String name : Arrays.asList(artifactName, pomName, "maven-metadata.xml")) {
+			writer.append("<li><a href='").append(path).append("/").append(name).append("'>").append(name).append("</a></li>");
+		}
+		writer.append("</ul><h1>Hashes</h1><ul>");
+		for (String name : Arrays.asList(artifactName, pomName, "maven-metadata.xml")) {
+			for (ChecksumAlgorithm algorithm : ChecksumAlgorithm.values()) {
+				writer.append("<li><a href='").append(path).append("/").append(name).append(".").append(algorithm.getExtension()).append("'>")
+					.append(name).append(".").append(algorithm.getExtension()).append("</a></li>");
+			}
+		}
+		writer.append("</ul>");
+		end(writer);
+	}
+	
+	/**
+	 * Writes a page of items as json: {"items": [...], "next": "cursor"}, the next cursor is null on the last page
+	 */
+	public static void json(Writer writer, SortedSet<String> items, String cursor, int limit) throws IOException {
+		writer.append("{\"items\":[");
+		boolean first = true;
+		int count = 0;
+		String last = null;
+		boolean more = false;
+		for (String item : page(items, cursor)) {
+			if (count >= limit) {
+				more = true;
+				break;
+			}
+			if (!first) {
+				writer.append(',');
+			}
+			first = false;
+			writer.append('"').append(escapeJSON(item)).append('"');
+			last = item;
+			count++;
+		}
+		writer.append("],\"next\":");
+		if (more) {
+			writer.append('"').append(escapeJSON(last)).append('"');
+		}
+		else {
+			writer.append("null");
+		}
+		writer.append("}");
+	}
+	
+	/**
+	 * Returns the items after the cursor
+	 */
+	public static SortedSet<String> page(SortedSet<String> items, String cursor) {
+		// nothing can sort between the cursor and the cursor followed by the lowest character
+		return cursor == null ? items : items.tailSet(cursor + "\0");
+	}
+	
+	private void start(Writer writer) throws IOException {
+		writer.append("<html><head><link rel=\"stylesheet\" type=\"text/css\" href=\"").append(root).append("style.css\"/></head><body>");
+	}
+	
+	private void end(Writer writer) throws IOException {
+		writer.append("</body></html>");
+	}
+	
+	private void breadcrumbs(Writer writer, String groupId, String artifactId) throws IOException {
+		writer.append("<a href='").append(root).append("'>Repository</a> &gt; <a href='").append(root).append(escape(groupId)).append("'>").append(escape(groupId))
+			.append("</a> &gt; <a href='").append(root).append(escape(groupId)).append("/").append(escape(artifactId)).append("'>").append(escape(artifactId)).append("</a>");
+	}
+	
+	// returns the cursor for the next page or null if there is none
+	private String items(Writer writer, String path, SortedSet<String> items, String cursor, int limit) throws IOException {
+		int count = 0;
+		String last = null;
+		for (String item : page(items, cursor)) {
+			if (count >= limit) {
+				return last;
+			}
+			String escaped = escape(item);
+			writer.append("<li><a href='").append(path).append(escaped).append("'>").append(escaped).append("</a></li>");
+			last = item;
+			count++;
+		}
+		return null;
+	}
+	
+	private void next(Writer writer, String path, String next, int limit) throws IOException {
+		if (next != null) {
+			writer.append("<a href='").append(path).append("?cursor=").append(escape(URLEncoder.encode(next, "UTF-8"))).append("&amp;limit=").append(Integer.toString(limit)).append("'>Next</a>");
+		}
+	}
+	
+	public static String escape(String value) {
+		StringBuilder builder = null;
+		for (int i = 0; i < value.length(); i++) {
+			char character = value.charAt(i);
+			String replacement;
+			switch (character) {
+				case '&': replacement = "&amp;"; break;
+				case '<': replacement = "&lt;"; break;
+				case '>': replacement = "&gt;"; break;
+				case '"': replacement = "&quot;"; break;
+				case '\'': replacement = "&#39;"; break;
+				default: replacement = null;
+			}
+			// only allocate if something actually needs escaping
+			if (replacement != null && builder == null) {
+				builder = new StringBuilder(value.length() + 16);
+				builder.append(value, 0, i);
+			}
+			if (builder != null) {
+				if (replacement == null) {
+					builder.append(character);
+				}
+				else {
+					builder.append(replacement);
+				}
+			}
+		}
+		return builder == null ? value : builder.toString();
+	}
+	
+	public static String escapeJSON(String value) {
+		StringBuilder builder = new StringBuilder(value.length() + 2);
+		for (int i = 0; i < value.length(); i++) {
+			char character = value.charAt(i);
+			switch (character) {
+				case '"': builder.append("\\\""); break;
+				case '\\': builder.append("\\\\"); break;
+				case '\n': builder.append("\\n"); break;
+				case '\r': builder.append("\\r"); break;
+				case '\t': builder.append("\\t"); break;
+				default:
+					if (character < 0x20) {
+						builder.append(String.format("\\u%04x", (int) character));
+					}
+					else {
+						builder.append(character);
+					}
+			}
+		}
+		return builder.toString();
+	}
+}
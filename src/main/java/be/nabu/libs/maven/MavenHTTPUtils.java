@@ -0,0 +1,162 @@
+/*
+* Copyright (C) 2016 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package be.nabu.libs.maven;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import be.nabu.libs.http.HTTPException;
+import be.nabu.libs.http.api.HTTPRequest;
+import be.nabu.libs.http.core.DefaultHTTPResponse;
+import be.nabu.libs.http.api.HTTPResponse;
+import be.nabu.utils.mime.api.Header;
+import be.nabu.utils.mime.impl.MimeHeader;
+import be.nabu.utils.mime.impl.MimeUtils;
+import be.nabu.utils.mime.impl.PlainMimeEmptyPart;
+
+public class MavenHTTPUtils {
+	
+	private static DateTimeFormatter httpDateFormatter = DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.ENGLISH).withZone(ZoneId.of("GMT"));
+	
+	public static String formatDate(Date date) {
+		return httpDateFormatter.format(date.toInstant());
+	}
+	
+	/**
+	 * Parses an http date, returns null if it is not valid
+	 */
+	public static Date parseDate(String value) {
+		try {
+			return Date.from(ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant());
+		}
+		catch (DateTimeParseException e) {
+			return null;
+		}
+	}
+	
+	public static String getHeader(HTTPRequest request, String name) {
+		if (request.getContent() == null) {
+			return null;
+		}
+		Header header = MimeUtils.getHeader(name, request.getContent().getHeaders());
+		return header == null ? null : header.getValue();
+	}
+	
+	/**
+	 * Parses the query string of a target (if any), if a parameter occurs multiple times the last value wins
+	 */
+	public static Map<String, String> getQuery(String target) {
+		Map<String, String> query = new HashMap<String, String>();
+		int index = target == null ? -1 : target.indexOf('?');
+		if (index >= 0) {
+			for (String part : target.substring(index + 1).split("&")) {
+				if (part.isEmpty()) {
+					continue;
+				}
+				int separator = part.indexOf('=');
+				try {
+					query.put(
+						URLDecoder.decode(separator < 0 ? part : part.substring(0, separator), "UTF-8"), 
+						separator < 0 ? "" : URLDecoder.decode(part.substring(separator + 1), "UTF-8")
+					);
+				}
+				catch (UnsupportedEncodingException e) {
+					throw new RuntimeException(e);
+				}
+				catch (IllegalArgumentException e) {
+					throw new HTTPException(400, "Invalid query parameter: " + part);
+				}
+			}
+		}
+		return query;
+	}
+	
+	/**
+	 * Strips the query string from a target
+	 */
+	public static String getPath(String target) {
+		int index = target == null ? -1 : target.indexOf('?');
+		return index < 0 ? target : target.substring(0, index);
+	}
+	
+	public static String formatETag(String checksum) {
+		return "\"" + checksum + "\"";
+	}
+	
+	/**
+	 * Checks the conditional headers of the request against the current state of the resource.
+	 * If the client already has the current version, this returns a "304 Not Modified" response, otherwise it returns null.
+	 */
+	public static HTTPResponse checkNotModified(HTTPRequest request, String etag, Date lastModified) {
+		String ifNoneMatch = getHeader(request, "If-None-Match");
+		boolean notModified = false;
+		// if the client sends etags, the modification date must be ignored
+		if (ifNoneMatch != null) {
+			if (etag != null) {
+				for (String part : ifNoneMatch.split(",")) {
+					part = part.trim();
+					if (part.startsWith("W/")) {
+						part = part.substring(2);
+					}
+					if (part.equals("*") || part.equals(etag)) {
+						notModified = true;
+						break;
+					}
+				}
+			}
+		}
+		else if (lastModified != null) {
+			String ifModifiedSince = getHeader(request, "If-Modified-Since");
+			Date since = ifModifiedSince == null ? null : parseDate(ifModifiedSince);
+			// http dates only have second precision
+			if (since != null && Instant.ofEpochMilli(lastModified.getTime()).getEpochSecond() <= since.toInstant().getEpochSecond()) {
+				notModified = true;
+			}
+		}
+		if (!notModified) {
+			return null;
+		}
+		// a 304 has no body, a content length would have to be the one of the full response so we leave it out
+		return new DefaultHTTPResponse(304, "Not Modified", new PlainMimeEmptyPart(null, getValidators(etag, lastModified)));
+	}
+	
+	/**
+	 * Adds the etag and last modified headers (if available) to the given headers
+	 */
+	public static Header [] getValidators(String etag, Date lastModified, Header...headers) {
+		Header [] result = new Header[headers.length + (etag == null ? 0 : 1) + (lastModified == null ? 0 : 1)];
+		System.arraycopy(headers, 0, result, 0, headers.length);
+		int index = headers.length;
+		if (etag != null) {
+			result[index++] = new MimeHeader("ETag", etag);
+		}
+		if (lastModified != null) {
+			result[index++] = new MimeHeader("Last-Modified", formatDate(lastModified));
+		}
+		return result;
+	}
+}
@@ -17,33 +17,42 @@
 
 package be.nabu.libs.maven;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.URI;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.net.URISyntaxException;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.SortedSet;
 
+import be.nabu.libs.events.api.EventDispatcher;
 import be.nabu.libs.events.api.EventHandler;
-import be.nabu.libs.events.impl.EventDispatcherImpl;
 import be.nabu.libs.http.HTTPException;
 import be.nabu.libs.http.api.HTTPRequest;
 import be.nabu.libs.http.api.HTTPResponse;
-import be.nabu.libs.http.api.server.HTTPServer;
-import be.nabu.libs.http.core.DefaultHTTPRequest;
 import be.nabu.libs.http.core.DefaultHTTPResponse;
-import be.nabu.libs.http.server.HTTPServerUtils;
-import be.nabu.libs.maven.RepositoryUtils.HashAlgorithm;
 import be.nabu.libs.maven.api.Artifact;
 import be.nabu.libs.maven.api.Repository;
 import be.nabu.libs.maven.api.WritableRepository;
-import be.nabu.libs.resources.ResourceUtils;
 import be.nabu.utils.io.IOUtils;
 import be.nabu.utils.io.api.ByteBuffer;
+import be.nabu.utils.io.api.ReadableContainer;
 import be.nabu.utils.mime.api.ContentPart;
 import be.nabu.utils.mime.api.Header;
 import be.nabu.utils.mime.impl.MimeHeader;
@@ -54,19 +63,88 @@ public class MavenListener implements EventHandler<HTTPRequest, HTTPResponse> {
 
 	private Repository repository;
 	private String root;
+	// if set, artifacts that are not available locally are fetched from upstream
+	private UpstreamMirror mirror;
+	// if set, the amount of large downloads that are streamed at the same time is limited
+	private DownloadLimiter downloadLimiter;
+	// if set, the caches are warmed for the dependencies of a served pom
+	private PomPrefetcher prefetcher;
+	// deleting is only needed on the receiving end of replication, there is no authentication so it is off by default
+	private boolean allowDelete;
 	
+	private interface PathHandler {
+		public HTTPResponse handle(HTTPRequest request, MavenPath path, Map<String, String> query) throws HTTPException, IOException;
+	}
+	
+	// how each kind of path is served, a new kind of file only needs a kind in the parser and a handler here
+	private Map<MavenPath.Kind, PathHandler> routes = new EnumMap<MavenPath.Kind, PathHandler>(MavenPath.Kind.class);
+	
+	/**
+	 * See {@link MavenServer} for the available settings
+	 */
 	public static void main(String...args) throws IOException, URISyntaxException {
-		HTTPServer server = HTTPServerUtils.newServer(1111, 20, new EventDispatcherImpl());
-		server.getDispatcher(null).subscribe(
-			HTTPRequest.class, 
-			new MavenListener(new ResourceRepository(ResourceUtils.mkdir(new URI("file:/home/alex/maven"), null)), "/")
-		).filter(HTTPServerUtils.filterPath("/"));
-		server.start();
+		MavenServer.main(args);
 	}
 	
 	public MavenListener(Repository repository, String path) {
 		this.repository = repository;
 		this.root = path.endsWith("/") ? path : path + "/";
+		this.renderer = new ListingRenderer(this.root);
+		registerRoutes();
+		// share the metrics with the repository so they are all exposed together
+		if (repository instanceof ResourceRepository) {
+			subscribe(((ResourceRepository) repository).getInternalDispatcher());
+			setMetrics(((ResourceRepository) repository).getMetrics());
+		}
+		else {
+			setMetrics(new MavenMetrics());
+		}
+	}
+	
+	private void registerRoutes() {
+		routes.put(MavenPath.Kind.GROUPS, (request, path, query) -> render(request, "text/html", writer -> renderer.groups(writer, getRepository().getGroups(), query.get("cursor"), getLimit(query))));
+		routes.put(MavenPath.Kind.ARTIFACTS, (request, path, query) -> render(request, "text/html", writer -> renderer.artifacts(writer, path.getGroupId(), getRepository().getArtifacts(path.getGroupId()), query.get("cursor"), getLimit(query))));
+		routes.put(MavenPath.Kind.VERSIONS, (request, path, query) -> render(request, "text/html", writer -> renderer.versions(writer, path.getGroupId(), path.getArtifactId(), getRepository().getVersions(path.getGroupId(), path.getArtifactId()), query.get("cursor"), getLimit(query))));
+		routes.put(MavenPath.Kind.VERSION, (request, path, query) -> {
+			Artifact artifact = getRepository().getArtifact(path.getGroupId(), path.getArtifactId(), path.getVersion(), false);
+			if (artifact == null) {
+				throw new HTTPException(404, "Can not find the artifact " + path.getGroupId() + "-" + path.getArtifactId() + "-" + path.getVersion());
+			}
+			return render(request, "text/html", writer -> renderer.artifact(writer, artifact));
+		});
+		routes.put(MavenPath.Kind.METADATA, (request, path, query) -> metaData(request, path));
+		routes.put(MavenPath.Kind.POM, (request, path, query) -> downloadArtifact(request, path));
+		routes.put(MavenPath.Kind.ARCHIVE, (request, path, query) -> downloadArtifact(request, path));
+		// signatures are accepted on upload but not stored
+		routes.put(MavenPath.Kind.SIGNATURE, (request, path, query) -> {
+			throw new HTTPException(404, "Not Found");
+		});
+		routes.put(MavenPath.Kind.STYLE, (request, path, query) -> createResponse(getStyle(), "text/css"));
+		routes.put(MavenPath.Kind.API, (request, path, query) -> api(request, path.getPath().split("/"), query));
+	}
+	
+	/**
+	 * The cached poms and listings are invalidated by the events fired on create, changes picked up by a scan are detected by the stamp of the cached content
+	 */
+	private void subscribe(EventDispatcher dispatcher) {
+		if (dispatcher != null) {
+			dispatcher.subscribe(CreateResourceRepositoryEvent.class, new EventHandler<CreateResourceRepositoryEvent, Void>() {
+				@Override
+				public Void handle(CreateResourceRepositoryEvent event) {
+					pomCache.invalidate(getPomKey(event.getArtifact()));
+					listingCache.clear();
+					return null;
+				}
+			});
+			dispatcher.subscribe(DeleteResourceRepositoryEvent.class, new EventHandler<DeleteResourceRepositoryEvent, Void>() {
+				@Override
+				public Void handle(DeleteResourceRepositoryEvent event) {
+					pomCache.invalidate(getPomKey(event.getArtifact()));
+					listingCache.clear();
+					return null;
+				}
+			});
+		}
 	}
 	
 	public MavenListener(Repository repository) {
@@ -75,17 +153,61 @@ public class MavenListener implements EventHandler<HTTPRequest, HTTPResponse> {
 	
 	private String style;	
 	
+	private ListingRenderer renderer;
+	
+	// rendered content along with its encoded variants, so compression is only done once
+	private ContentCache pomCache = new ContentCache(2000), listingCache = new ContentCache(500);
+	
+	private MavenMetrics metrics;
+	
 	@Override
 	public HTTPResponse handle(HTTPRequest request) {
+		long started = System.nanoTime();
+		MavenMetrics.Route route = MavenMetrics.Route.classify(request.getMethod(), request.getTarget() != null && request.getTarget().startsWith(root) ? request.getTarget().substring(root.length()) : request.getTarget());
+		int code = 500;
 		try {
-			// always do a scan
-			repository.scan();
+			HTTPResponse response = meter(dispatch(request), route);
+			code = response.getCode();
+			return response;
+		}
+		catch (HTTPException e) {
+			code = e.getCode();
+			throw e;
+		}
+		catch (IOException e) {
+			throw new HTTPException(500, e);
+		}
+		finally {
+			metrics.request(route, code, System.nanoTime() - started);
+		}
+	}
+	
+	private HTTPResponse dispatch(HTTPRequest request) {
+		try {
+			// only pick up what changed, a full scan is too expensive to do on every request
+			long started = System.nanoTime();
+			if (repository instanceof ResourceRepository) {
+				((ResourceRepository) repository).refresh();
+			}
+			else {
+				repository.scan();
+			}
+			metrics.refreshed(System.nanoTime() - started);
 			if (request.getMethod().equalsIgnoreCase("PUT")) {
 				return put(request);
 			}
 			else if (request.getMethod().equalsIgnoreCase("GET")) {
 				return get(request);
 			}
+			else if (request.getMethod().equalsIgnoreCase("HEAD")) {
+				return toHead(get(request));
+			}
+			else if (request.getMethod().equalsIgnoreCase("POST")) {
+				return post(request);
+			}
+			else if (request.getMethod().equalsIgnoreCase("DELETE")) {
+				return delete(request);
+			}
 			else {
 				throw new HTTPException(405, "Method not allowed");
 			}
@@ -103,34 +225,62 @@ public class MavenListener implements EventHandler<HTTPRequest, HTTPResponse> {
 			// finally it will try to write the maven-metadata.xml and its hashes for the group
 			// we are currently only interested in the artifact, the rest is generated by the repository
 			// note that it is also possible that maven sends along a "tests" artifact which contains the test files for a specific artifact (for reusable test parts)
-			String name = request.getTarget().replaceAll(".*?([^/]+)$", "$1");
-			if (!name.equals("maven-metadata.xml") && !name.endsWith("sha1") && !name.endsWith("md5")) {
+			// signatures are not stored and variants like sources or javadoc are not supported, they are ignored rather than mistaken for the artifact
+			MavenPath path = getMavenPath(request);
+			if ((path.getKind() == MavenPath.Kind.ARCHIVE || path.getKind() == MavenPath.Kind.POM) && path.getChecksum() == null && !path.isClassified()) {
 				if (!(request.getContent() instanceof ContentPart)) {
 					throw new HTTPException(400, "Expecting a content part");
 				}
-				byte [] bytes = IOUtils.toBytes(((ContentPart) request.getContent()).getReadable());
-				// if the file name ends in "pom", it is either the pom from another artifact and it can be safely ignored or it is a standalone artifact of type pom in which case we need to process it
-				// check the contents to see for packaging information
-				Properties properties;
-				if (name.endsWith("pom")) {
-					// get packaging type
-					if (new String(bytes).replaceAll("(?s).*<packaging>([^<]+).*", "$1").equals("pom")) {
-						properties = RepositoryUtils.getPropertiesFromXML(new ByteArrayInputStream(bytes));
+				// stream the upload to disk, it can be arbitrarily large
+				InputStream input = IOUtils.toInputStream(((ContentPart) request.getContent()).getReadable());
+				SpooledUpload upload;
+				try {
+					upload = getRepository() instanceof ResourceRepository ? ((ResourceRepository) getRepository()).spool(input) : SpooledUpload.spool(input, null);
+				}
+				finally {
+					input.close();
+				}
+				metrics.uploaded(upload.getSize());
+				try {
+					// if the file name ends in "pom", it is either the pom from another artifact and it can be safely ignored or it is a standalone artifact of type pom in which case we need to process it
+					// check the contents to see for packaging information
+					Properties properties;
+					if (path.getKind() == MavenPath.Kind.POM) {
+						// get packaging type
+						if (upload.getPackaging().equals("pom")) {
+							properties = upload.getPropertiesFromPom();
+						}
+						else {
+							// this is maven trying to upload the pom file of the artifact, ignore it
+							return new DefaultHTTPResponse(200, "OK", new PlainMimeEmptyPart(null, 
+								new MimeHeader("Content-Length", "0")
+							));
+						}
 					}
 					else {
-						// this is maven trying to upload the pom file of the artifact, ignore it
-						return new DefaultHTTPResponse(200, "OK", new PlainMimeEmptyPart(null, 
-							new MimeHeader("Content-Length", "0")
-						));
+						properties = upload.getPropertiesFromZip();
+						if (properties == null) {
+							throw new HTTPException(400, "Could not find the pom.properties file in the maven artifact");
+						}
 					}
-				}
-				else {
-					properties = RepositoryUtils.getPropertiesFromZip(new ByteArrayInputStream(bytes));
-					if (properties == null) {
-						throw new HTTPException(400, "Could not find the pom.properties file in the maven artifact");
+					String packaging = path.getExtension();
+					boolean isTest = path.isTest();
+					if (getRepository() instanceof ResourceRepository) {
+						((ResourceRepository) getRepository()).create(properties.getProperty("groupId"), properties.getProperty("artifactId"), properties.getProperty("version"), packaging, upload, isTest);
+					}
+					else {
+						InputStream content = upload.getInputStream();
+						try {
+							((WritableRepository) getRepository()).create(properties.getProperty("groupId"), properties.getProperty("artifactId"), properties.getProperty("version"), packaging, content, isTest);
+						}
+						finally {
+							content.close();
+						}
 					}
 				}
-				((WritableRepository) getRepository()).create(properties.getProperty("groupId"), properties.getProperty("artifactId"), properties.getProperty("version"), name.replaceAll(".*?([^.]+)$", "$1").toLowerCase(), new ByteArrayInputStream(bytes), name.matches(".*-tests\\.[^.]+$"));
+				finally {
+					upload.close();
+				}
 			}
 			// it was either uploaded successfully or ignored, either way signal the ok
 			return new DefaultHTTPResponse(200, "OK", new PlainMimeEmptyPart(null, 
@@ -142,71 +292,215 @@ public class MavenListener implements EventHandler<HTTPRequest, HTTPResponse> {
 		}
 	}
 	
+	/**
+	 * Deletes an artifact, the extension of the file is ignored: only the coordinate and whether it is a test artifact matter.
+	 * This is used by replication to remove artifacts from peers, it is only allowed if explicitly enabled.
+	 */
+	private HTTPResponse delete(HTTPRequest request) throws HTTPException, IOException {
+		if (!allowDelete) {
+			throw new HTTPException(403, "Deleting artifacts is not enabled");
+		}
+		if (!(getRepository() instanceof ResourceRepository)) {
+			throw new HTTPException(403, "The repository does not support deletion of artifacts");
+		}
+		MavenPath path = getMavenPath(request);
+		if ((path.getKind() != MavenPath.Kind.ARCHIVE && path.getKind() != MavenPath.Kind.POM) || path.getChecksum() != null || path.isClassified()) {
+			throw new HTTPException(404, "Not Found");
+		}
+		if (!((ResourceRepository) getRepository()).delete(path.getGroupId(), path.getArtifactId(), path.getVersion(), path.isTest())) {
+			throw new HTTPException(404, "Not Found");
+		}
+		return new DefaultHTTPResponse(200, "OK", new PlainMimeEmptyPart(null, 
+			new MimeHeader("Content-Length", "0")
+		));
+	}
+	
+	/**
+	 * Only the batch api accepts a post:
+	 * 
+	 * - /-/batch?transitive={true|false}&scopes={scopes}&limit={limit}: the body contains one groupId:artifactId:version[:tests] per line, the response is newline delimited json with one line per artifact
+	 */
+	private HTTPResponse post(HTTPRequest request) throws HTTPException, IOException {
+		Map<String, String> query = MavenHTTPUtils.getQuery(request.getTarget());
+		if (!getMavenPath(request).getPath().equals("-/batch")) {
+			throw new HTTPException(405, "Method not allowed");
+		}
+		if (!(request.getContent() instanceof ContentPart)) {
+			throw new HTTPException(400, "Expecting a content part");
+		}
+		List<BatchResolver.Coordinate> coordinates = new ArrayList<BatchResolver.Coordinate>();
+		InputStream input = IOUtils.toInputStream(((ContentPart) request.getContent()).getReadable());
+		try {
+			BufferedReader reader = new BufferedReader(new InputStreamReader(input, Charset.forName("UTF-8")));
+			String line;
+			while ((line = reader.readLine()) != null) {
+				line = line.trim();
+				if (line.isEmpty() || line.startsWith("#")) {
+					continue;
+				}
+				BatchResolver.Coordinate coordinate = BatchResolver.Coordinate.parse(line);
+				if (coordinate == null) {
+					throw new HTTPException(400, "Invalid coordinate: " + line);
+				}
+				else if (coordinates.size() >= ListingRenderer.MAX_LIMIT) {
+					throw new HTTPException(413, "Too many coordinates, at most " + ListingRenderer.MAX_LIMIT + " are allowed");
+				}
+				coordinates.add(coordinate);
+			}
+		}
+		finally {
+			input.close();
+		}
+		Set<String> scopes = BatchResolver.getDefaultScopes();
+		if (query.get("scopes") != null) {
+			scopes = new HashSet<String>(Arrays.asList(query.get("scopes").split("\\s*,\\s*")));
+		}
+		// when resolving transitively the limit applies to the total amount of artifacts, by default that is the maximum
+		int limit = query.get("limit") == null ? ListingRenderer.MAX_LIMIT : getLimit(query);
+		BatchResolver resolver = new BatchResolver(getRepository(), coordinates, "true".equals(query.get("transitive")), scopes, limit);
+		// the size is not known up front, the lines are generated while the response is being sent so the server picks the framing
+		return new DefaultHTTPResponse(200, "OK", new PlainMimeContentPart(null, resolver, 
+			new MimeHeader("Content-Type", "application/x-ndjson")
+		));
+	}
+	
 	private HTTPResponse get(HTTPRequest request) throws HTTPException, IOException {
-		String path = request.getTarget() == null ? null : request.getTarget().substring(root.length());
-		if (path == null || path.isEmpty() || path.equals("/")) {
-			return createResponse(listGroups(), "text/html");
+		Map<String, String> query = MavenHTTPUtils.getQuery(request.getTarget());
+		MavenPath path = getMavenPath(request);
+		return routes.get(path.getKind()).handle(request, path, query);
+	}
+	
+	private MavenPath getMavenPath(HTTPRequest request) {
+		String target = MavenHTTPUtils.getPath(request.getTarget());
+		return MavenPath.parse(target == null || target.length() < root.length() ? null : target.substring(root.length()));
+	}
+	
+	/**
+	 * Serves the maven-metadata.xml of an artifact or of a version
+	 */
+	private HTTPResponse metaData(HTTPRequest request, MavenPath path) throws HTTPException, IOException {
+		if (path.getVersion() == null) {
+			if (path.getChecksum() == null) {
+				return createResponse(request, getMetaData(path.getGroupId(), path.getArtifactId()), "application/xml", null);
+			}
+			return createResponse(getChecksum(getMetaData(path.getGroupId(), path.getArtifactId()), path.getChecksum(), path.getCanonicalPath(), MavenPath.METADATA_NAME), "text/plain");
 		}
-		else {
-			if (path.startsWith("/")) {
-				path = path.substring(1);
+		Artifact artifact = getRepository().getArtifact(path.getGroupId(), path.getArtifactId(), path.getVersion(), false);
+		if (artifact == null) {
+			// with a split groupId, the metadata of an artifact looks like that of a version
+			MavenPath alternative = path.getArtifactMetaData();
+			SortedSet<String> versions = alternative == null ? null : getRepository().getVersions(alternative.getGroupId(), alternative.getArtifactId());
+			if (versions != null && !versions.isEmpty()) {
+				return metaData(request, alternative);
 			}
-			if (path.endsWith("/")) {
-				path = path.substring(0, path.length() - 1);
+			if (mirror != null) {
+				artifact = mirror.get(path.getGroupId(), path.getArtifactId(), path.getVersion(), false);
 			}
-			String [] parts = path.split("/");
-			// you have a specific group, list all the artifacts
-			if (parts.length == 1) {
-				if (parts[0].equals("style.css")) {
-					return createResponse(getStyle(), "text/css");
-				}
-				else {
-					return createResponse(listArtifacts(path, parts[0]), "text/html");
-				}
+			if (artifact == null) {
+				throw new HTTPException(404, "Can not find the artifact " + path.getGroupId() + "-" + path.getArtifactId() + "-" + path.getVersion());
 			}
-			// a specific artifact, list the versions
-			else if (parts.length == 2) {
-				return createResponse(listVersions(path, parts[0], parts[1]), "text/html");
+		}
+		if (path.getChecksum() == null) {
+			return createResponse(request, getMetaData(artifact), "application/xml", artifact.getLastModified());
+		}
+		return createResponse(getChecksum(getMetaData(artifact), path.getChecksum(), path.getCanonicalPath(), MavenPath.METADATA_NAME), "text/plain", 
+			new MimeHeader("Last-Modified", MavenHTTPUtils.formatDate(artifact.getLastModified())));
+	}
+	
+	/**
+	 * The api of the server:
+	 * 
+	 * - /-/listing: the groups
+	 * - /-/listing/{groupId}: the artifacts in a group
+	 * - /-/listing/{groupId}/{artifactId}: the versions of an artifact
+	 * - /-/metrics: the metrics in prometheus text format
+	 * - /-/batch: see post()
+	 * - /-/index: every artifact with its packaging and sha1, used by replication to find the differences between two servers
+	 * - /-/search?q={query}&mode={prefix|exact}&type={class|package}&limit={limit}: the artifacts that contain a class or package, only if the repository has a class index
+	 */
+	private HTTPResponse api(HTTPRequest request, String [] parts, Map<String, String> query) throws HTTPException, IOException {
+		if (parts.length == 2 && parts[1].equals("metrics")) {
+			StringWriter writer = new StringWriter();
+			metrics.write(writer);
+			return createResponse(writer.toString(), "text/plain; version=0.0.4; charset=utf-8");
+		}
+		else if (parts.length == 2 && parts[1].equals("index") && getRepository() instanceof ResourceRepository) {
+			return render(request, "text/plain; charset=utf-8", writer -> Replicator.writeIndex((ResourceRepository) getRepository(), writer));
+		}
+		else if (parts.length == 2 && parts[1].equals("search") && getRepository() instanceof ResourceRepository && ((ResourceRepository) getRepository()).getClassIndex() != null) {
+			String value = query.get("q");
+			if (value == null || value.isEmpty()) {
+				throw new HTTPException(400, "Missing query parameter 'q'");
 			}
-			// a specific version or the metadata.xml of the group
-			else if (parts.length == 3) {
-				// metadata of the group
-				if (parts[2].equals("maven-metadata.xml")) {
-					return createResponse(getRepository().getMetaData(parts[0], parts[1]), "application/xml");
-				}
-				else if (parts[2].equals("maven-metadata.xml.sha1")) {
-					return createResponse(getSha1(getRepository().getMetaData(parts[0], parts[1]), path, "maven-metadata.xml"), "text/plain");
-				}
-				else if (parts[2].equals("maven-metadata.xml.md5")) {
-					return createResponse(getMd5(getRepository().getMetaData(parts[0], parts[1]), path, "maven-metadata.xml"), "text/plain");
-				}
-				else {
-					return createResponse(showArtifact(path, parts[0], parts[1], parts[2]), "text/html");
+			boolean exact = "exact".equals(query.get("mode"));
+			boolean packages = "package".equals(query.get("type"));
+			int limit = getLimit(query);
+			List<ClassIndex.Match> matches = ((ResourceRepository) getRepository()).searchClasses(value, exact, packages, limit + 1);
+			StringWriter writer = new StringWriter();
+			writer.write("{\"items\":[");
+			for (int i = 0; i < Math.min(limit, matches.size()); i++) {
+				ClassIndex.Match match = matches.get(i);
+				if (i > 0) {
+					writer.write(",");
 				}
+				writer.write("{\"name\":\"" + ListingRenderer.escapeJSON(match.getName()) 
+					+ "\",\"groupId\":\"" + ListingRenderer.escapeJSON(match.getArtifact().getGroupId()) 
+					+ "\",\"artifactId\":\"" + ListingRenderer.escapeJSON(match.getArtifact().getArtifactId()) 
+					+ "\",\"version\":\"" + ListingRenderer.escapeJSON(match.getArtifact().getVersion()) 
+					+ "\",\"tests\":" + match.getArtifact().isTest() + "}");
 			}
-			// a specific file, stream it
-			else if (parts.length == 4) {	
-				return downloadArtifact(path, parts[0], parts[1], parts[2], parts[3]);
+			// while the index is being built, some artifacts are not yet searched
+			writer.write("],\"truncated\":" + (matches.size() > limit) + ",\"complete\":" + ((ResourceRepository) getRepository()).getClassIndex().isComplete() + "}");
+			return createResponse(writer.toString(), "application/json");
+		}
+		else if (parts.length >= 2 && parts.length <= 4 && parts[1].equals("listing")) {
+			SortedSet<String> items;
+			if (parts.length == 2) {
+				items = getRepository().getGroups();
 			}
-			// if there are 5 parts and the last one is a maven-metadata.xml one, we are dealing with a group maven-metadata.xml request
-			else if (parts.length == 5 && parts[4].startsWith("maven-metadata.xml")) {
-				String group = null;
-				for (int i = 0; i < parts.length - 2; i++) {
-					group = group == null ? parts[i] : group + "." + parts[i];
-				}
-				// rephrase request
-				return handle(new DefaultHTTPRequest(request.getMethod(), root + group + "/" + parts[parts.length - 2] + "/" + parts[parts.length - 1], request.getContent()));
+			else if (parts.length == 3) {
+				items = getRepository().getArtifacts(parts[2]);
 			}
-			// more parts means maven is requesting with a split group (. replaced with /)
-			// reroute the request
 			else {
-				String group = null;
-				for (int i = 0; i < parts.length - 3; i++) {
-					group = group == null ? parts[i] : group + "." + parts[i];
-				}
-				return handle(new DefaultHTTPRequest(request.getMethod(), root + group + "/" + parts[parts.length - 3] + "/" + parts[parts.length - 2] + "/" + parts[parts.length - 1], request.getContent()));
+				items = getRepository().getVersions(parts[2], parts[3]);
 			}
+			return render(request, "application/json", writer -> ListingRenderer.json(writer, items, query.get("cursor"), getLimit(query)));
+		}
+		throw new HTTPException(404, "Not Found");
+	}
+	
+	private int getLimit(Map<String, String> query) throws HTTPException {
+		String limit = query.get("limit");
+		if (limit == null) {
+			return ListingRenderer.DEFAULT_LIMIT;
 		}
+		try {
+			return Math.max(1, Math.min(ListingRenderer.MAX_LIMIT, Integer.parseInt(limit)));
+		}
+		catch (NumberFormatException e) {
+			throw new HTTPException(400, "Invalid limit: " + limit);
+		}
+	}
+	
+	/**
+	 * Listings are cached per target (including the query) until the repository changes
+	 */
+	private HTTPResponse render(HTTPRequest request, String mimeType, ListingRenderer.Rendering rendering) throws IOException {
+		ContentCache.ContentLoader loader = () -> {
+			ByteArrayOutputStream output = new ByteArrayOutputStream();
+			Writer writer = new BufferedWriter(new OutputStreamWriter(output, Charset.forName("UTF-8")));
+			try {
+				rendering.render(writer);
+			}
+			finally {
+				writer.close();
+			}
+			return new CachedContent(output.toByteArray());
+		};
+		CachedContent content = getRepository() instanceof ResourceRepository
+			? listingCache.get(request.getTarget(), ((ResourceRepository) getRepository()).getModificationCount(), loader)
+			: loader.load();
+		return createResponse(request, content, mimeType, null);
 	}
 	
 	private String getStyle() throws HTTPException {
@@ -230,112 +524,107 @@ public class MavenListener implements EventHandler<HTTPRequest, HTTPResponse> {
 		return style;
 	}
 
-	private HTTPResponse downloadArtifact(String path, String groupId, String artifactId, String version, String fragment) throws HTTPException, IOException {
-		// the filename can be "-tests.jar" but also "-tests.jar.md5" etc
-		Artifact artifact = getRepository().getArtifact(groupId, artifactId, version, fragment.matches(".*-tests\\.[^.]+(\\.[^.]+|)*$"));
+	private CachedContent getPom(Artifact artifact) throws IOException {
+		return pomCache.get(getPomKey(artifact), artifact.getLastModified() == null ? 0 : artifact.getLastModified().getTime(), () -> CachedContent.read(artifact.getPom()));
+	}
+	
+	private HTTPResponse downloadArtifact(HTTPRequest request, MavenPath path) throws HTTPException, IOException {
+		// only the artifact and its test artifact are stored, not other variants like sources or javadoc
+		if (path.isClassified()) {
+			throw new HTTPException(404, "Can not find the " + path.getClassifier() + " of the artifact " + path.getGroupId() + "-" + path.getArtifactId() + "-" + path.getVersion());
+		}
+		Artifact artifact = getRepository().getArtifact(path.getGroupId(), path.getArtifactId(), path.getVersion(), path.isTest());
+		if (artifact == null && mirror != null) {
+			artifact = mirror.get(path.getGroupId(), path.getArtifactId(), path.getVersion(), path.isTest());
+		}
 
 		if (artifact == null) {
-			throw new HTTPException(404, "Can not find the artifact " + groupId + "-" + artifactId + "-" + version);
+			throw new HTTPException(404, "Can not find the artifact " + path.getGroupId() + "-" + path.getArtifactId() + "-" + path.getVersion());
 		}
 
-		String artifactName = artifact.getArtifactId() + "-" + artifact.getVersion() + "." + artifact.getPackaging();
-		String pomName = artifact.getArtifactId() + "-" + artifact.getVersion() + ".pom";
-
-		Header lastModified = new MimeHeader("Last-Modified", "" + artifact.getLastModified().getTime());
-		if (fragment.equals("maven-metadata.xml")) {
-			return createResponse(getRepository().getMetaData(artifact), "application/xml", lastModified);
-		}
-		else if (fragment.equals("maven-metadata.xml.md5")) {
-			return createResponse(getMd5(getRepository().getMetaData(artifact), path, "maven-metadata.xml"), "text/plain", lastModified);
-		}
-		else if (fragment.equals("maven-metadata.xml.sha1")) {
-			return createResponse(getSha1(getRepository().getMetaData(artifact), path, "maven-metadata.xml"), "text/plain", lastModified);
-		}
-		else if (fragment.endsWith("pom")) {
-			return createResponse(artifact.getPom(), "application/xml", lastModified);
-		}
-		else if (fragment.endsWith("pom.md5")) {
-			return createResponse(getMd5(artifact.getPom(), path, pomName), "text/plain", lastModified);
-		}
-		else if (fragment.endsWith("pom.sha1")) {
-			return createResponse(getSha1(artifact.getPom(), path, pomName), "text/plain", lastModified);
-		}
-		else if (fragment.endsWith("ar")) {
-			return createResponse(artifact.getContent(), "application/octet-stream", lastModified);
-		}
-		else if (fragment.endsWith("ar.md5")) {
-			return createResponse(getMd5(artifact.getPom(), path, artifactName), "text/plain", lastModified);
+		Header lastModified = new MimeHeader("Last-Modified", MavenHTTPUtils.formatDate(artifact.getLastModified()));
+		ChecksumAlgorithm algorithm = path.getChecksum();
+		
+		// checksum requests are answered for the file they are the checksum of
+		if (path.getKind() == MavenPath.Kind.POM) {
+			if (algorithm == null) {
+				CachedContent pom = getPom(artifact);
+				// the client will ask for the poms of the dependencies next
+				if (prefetcher != null) {
+					prefetcher.prefetch(artifact, pom);
+				}
+				return createResponse(request, pom, "application/xml", artifact.getLastModified());
+			}
+			String pomName = artifact.getArtifactId() + "-" + artifact.getVersion() + ".pom";
+			return createResponse(getChecksums(artifact, true).get(algorithm) + " " + path.getCanonicalPath() + "/" + pomName, "text/plain", lastModified);
 		}
-		else if (fragment.endsWith("ar.sha1")) {
-			return createResponse(getSha1(artifact.getPom(), path, artifactName), "text/plain", lastModified);
+		else if (path.getExtension().endsWith("ar")) {
+			if (algorithm == null) {
+				String etag = MavenHTTPUtils.formatETag(getChecksums(artifact, false).getSha1());
+				HTTPResponse notModified = MavenHTTPUtils.checkNotModified(request, etag, artifact.getLastModified());
+				if (notModified != null) {
+					return notModified;
+				}
+				return createResponse(artifact, "application/octet-stream", MavenHTTPUtils.getValidators(etag, artifact.getLastModified()));
+			}
+			String artifactName = artifact.getArtifactId() + "-" + artifact.getVersion() + "." + artifact.getPackaging();
+			return createResponse(getChecksums(artifact, false).get(algorithm) + " " + path.getCanonicalPath() + "/" + artifactName, "text/plain", lastModified);
 		}
 		else {
 			throw new HTTPException(404, "Not Found");
 		}
 	}
 
-	private String showArtifact(String path, String groupId, String artifactId, String version) throws IOException, HTTPException {
-		Artifact artifact = getRepository().getArtifact(groupId, artifactId, version, false);
-
-		if (artifact == null) {
-			throw new HTTPException(404, "Can not find the artifact " + groupId + "-" + artifactId + "-" + version);
-		}
-
-		String artifactName = artifact.getArtifactId() + "-" + artifact.getVersion() + "." + artifact.getPackaging();
-		String pomName = artifact.getArtifactId() + "-" + artifact.getVersion() + ".pom";
-		String html = "<a href='" + root + "'>Repository</a> &gt; <a href='" + root + groupId + "'>" + groupId + "</a> &gt; <a href='" + root + groupId + "/" + artifactId + "'>" + artifactId + "</a> &gt; <a href='" + root + groupId + "/" + artifactId + "/" + version + "'>" + version + "</a>";
-		html += "<h1 title=\"" + groupId + "." + artifactId + "-" + version + "\">Resources</h1><ul>";
-		html += "<li><a href='" + root + path.replaceAll("(/|)$", "") + "/..'>..</a></li>";
-		html += "<li><a href='" + root + path + "/" + artifactName + "'>" + artifactName + "</a></li>";
-		html += "<li><a href='" + root + path + "/" + pomName + "'>" + pomName + "</a></li>";
-		html += "<li><a href='" + root + path + "/maven-metadata.xml'>maven-metadata.xml</a></li>";
-		html += "</ul><h1>Hashes</h1><ul>";
-		html += "<li><a href='" + root + path + "/" + artifactName + ".md5'>" + artifactName + ".md5</a></li>";
-		html += "<li><a href='" + root + path + "/" + artifactName + ".sha1'>" + artifactName + ".sha1</a></li>";
-		html += "<li><a href='" + root + path + "/" + pomName + ".md5'>" + pomName + ".md5</a></li>";
-		html += "<li><a href='" + root + path + "/" + pomName + ".sha1'>" + pomName + ".sha1</a></li>";
-		html += "<li><a href='" + root + path + "/maven-metadata.xml.sha1'>maven-metadata.xml.sha1</a></li>";
-		html += "<li><a href='" + root + path + "/maven-metadata.xml.md5'>maven-metadata.xml.md5</a></li>";
-		html += "</ul>";
-		return html;
-	}
-
 	public Repository getRepository() {
 		return repository;
 	}
-
-	private String listGroups() throws IOException {
-		String html = "<a href='" + root + "'>Repository</a>";
-		html += "<h1>Groups</h1><ul>";
-		for (String group : getRepository().getGroups()) {
-			html += "<li><a href='" + root + group + "'>" + group + "</a></li>";
-		}
-		html += "</ul>";
-		return html;
+	
+	public MavenMetrics getMetrics() {
+		return metrics;
 	}
 	
-	private String listArtifacts(String path, String groupId) throws IOException {
-		// breadcrumbs
-		String html = "<a href='" + root + "'>Repository</a> &gt; <a href='" + root + groupId + "'>" + groupId + "</a>";
-		html += "<h1 title=\"" + groupId + "\">Artifacts</h1><ul>";
-		html += "<li><a href='" + root + path.replaceAll("/$", "") + "/..'>..</a></li>";
-		for (String artifact : getRepository().getArtifacts(groupId)) {
-			html += "<li><a href='" + root + path + "/" + artifact + "'>" + artifact + "</a></li>";
-		}
-		html += "</ul>";
-		return html;
+	public void setMetrics(MavenMetrics metrics) {
+		this.metrics = metrics;
+		metrics.register("poms", pomCache.getStatistics());
+		metrics.register("listings", listingCache.getStatistics());
+	}
+	
+	public DownloadLimiter getDownloadLimiter() {
+		return downloadLimiter;
 	}
 	
-	private String listVersions(String path, String groupId, String artifactId) throws IOException {
-		String html = "<a href='" + root + "'>Repository</a> &gt; <a href='" + root + groupId + "'>" + groupId + "</a> &gt; <a href='" + root + groupId + "/" + artifactId + "'>" + artifactId + "</a>";
-		html += "<h1 title=\"" + groupId + "." + artifactId + "\">Versions</h1><ul>";
-		html += "<li><a href='" + root + path.replaceAll("/$", "") + "/..'>..</a></li>";
-		html += "<li><a href='" + root + path + "/maven-metadata.xml'>maven-metadata.xml</a></li>";
-		for (String version : getRepository().getVersions(groupId, artifactId)) {
-			html += "<li><a href='" + root + path + "/" + version + "'>" + version + "</a></li>";
+	public void setDownloadLimiter(DownloadLimiter downloadLimiter) {
+		this.downloadLimiter = downloadLimiter;
+	}
+	
+	public boolean isAllowDelete() {
+		return allowDelete;
+	}
+	
+	public void setAllowDelete(boolean allowDelete) {
+		this.allowDelete = allowDelete;
+	}
+	
+	public PomPrefetcher getPrefetcher() {
+		return prefetcher;
+	}
+	
+	/**
+	 * The prefetcher loads the poms into the cache of this listener
+	 */
+	public void setPrefetcher(PomPrefetcher prefetcher) {
+		this.prefetcher = prefetcher;
+		if (prefetcher != null) {
+			prefetcher.setPomLoader(this::getPom);
 		}
-		html += "</ul>";
-		return html;
+	}
+	
+	public UpstreamMirror getMirror() {
+		return mirror;
+	}
+	
+	public void setMirror(UpstreamMirror mirror) {
+		this.mirror = mirror;
 	}
 
 	public HTTPResponse createResponse(String content, String mimeType, Header...headers) throws HTTPException {
@@ -348,6 +637,63 @@ public class MavenListener implements EventHandler<HTTPRequest, HTTPResponse> {
 		return createResponse(new ByteArrayInputStream(content.getBytes(Charset.forName("UTF-8"))), mimeType, headers);
 	}
 	
+	/**
+	 * Streams the content of the artifact if we know its size up front, only artifacts of unknown size are buffered
+	 */
+	public HTTPResponse createResponse(Artifact artifact, String mimeType, Header...headers) throws HTTPException, IOException {
+		if (artifact instanceof ResourceArtifact) {
+			ResourceArtifact resourceArtifact = (ResourceArtifact) artifact;
+			long size = resourceArtifact.getSize();
+			if (size >= 0) {
+				File file = resourceArtifact.getFile();
+				ReadableContainer<ByteBuffer> content = null;
+				if (file != null) {
+					FileReadableContainer fileContent = new FileReadableContainer(file);
+					// the size of the file we actually opened, it may have been replaced since the artifact was indexed
+					size = fileContent.getSize();
+					content = fileContent;
+				}
+				// popular artifacts from a remote backend are served from memory, they don't need a download permit
+				else if (getRepository() instanceof ResourceRepository && ((ResourceRepository) getRepository()).getHotArtifactCache() != null) {
+					content = ((ResourceRepository) getRepository()).getHotArtifactCache().get(resourceArtifact);
+					if (content != null) {
+						return createResponse(content, size, mimeType, headers);
+					}
+				}
+				if (content == null) {
+					content = resourceArtifact.getResource().getReadable();
+				}
+				if (downloadLimiter != null && downloadLimiter.isLimited(size)) {
+					content = downloadLimiter.acquire(content);
+					if (content == null) {
+						return new DefaultHTTPResponse(503, "Service Unavailable", new PlainMimeEmptyPart(null,
+							new MimeHeader("Retry-After", "" + downloadLimiter.getRetryAfter()),
+							new MimeHeader("Content-Length", "0")
+						));
+					}
+				}
+				try {
+					return createResponse(content, size, mimeType, headers);
+				}
+				catch (RuntimeException e) {
+					// the response will never be streamed, release the permit
+					content.close();
+					throw e;
+				}
+			}
+		}
+		return createResponse(artifact.getContent(), mimeType, headers);
+	}
+	
+	public HTTPResponse createResponse(ReadableContainer<ByteBuffer> content, long size, String mimeType, Header...headers) {
+		List<Header> allHeaders = new ArrayList<Header>(Arrays.asList(headers));
+		allHeaders.add(new MimeHeader("Content-Type", mimeType));
+		allHeaders.add(new MimeHeader("Content-Length", "" + size));
+		return new DefaultHTTPResponse(200, "OK", new PlainMimeContentPart(null, content,
+			allHeaders.toArray(new Header[0])
+		));
+	}
+	
 	public HTTPResponse createResponse(InputStream content, String mimeType, Header...headers) throws HTTPException {
 		if (content == null) {
 			throw new HTTPException(404, "Not Found");
@@ -357,12 +703,7 @@ public class MavenListener implements EventHandler<HTTPRequest, HTTPResponse> {
 			IOUtils.copyBytes(IOUtils.wrap(content), buffer);
 			// close the buffer to indicate that there is nothing more coming
 			buffer.close();
-			List<Header> allHeaders = new ArrayList<Header>(Arrays.asList(headers));
-			allHeaders.add(new MimeHeader("Content-Type", mimeType));
-			allHeaders.add(new MimeHeader("Content-Length", "" + buffer.remainingData()));
-			return new DefaultHTTPResponse(200, "OK", new PlainMimeContentPart(null, buffer,
-				allHeaders.toArray(new Header[0])
-			));
+			return createResponse(buffer, buffer.remainingData(), mimeType, headers);
 		}
 		catch (IOException e) {
 			throw new HTTPException(500, e);
@@ -377,18 +718,102 @@ public class MavenListener implements EventHandler<HTTPRequest, HTTPResponse> {
 		}
 	}
 	
-	private String getSha1(InputStream input, String path, String name) throws IOException, HTTPException {
-		if (input == null) {
+	private CachedContent getMetaData(String groupId, String artifactId) throws IOException {
+		if (getRepository() instanceof ResourceRepository) {
+			return ((ResourceRepository) getRepository()).getCachedMetaData(groupId, artifactId);
+		}
+		return CachedContent.read(getRepository().getMetaData(groupId, artifactId));
+	}
+	
+	private CachedContent getMetaData(Artifact artifact) throws IOException {
+		if (getRepository() instanceof ResourceRepository) {
+			return ((ResourceRepository) getRepository()).getCachedMetaData(artifact);
+		}
+		return CachedContent.read(getRepository().getMetaData(artifact));
+	}
+	
+	/**
+	 * Serves content that is kept in memory, the checksum of the content is used as the etag.
+	 * If the client accepts it, the content is sent in an encoded variant which is only calculated once per content.
+	 */
+	private HTTPResponse createResponse(HTTPRequest request, CachedContent content, String mimeType, Date lastModified) throws IOException, HTTPException {
+		if (content == null) {
 			throw new HTTPException(404, "Not Found");
 		}
-		return RepositoryUtils.hash(input, HashAlgorithm.SHA1) + " " + path + "/" + name;
+		ContentEncoding encoding = ContentEncoding.negotiate(MavenHTTPUtils.getHeader(request, "Accept-Encoding"));
+		byte [] bytes = content.getContent(encoding);
+		if (bytes == null) {
+			encoding = null;
+			bytes = content.getContent();
+		}
+		// each encoding is a different representation so it needs its own etag
+		String etag = MavenHTTPUtils.formatETag(content.getChecksums().getSha1() + (encoding == null ? "" : "-" + encoding.getName()));
+		HTTPResponse notModified = MavenHTTPUtils.checkNotModified(request, etag, lastModified);
+		if (notModified != null) {
+			return notModified;
+		}
+		List<Header> headers = new ArrayList<Header>();
+		headers.add(new MimeHeader("Vary", "Accept-Encoding"));
+		if (encoding != null) {
+			headers.add(new MimeHeader("Content-Encoding", encoding.getName()));
+		}
+		return createResponse(IOUtils.wrap(bytes, true), bytes.length, mimeType, MavenHTTPUtils.getValidators(etag, lastModified, headers.toArray(new Header[0])));
+	}
+	
+	private static String getPomKey(Artifact artifact) {
+		return artifact.getGroupId() + ":" + artifact.getArtifactId() + ":" + artifact.getVersion() + (artifact.isTest() ? ":tests" : "");
+	}
+	
+	/**
+	 * Wraps the content of the response so the time spent streaming it and the amount of bytes sent are recorded
+	 */
+	private HTTPResponse meter(HTTPResponse response, MavenMetrics.Route route) throws IOException {
+		if (response.getContent() instanceof ContentPart) {
+			ReadableContainer<ByteBuffer> readable = ((ContentPart) response.getContent()).getReadable();
+			if (readable != null) {
+				return new DefaultHTTPResponse(response.getCode(), response.getMessage(), new PlainMimeContentPart(null, 
+					new MeteredReadableContainer(readable, metrics, route),
+					response.getContent().getHeaders()
+				));
+			}
+		}
+		return response;
 	}
 	
-	private String getMd5(InputStream input, String path, String name) throws IOException, HTTPException {
-		if (input == null) {
+	/**
+	 * A HEAD request gets the same headers as a GET request but no content
+	 */
+	private HTTPResponse toHead(HTTPResponse response) throws IOException {
+		if (response.getContent() instanceof ContentPart) {
+			ReadableContainer<ByteBuffer> readable = ((ContentPart) response.getContent()).getReadable();
+			if (readable != null) {
+				readable.close();
+			}
+		}
+		Header [] headers = response.getContent() == null ? new Header[0] : response.getContent().getHeaders();
+		return new DefaultHTTPResponse(response.getCode(), response.getMessage(), new PlainMimeEmptyPart(null, headers));
+	}
+	
+	private Checksums getChecksums(Artifact artifact, boolean pom) throws IOException, HTTPException {
+		Checksums checksums;
+		if (getRepository() instanceof ResourceRepository) {
+			checksums = pom ? ((ResourceRepository) getRepository()).getPomChecksums(artifact) : ((ResourceRepository) getRepository()).getChecksums(artifact);
+		}
+		else {
+			InputStream input = pom ? artifact.getPom() : artifact.getContent();
+			checksums = input == null ? null : Checksums.calculate(input);
+		}
+		if (checksums == null) {
+			throw new HTTPException(404, "Not Found");
+		}
+		return checksums;
+	}
+	
+	private String getChecksum(CachedContent content, ChecksumAlgorithm algorithm, String path, String name) throws HTTPException {
+		if (content == null) {
 			throw new HTTPException(404, "Not Found");
 		}
-		return RepositoryUtils.hash(input, HashAlgorithm.MD5) + " " + path + "/" + name;
+		return content.getChecksums().get(algorithm) + " " + path + "/" + name;
 	}
 
 }
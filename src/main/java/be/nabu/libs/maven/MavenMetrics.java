@@ -0,0 +1,206 @@
+/*
+* Copyright (C) 2016 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package be.nabu.libs.maven;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The metrics of the listener and the repository, all counters are lock free so they can be updated on every request.
+ * They are exposed in the prometheus text format.
+ */
+public class MavenMetrics {
+	
+	public enum Route {
+		ARTIFACT,
+		POM,
+		CHECKSUM,
+		METADATA,
+		LISTING,
+		UPLOAD,
+		API,
+		OTHER;
+		
+		public String getLabel() {
+			return name().toLowerCase();
+		}
+		
+		/**
+		 * Determines the route based on the method and the path (relative to the root of the listener)
+		 */
+		public static Route classify(String method, String path) {
+			if ("PUT".equalsIgnoreCase(method)) {
+				return UPLOAD;
+			}
+			if (path == null) {
+				return LISTING;
+			}
+			int query = path.indexOf('?');
+			if (query >= 0) {
+				path = path.substring(0, query);
+			}
+			if (path.startsWith("/")) {
+				path = path.substring(1);
+			}
+			if (path.startsWith("-/")) {
+				return API;
+			}
+			String name = path.substring(path.lastIndexOf('/') + 1);
+			if (ChecksumAlgorithm.fromFileName(name) != null) {
+				return CHECKSUM;
+			}
+			else if (name.startsWith("maven-metadata.xml")) {
+				return METADATA;
+			}
+			else if (name.endsWith(".pom")) {
+				return POM;
+			}
+			else if (name.endsWith(".jar") || name.endsWith(".war")) {
+				return ARTIFACT;
+			}
+			else if (name.equals("style.css")) {
+				return OTHER;
+			}
+			return LISTING;
+		}
+	}
+	
+	private static class RouteMetrics {
+		private LongAdder requests = new LongAdder(), errors = new LongAdder(), bytesOut = new LongAdder();
+		// the time it takes to handle the request versus the time it takes to stream the response
+		private Histogram latency = Histogram.latency(), streaming = Histogram.latency();
+	}
+	
+	private Map<Route, RouteMetrics> routes = new EnumMap<Route, RouteMetrics>(Route.class);
+	
+	private Histogram refreshes = Histogram.latency(), scans = Histogram.latency(), uploads = Histogram.size();
+	private LongAdder artifactsVisited = new LongAdder(), bytesIn = new LongAdder();
+	
+	private Map<String, CacheStatistics> caches = new ConcurrentSkipListMap<String, CacheStatistics>();
+	
+	public MavenMetrics() {
+		for (Route route : Route.values()) {
+			routes.put(route, new RouteMetrics());
+		}
+	}
+	
+	/**
+	 * Registers a cache so its statistics are exposed, the name must be unique
+	 */
+	public void register(String name, CacheStatistics statistics) {
+		caches.put(name, statistics);
+	}
+	
+	public void request(Route route, int code, long nanos) {
+		RouteMetrics metrics = routes.get(route);
+		metrics.requests.increment();
+		if (code >= 500) {
+			metrics.errors.increment();
+		}
+		metrics.latency.record(nanos);
+	}
+	
+	public void streamed(Route route, long bytes, long nanos) {
+		RouteMetrics metrics = routes.get(route);
+		metrics.bytesOut.add(bytes);
+		metrics.streaming.record(nanos);
+	}
+	
+	public void refreshed(long nanos) {
+		refreshes.record(nanos);
+	}
+	
+	public void scanned(long nanos, long visited) {
+		scans.record(nanos);
+		artifactsVisited.add(visited);
+	}
+	
+	public void uploaded(long bytes) {
+		bytesIn.add(bytes);
+		uploads.record(bytes);
+	}
+	
+	public void write(Writer writer) throws IOException {
+		writer.write("# HELP maven_requests_total The amount of requests handled per route\n");
+		writer.write("# TYPE maven_requests_total counter\n");
+		for (Route route : Route.values()) {
+			writer.write("maven_requests_total{route=\"" + route.getLabel() + "\"} " + routes.get(route).requests.sum() + "\n");
+		}
+		writer.write("# HELP maven_request_errors_total The amount of requests that failed with a server error per route\n");
+		writer.write("# TYPE maven_request_errors_total counter\n");
+		for (Route route : Route.values()) {
+			writer.write("maven_request_errors_total{route=\"" + route.getLabel() + "\"} " + routes.get(route).errors.sum() + "\n");
+		}
+		writer.write("# HELP maven_request_duration_seconds The time it takes to handle a request, excluding streaming of the response\n");
+		writer.write("# TYPE maven_request_duration_seconds histogram\n");
+		for (Route route : Route.values()) {
+			routes.get(route).latency.write(writer, "maven_request_duration_seconds", "route=\"" + route.getLabel() + "\"");
+		}
+		writer.write("# HELP maven_response_streaming_seconds The time it takes to stream a response to the client\n");
+		writer.write("# TYPE maven_response_streaming_seconds histogram\n");
+		for (Route route : Route.values()) {
+			routes.get(route).streaming.write(writer, "maven_response_streaming_seconds", "route=\"" + route.getLabel() + "\"");
+		}
+		writer.write("# HELP maven_response_bytes_total The amount of bytes streamed to clients per route\n");
+		writer.write("# TYPE maven_response_bytes_total counter\n");
+		for (Route route : Route.values()) {
+			writer.write("maven_response_bytes_total{route=\"" + route.getLabel() + "\"} " + routes.get(route).bytesOut.sum() + "\n");
+		}
+		writer.write("# HELP maven_upload_bytes_total The amount of bytes uploaded\n");
+		writer.write("# TYPE maven_upload_bytes_total counter\n");
+		writer.write("maven_upload_bytes_total " + bytesIn.sum() + "\n");
+		writer.write("# HELP maven_upload_size_bytes The size of the uploaded artifacts\n");
+		writer.write("# TYPE maven_upload_size_bytes histogram\n");
+		uploads.write(writer, "maven_upload_size_bytes", null);
+		writer.write("# HELP maven_refresh_duration_seconds The time a request spends bringing the index up to date\n");
+		writer.write("# TYPE maven_refresh_duration_seconds histogram\n");
+		refreshes.write(writer, "maven_refresh_duration_seconds", null);
+		writer.write("# HELP maven_scan_duration_seconds The duration of the scans of the repository\n");
+		writer.write("# TYPE maven_scan_duration_seconds histogram\n");
+		scans.write(writer, "maven_scan_duration_seconds", null);
+		writer.write("# HELP maven_scan_artifacts_visited_total The amount of artifacts visited by scans\n");
+		writer.write("# TYPE maven_scan_artifacts_visited_total counter\n");
+		writer.write("maven_scan_artifacts_visited_total " + artifactsVisited.sum() + "\n");
+		writer.write("# HELP maven_cache_hits_total The amount of cache hits\n");
+		writer.write("# TYPE maven_cache_hits_total counter\n");
+		for (Map.Entry<String, CacheStatistics> entry : caches.entrySet()) {
+			writer.write("maven_cache_hits_total{cache=\"" + entry.getKey() + "\"} " + entry.getValue().getHits() + "\n");
+		}
+		writer.write("# HELP maven_cache_misses_total The amount of cache misses\n");
+		writer.write("# TYPE maven_cache_misses_total counter\n");
+		for (Map.Entry<String, CacheStatistics> entry : caches.entrySet()) {
+			writer.write("maven_cache_misses_total{cache=\"" + entry.getKey() + "\"} " + entry.getValue().getMisses() + "\n");
+		}
+		writer.write("# HELP maven_cache_evictions_total The amount of entries evicted from a cache because it was full\n");
+		writer.write("# TYPE maven_cache_evictions_total counter\n");
+		for (Map.Entry<String, CacheStatistics> entry : caches.entrySet()) {
+			writer.write("maven_cache_evictions_total{cache=\"" + entry.getKey() + "\"} " + entry.getValue().getEvictions() + "\n");
+		}
+		writer.write("# HELP maven_cache_size_bytes The amount of bytes held by a cache with a byte budget\n");
+		writer.write("# TYPE maven_cache_size_bytes gauge\n");
+		for (Map.Entry<String, CacheStatistics> entry : caches.entrySet()) {
+			if (entry.getValue().isSized()) {
+				writer.write("maven_cache_size_bytes{cache=\"" + entry.getKey() + "\"} " + entry.getValue().getBytes() + "\n");
+			}
+		}
+	}
+}
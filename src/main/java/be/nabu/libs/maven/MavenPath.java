@@ -0,0 +1,310 @@
+/*
+* Copyright (C) 2016 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package be.nabu.libs.maven;
+
+/**
+ * A request path resolved according to the maven layout.
+ * The path is parsed in a single pass without regular expressions, both the dotted ("com.example/...") and the split ("com/example/...") form of the groupId are supported.
+ * 
+ * Files are split in their coordinate and a kind. Any file can additionally be a checksum (.md5, .sha1, .sha256, .sha512) of that file.
+ * A file name is expected to be "{artifactId}-{version}[-{classifier}].{extension}[.asc][.{checksum}]", if it does not start with the artifactId and version (for example a timestamped snapshot) only the extension and the "-tests" suffix are used.
+ */
+public class MavenPath {
+	
+	public static final String METADATA_NAME = "maven-metadata.xml";
+	
+	public enum Kind {
+		// the groups in the repository
+		GROUPS,
+		// the artifacts in a group
+		ARTIFACTS,
+		// the versions of an artifact
+		VERSIONS,
+		// the page of one version
+		VERSION,
+		// the maven-metadata.xml of an artifact (or, if there is a version, of that version)
+		METADATA,
+		POM,
+		// the archive itself (jar, war,...)
+		ARCHIVE,
+		// a detached signature (.asc) of a file
+		SIGNATURE,
+		STYLE,
+		API
+	}
+	
+	private Kind kind;
+	private String path, groupId, artifactId, version, name, classifier, extension;
+	private ChecksumAlgorithm checksum;
+	// the boundaries of the segments, only kept for the alternative interpretation of metadata paths
+	private int [] segments;
+	private int segmentCount;
+	
+	private MavenPath(String path, Kind kind) {
+		this.path = path;
+		this.kind = kind;
+	}
+	
+	/**
+	 * Parses a path relative to the root of the repository, leading and trailing slashes are ignored
+	 */
+	public static MavenPath parse(String path) {
+		int start = 0, end = path == null ? 0 : path.length();
+		while (start < end && path.charAt(start) == '/') {
+			start++;
+		}
+		while (end > start && path.charAt(end - 1) == '/') {
+			end--;
+		}
+		if (start == end) {
+			return new MavenPath("", Kind.GROUPS);
+		}
+		path = path.substring(start, end);
+		// the start of each segment plus the end of the path
+		int [] segments = new int[8];
+		int count = 0;
+		segments[count++] = 0;
+		for (int i = 0; i < path.length(); i++) {
+			if (path.charAt(i) == '/') {
+				if (count == segments.length - 1) {
+					int [] resized = new int[segments.length * 2];
+					System.arraycopy(segments, 0, resized, 0, count);
+					segments = resized;
+				}
+				segments[count++] = i + 1;
+			}
+		}
+		segments[count] = path.length() + 1;
+		MavenPath result;
+		if (count >= 1 && path.charAt(0) == '-' && segments[1] == 2) {
+			result = new MavenPath(path, Kind.API);
+		}
+		else if (count == 1) {
+			result = new MavenPath(path, path.equals("style.css") ? Kind.STYLE : Kind.ARTIFACTS);
+			result.groupId = path;
+		}
+		else if (count == 2) {
+			result = new MavenPath(path, Kind.VERSIONS);
+			result.groupId = segment(path, segments, 0);
+			result.artifactId = segment(path, segments, 1);
+		}
+		else {
+			String name = segment(path, segments, count - 1);
+			ChecksumAlgorithm checksum = ChecksumAlgorithm.fromFileName(name);
+			String file = checksum == null ? name : name.substring(0, name.length() - checksum.getExtension().length() - 1);
+			if (file.equals(METADATA_NAME)) {
+				result = new MavenPath(path, Kind.METADATA);
+				// without a version it is the metadata of the artifact
+				if (count == 3) {
+					result.groupId = segment(path, segments, 0);
+					result.artifactId = segment(path, segments, 1);
+				}
+				else {
+					result.groupId = getGroupId(path, segments, count - 3);
+					result.artifactId = segment(path, segments, count - 3);
+					result.version = segment(path, segments, count - 2);
+				}
+				result.segments = segments;
+				result.segmentCount = count;
+			}
+			else if (count == 3) {
+				result = new MavenPath(path, Kind.VERSION);
+				result.groupId = segment(path, segments, 0);
+				result.artifactId = segment(path, segments, 1);
+				result.version = segment(path, segments, 2);
+				return result;
+			}
+			else {
+				result = new MavenPath(path, null);
+				result.groupId = getGroupId(path, segments, count - 3);
+				result.artifactId = segment(path, segments, count - 3);
+				result.version = segment(path, segments, count - 2);
+				result.parseFile(file);
+			}
+			result.name = name;
+			result.checksum = checksum;
+		}
+		return result;
+	}
+	
+	private void parseFile(String file) {
+		boolean signature = file.endsWith(".asc");
+		if (signature) {
+			file = file.substring(0, file.length() - 4);
+		}
+		int dot = file.lastIndexOf('.');
+		extension = dot < 0 ? "" : file.substring(dot + 1).toLowerCase();
+		String base = dot < 0 ? file : file.substring(0, dot);
+		// the base is "{artifactId}-{version}" optionally followed by "-{classifier}"
+		// for a snapshot the version in the file name can also be "{baseVersion}-{yyyyMMdd.HHmmss}-{buildNumber}"
+		int prefix = getVersionEnd(base);
+		if (prefix >= 0) {
+			if (base.length() > prefix + 1 && base.charAt(prefix) == '-') {
+				classifier = base.substring(prefix + 1);
+			}
+		}
+		else if (base.endsWith("-tests")) {
+			classifier = "tests";
+		}
+		if (signature) {
+			kind = Kind.SIGNATURE;
+		}
+		else if (extension.equals("pom")) {
+			kind = Kind.POM;
+		}
+		else {
+			kind = Kind.ARCHIVE;
+		}
+	}
+	
+	// the position right after the version in the file name, -1 if the file name does not start with the artifactId and version
+	private int getVersionEnd(String base) {
+		int start = artifactId.length() + 1;
+		if (base.length() <= start || !base.startsWith(artifactId) || base.charAt(artifactId.length()) != '-') {
+			return -1;
+		}
+		if (base.startsWith(version, start) && (base.length() == start + version.length() || base.charAt(start + version.length()) == '-')) {
+			// a timestamped snapshot of a version that does not end in "-SNAPSHOT" is not possible so this is the version
+			return start + version.length();
+		}
+		if (version.endsWith("-SNAPSHOT")) {
+			String baseVersion = version.substring(0, version.length() - "-SNAPSHOT".length());
+			if (base.startsWith(baseVersion, start) && base.length() > start + baseVersion.length() && base.charAt(start + baseVersion.length()) == '-') {
+				int position = start + baseVersion.length() + 1;
+				// yyyyMMdd.HHmmss
+				if (base.length() < position + 15 || base.charAt(position + 8) != '.' || !isDigits(base, position, position + 8) || !isDigits(base, position + 9, position + 15)) {
+					return -1;
+				}
+				position += 15;
+				// -{buildNumber}
+				if (base.length() < position + 2 || base.charAt(position) != '-') {
+					return -1;
+				}
+				int end = position + 1;
+				while (end < base.length() && Character.isDigit(base.charAt(end))) {
+					end++;
+				}
+				return end > position + 1 && (end == base.length() || base.charAt(end) == '-') ? end : -1;
+			}
+		}
+		return -1;
+	}
+	
+	private static boolean isDigits(String value, int from, int to) {
+		for (int i = from; i < to; i++) {
+			if (!Character.isDigit(value.charAt(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	private static String segment(String path, int [] segments, int index) {
+		return path.substring(segments[index], segments[index + 1] - 1);
+	}
+	
+	// the groupId spans all the segments up to the given one
+	private static String getGroupId(String path, int [] segments, int end) {
+		String groupId = path.substring(0, segments[end] - 1);
+		return end == 1 ? groupId : groupId.replace('/', '.');
+	}
+	
+	/**
+	 * A metadata path with a version can also be the metadata of an artifact with a split groupId: "com/example/artifact/maven-metadata.xml".
+	 * Returns that interpretation or null if there is none.
+	 */
+	public MavenPath getArtifactMetaData() {
+		if (kind != Kind.METADATA || version == null) {
+			return null;
+		}
+		MavenPath result = new MavenPath(path, Kind.METADATA);
+		result.groupId = getGroupId(path, segments, segmentCount - 2);
+		result.artifactId = segment(path, segments, segmentCount - 2);
+		result.name = name;
+		result.checksum = checksum;
+		return result;
+	}
+	
+	/**
+	 * The path with the groupId in its dotted form
+	 */
+	public String getCanonicalPath() {
+		if (name == null) {
+			return path;
+		}
+		return groupId + "/" + artifactId + (version == null ? "" : "/" + version) + "/" + name;
+	}
+	
+	public Kind getKind() {
+		return kind;
+	}
+	
+	public String getPath() {
+		return path;
+	}
+	
+	public String getGroupId() {
+		return groupId;
+	}
+	
+	public String getArtifactId() {
+		return artifactId;
+	}
+	
+	public String getVersion() {
+		return version;
+	}
+	
+	/**
+	 * The file name as it was requested
+	 */
+	public String getName() {
+		return name;
+	}
+	
+	public String getClassifier() {
+		return classifier;
+	}
+	
+	public String getExtension() {
+		return extension;
+	}
+	
+	/**
+	 * The checksum algorithm if the checksum of the file is requested rather than the file itself
+	 */
+	public ChecksumAlgorithm getChecksum() {
+		return checksum;
+	}
+	
+	public boolean isTest() {
+		return "tests".equals(classifier);
+	}
+	
+	/**
+	 * Whether this is a variant of the artifact that the repository does not store, for example sources or javadoc
+	 */
+	public boolean isClassified() {
+		return classifier != null && !isTest();
+	}
+	
+	@Override
+	public String toString() {
+		return kind + ":" + path;
+	}
+}
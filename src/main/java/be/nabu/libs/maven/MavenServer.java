@@ -0,0 +1,220 @@
+/*
+* Copyright (C) 2016 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package be.nabu.libs.maven;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import be.nabu.libs.events.impl.EventDispatcherImpl;
+import be.nabu.libs.http.api.HTTPRequest;
+import be.nabu.libs.http.api.server.HTTPServer;
+import be.nabu.libs.http.server.HTTPServerUtils;
+import be.nabu.libs.resources.ResourceUtils;
+
+/**
+ * Starts a maven server. Each setting can be passed as an argument "--name=value" or as a system property "maven.name":
+ * 
+ * - port: the port to listen on (default 1111)
+ * - root: the uri of the repository (default file:~/maven)
+ * - path: the path the repository is served on (default /)
+ * - pool: the size of the pool that handles the requests (default 20)
+ * - largeDownloads: the maximum amount of large downloads that are streamed at the same time, 0 for no limit (default 0)
+ * - largeDownloadSize: the size in bytes from which a download is considered large (default 10mb)
+ * - eventPartitions: the amount of partitions of the asynchronous event queue, 0 to fire events synchronously (default 0)
+ * - virtualThreads: whether the background threads of the server are virtual threads if the runtime supports them (default false)
+ * - blobs: whether the content of uploads is deduplicated in a blob store (default false)
+ * - hotCacheSize: the amount of bytes used to keep popular artifacts in memory if the repository is not on the local file system, 0 to disable (default 0)
+ * - classes: whether the classes in the archives are indexed for /-/search, they are only read once the first search is done (default false)
+ * - watch: whether the filesystem is watched for changes instead of scanned periodically (default true)
+ * - mirror: the uri of an upstream repository to fetch missing artifacts from (optional)
+ * - prefetchThreads: the amount of threads that warm the caches for the dependencies of a served pom, 0 to disable (default 2)
+ * - replicas: a comma separated list of uris of peer servers that every artifact is replicated to (optional)
+ * - deletes: whether clients can delete artifacts, this is needed on the servers that are replicated to (default false)
+ * - catchUpInterval: how often (in ms) the index of the replicas is compared to ours, 0 to only do it at startup (default 10 minutes)
+ * 
+ * Note that the requests themselves are always handled by the pool of the http server, virtual threads are only used for the threads this server creates itself.
+ * The download limiter is what keeps the pool available for cheap requests when there are many slow downloads.
+ */
+public class MavenServer {
+	
+	private String [] arguments;
+	private HTTPServer server;
+	private ResourceRepository repository;
+	private AsyncEventQueue queue;
+	private Replicator replicator;
+	private PomPrefetcher prefetcher;
+	
+	public MavenServer(String...arguments) {
+		this.arguments = arguments;
+	}
+	
+	public static void main(String...args) throws IOException, URISyntaxException {
+		new MavenServer(args).start();
+	}
+	
+	public HTTPServer start() throws IOException, URISyntaxException {
+		int port = getInteger("port", 1111);
+		int pool = getInteger("pool", 20);
+		boolean virtualThreads = getBoolean("virtualThreads", false);
+		
+		repository = new ResourceRepository(ResourceUtils.mkdir(new URI(get("root", new File(System.getProperty("user.home"), "maven").toURI().toString())), null));
+		if (getBoolean("blobs", false)) {
+			repository.enableBlobStore();
+		}
+		long hotCacheSize = getLong("hotCacheSize", 0);
+		if (hotCacheSize > 0) {
+			repository.setHotArtifactCache(new HotArtifactCache(hotCacheSize));
+		}
+		if (getBoolean("classes", false)) {
+			repository.setClassIndex(new ClassIndex());
+		}
+		if (getBoolean("watch", true)) {
+			repository.watch();
+		}
+		int eventPartitions = getInteger("eventPartitions", 0);
+		if (eventPartitions > 0) {
+			queue = new AsyncEventQueue(repository.getDispatcher(), repository, eventPartitions, 1000);
+			queue.setThreadFactory(newThreadFactory("maven-events", virtualThreads));
+			queue.start();
+			repository.setEventQueue(queue);
+		}
+		
+		// the initial scan, nothing (requests or replication) should see a partially populated repository
+		repository.refresh();
+		
+		String replicas = get("replicas", null);
+		if (replicas != null) {
+			replicator = Replicator.newInstance(repository);
+			if (replicator == null) {
+				throw new IOException("Replication requires a repository on the local filesystem");
+			}
+			replicator.setThreadFactory(newThreadFactory("maven-replication", virtualThreads));
+			replicator.setCatchUpInterval(getLong("catchUpInterval", replicator.getCatchUpInterval()));
+			for (String replica : replicas.split("\\s*,\\s*")) {
+				replicator.addPeer(new URI(replica));
+			}
+			replicator.start();
+		}
+		
+		MavenListener listener = new MavenListener(repository, get("path", "/"));
+		// there is no authentication, only a server that receives replication should allow this
+		listener.setAllowDelete(getBoolean("deletes", false));
+		// off by default, older maven and gradle clients fail on the 503 instead of retrying
+		int largeDownloads = getInteger("largeDownloads", 0);
+		if (largeDownloads > 0) {
+			listener.setDownloadLimiter(new DownloadLimiter(largeDownloads, getLong("largeDownloadSize", 10l * 1024 * 1024)));
+		}
+		int prefetchThreads = getInteger("prefetchThreads", 2);
+		if (prefetchThreads > 0) {
+			prefetcher = new PomPrefetcher(repository, prefetchThreads, 1000);
+			prefetcher.setThreadFactory(newThreadFactory("maven-prefetch", virtualThreads));
+			prefetcher.start();
+			listener.setPrefetcher(prefetcher);
+		}
+		String mirror = get("mirror", null);
+		if (mirror != null) {
+			listener.setMirror(new UpstreamMirror(repository, new URI(mirror)));
+		}
+		
+		HTTPServer server = HTTPServerUtils.newServer(port, pool, new EventDispatcherImpl());
+		server.getDispatcher(null).subscribe(HTTPRequest.class, listener)
+			.filter(HTTPServerUtils.filterPath(get("path", "/")));
+		this.server = server;
+		server.start();
+		return server;
+	}
+	
+	public void stop() throws IOException, InterruptedException {
+		if (replicator != null) {
+			replicator.stop();
+		}
+		if (prefetcher != null) {
+			prefetcher.stop();
+		}
+		if (queue != null) {
+			queue.stop();
+		}
+		if (server != null) {
+			server.stop();
+		}
+		if (repository != null) {
+			repository.unwatch();
+		}
+	}
+	
+	/**
+	 * Creates virtual threads if requested and the runtime supports them (java 21+), otherwise daemon platform threads
+	 */
+	public static ThreadFactory newThreadFactory(String name, boolean virtual) {
+		if (virtual) {
+			try {
+				// through reflection so we can still run on older runtimes
+				Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+				Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+				builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, name + "-", 0l);
+				Method factory = builderClass.getMethod("factory");
+				return (ThreadFactory) factory.invoke(builder);
+			}
+			catch (Exception e) {
+				// not supported, fall back to platform threads
+			}
+		}
+		final AtomicLong counter = new AtomicLong();
+		final ThreadFactory defaultFactory = Executors.defaultThreadFactory();
+		return runnable -> {
+			Thread thread = defaultFactory.newThread(runnable);
+			thread.setName(name + "-" + counter.getAndIncrement());
+			thread.setDaemon(true);
+			return thread;
+		};
+	}
+	
+	private String get(String name, String defaultValue) {
+		for (String argument : arguments) {
+			if (argument.startsWith("--" + name + "=")) {
+				return argument.substring(name.length() + 3);
+			}
+			// a flag without a value
+			else if (argument.equals("--" + name)) {
+				return "true";
+			}
+		}
+		return System.getProperty("maven." + name, defaultValue);
+	}
+	
+	private int getInteger(String name, int defaultValue) {
+		String value = get(name, null);
+		return value == null ? defaultValue : Integer.parseInt(value);
+	}
+	
+	private long getLong(String name, long defaultValue) {
+		String value = get(name, null);
+		return value == null ? defaultValue : Long.parseLong(value);
+	}
+	
+	private boolean getBoolean(String name, boolean defaultValue) {
+		String value = get(name, null);
+		return value == null ? defaultValue : Boolean.parseBoolean(value);
+	}
+}
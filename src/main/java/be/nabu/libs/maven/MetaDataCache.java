@@ -0,0 +1,154 @@
+/*
+* Copyright (C) 2016 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package be.nabu.libs.maven;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import be.nabu.libs.events.api.EventDispatcher;
+import be.nabu.libs.events.api.EventHandler;
+import be.nabu.libs.maven.api.Artifact;
+
+/**
+ * Caches the rendered maven-metadata.xml files per groupId:artifactId.
+ * The group level metadata and the metadata of each version are cached together so a single change invalidates all of them.
+ * At most maxEntries artifacts are cached, the least recently used one is evicted first.
+ */
+public class MetaDataCache {
+	
+	public interface MetaDataLoader {
+		public InputStream load() throws IOException;
+	}
+	
+	private int maxEntries;
+	private Map<String, Map<String, CachedContent>> cache;
+	private CacheStatistics statistics = new CacheStatistics();
+	
+	public MetaDataCache() {
+		this(10000);
+	}
+	
+	public MetaDataCache(final int maxEntries) {
+		this.maxEntries = maxEntries;
+		this.cache = new LinkedHashMap<String, Map<String, CachedContent>>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Map<String, CachedContent>> eldest) {
+				if (size() > MetaDataCache.this.maxEntries) {
+					statistics.evict();
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+	
+	/**
+	 * Returns the group level metadata
+	 */
+	public CachedContent get(String groupId, String artifactId, MetaDataLoader loader) throws IOException {
+		return get(groupId, artifactId, "", loader);
+	}
+	
+	/**
+	 * Returns the metadata of a specific artifact
+	 */
+	public CachedContent get(Artifact artifact, MetaDataLoader loader) throws IOException {
+		return get(artifact.getGroupId(), artifact.getArtifactId(), artifact.getVersion() + (artifact.isTest() ? ":tests" : ""), loader);
+	}
+	
+	private CachedContent get(String groupId, String artifactId, String key, final MetaDataLoader loader) throws IOException {
+		Map<String, CachedContent> versions;
+		// the metadata itself is loaded outside of this lock
+		synchronized(cache) {
+			versions = cache.get(groupId + ":" + artifactId);
+			if (versions == null) {
+				versions = new ConcurrentHashMap<String, CachedContent>();
+				cache.put(groupId + ":" + artifactId, versions);
+			}
+		}
+		CachedContent content = versions.get(key);
+		if (content != null) {
+			statistics.hit();
+		}
+		else {
+			statistics.miss();
+			try {
+				// if nothing is found, nothing is cached
+				content = versions.computeIfAbsent(key, k -> {
+					try {
+						return CachedContent.read(loader.load());
+					}
+					catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+				});
+			}
+			catch (UncheckedIOException e) {
+				throw e.getCause();
+			}
+		}
+		return content;
+	}
+	
+	public void invalidate(Artifact artifact) {
+		if (artifact.getGroupId() != null && artifact.getArtifactId() != null) {
+			synchronized(cache) {
+				cache.remove(artifact.getGroupId() + ":" + artifact.getArtifactId());
+			}
+		}
+	}
+	
+	public void clear() {
+		synchronized(cache) {
+			cache.clear();
+		}
+	}
+	
+	public int getMaxEntries() {
+		return maxEntries;
+	}
+	
+	public CacheStatistics getStatistics() {
+		return statistics;
+	}
+	
+	/**
+	 * Invalidates the cache whenever an artifact is created or deleted
+	 */
+	public void subscribe(EventDispatcher dispatcher) {
+		dispatcher.subscribe(CreateResourceRepositoryEvent.class, new EventHandler<CreateResourceRepositoryEvent, Void>() {
+			@Override
+			public Void handle(CreateResourceRepositoryEvent event) {
+				invalidate(event.getArtifact());
+				return null;
+			}
+		});
+		dispatcher.subscribe(DeleteResourceRepositoryEvent.class, new EventHandler<DeleteResourceRepositoryEvent, Void>() {
+			@Override
+			public Void handle(DeleteResourceRepositoryEvent event) {
+				invalidate(event.getArtifact());
+				return null;
+			}
+		});
+	}
+}
@@ -0,0 +1,64 @@
+/*
+* Copyright (C) 2016 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package be.nabu.libs.maven;
+
+import java.io.IOException;
+
+import be.nabu.utils.io.api.ByteBuffer;
+import be.nabu.utils.io.api.ReadableContainer;
+
+/**
+ * Wraps the content of a response to measure how long it takes to stream and how many bytes are actually sent.
+ * The measurement is recorded when the server closes the content.
+ */
+public class MeteredReadableContainer implements ReadableContainer<ByteBuffer> {
+
+	private ReadableContainer<ByteBuffer> parent;
+	private MavenMetrics metrics;
+	private MavenMetrics.Route route;
+	private long started = System.nanoTime(), bytes;
+	private boolean closed;
+	
+	public MeteredReadableContainer(ReadableContainer<ByteBuffer> parent, MavenMetrics metrics, MavenMetrics.Route route) {
+		this.parent = parent;
+		this.metrics = metrics;
+		this.route = route;
+	}
+	
+	@Override
+	public long read(ByteBuffer target) throws IOException {
+		long read = parent.read(target);
+		if (read > 0) {
+			bytes += read;
+		}
+		return read;
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			parent.close();
+		}
+		finally {
+			if (!closed) {
+				closed = true;
+				metrics.streamed(route, bytes, System.nanoTime() - started);
+			}
+		}
+	}
+}
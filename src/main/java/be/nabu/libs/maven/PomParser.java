@@ -0,0 +1,335 @@
+/*
+* Copyright (C) 2016 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package be.nabu.libs.maven;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Streaming access to the parts of a pom we need, the pom is only read as far as necessary
+ */
+public class PomParser {
+	
+	// the factory is thread safe once configured
+	private static final XMLInputFactory factory = newFactory();
+	
+	private static XMLInputFactory newFactory() {
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+		return factory;
+	}
+	
+	/**
+	 * Reads the packaging of the project, maven defaults to "jar" if it is not specified
+	 */
+	public static String getPackaging(InputStream input) throws IOException {
+		try {
+			XMLStreamReader reader = factory.createXMLStreamReader(input);
+			try {
+				int depth = 0;
+				while (reader.hasNext()) {
+					int event = reader.next();
+					if (event == XMLStreamReader.START_ELEMENT) {
+						depth++;
+						// only the packaging directly in the project counts
+						if (depth == 2 && reader.getLocalName().equals("packaging")) {
+							return reader.getElementText().trim();
+						}
+					}
+					else if (event == XMLStreamReader.END_ELEMENT) {
+						depth--;
+					}
+				}
+				return "jar";
+			}
+			finally {
+				reader.close();
+			}
+		}
+		catch (XMLStreamException e) {
+			throw new IOException("Could not parse pom", e);
+		}
+	}
+	
+	/**
+	 * A dependency as declared in the pom, the version can be null if it is managed elsewhere
+	 */
+	public static class Dependency {
+		private String groupId, artifactId, version, scope, type, classifier;
+		private boolean optional;
+		
+		public String getGroupId() {
+			return groupId;
+		}
+		public String getArtifactId() {
+			return artifactId;
+		}
+		public String getVersion() {
+			return version;
+		}
+		/**
+		 * Maven defaults to the compile scope
+		 */
+		public String getScope() {
+			return scope == null ? "compile" : scope;
+		}
+		public String getType() {
+			return type == null ? "jar" : type;
+		}
+		public String getClassifier() {
+			return classifier;
+		}
+		public boolean isOptional() {
+			return optional;
+		}
+		/**
+		 * Whether this refers to the tests artifact of the dependency
+		 */
+		public boolean isTest() {
+			return "test-jar".equals(type) || "tests".equals(classifier);
+		}
+	}
+	
+	/**
+	 * The parts of a pom that are needed to resolve its dependencies, nothing is inherited or interpolated yet
+	 */
+	public static class Pom {
+		private String groupId, artifactId, version, packaging, parentGroupId, parentArtifactId, parentVersion;
+		private Map<String, String> properties = new LinkedHashMap<String, String>();
+		private List<Dependency> dependencies = new ArrayList<Dependency>(), managedDependencies = new ArrayList<Dependency>();
+		
+		public String getGroupId() {
+			return groupId == null ? parentGroupId : groupId;
+		}
+		public String getArtifactId() {
+			return artifactId;
+		}
+		public String getVersion() {
+			return version == null ? parentVersion : version;
+		}
+		public String getPackaging() {
+			return packaging == null ? "jar" : packaging;
+		}
+		public String getParentGroupId() {
+			return parentGroupId;
+		}
+		public String getParentArtifactId() {
+			return parentArtifactId;
+		}
+		public String getParentVersion() {
+			return parentVersion;
+		}
+		public Map<String, String> getProperties() {
+			return properties;
+		}
+		public List<Dependency> getDependencies() {
+			return dependencies;
+		}
+		public List<Dependency> getManagedDependencies() {
+			return managedDependencies;
+		}
+	}
+	
+	/**
+	 * Parses the coordinates, parent, properties and (managed) dependencies of the pom, the rest is skipped
+	 */
+	public static Pom parse(InputStream input) throws IOException {
+		Pom pom = new Pom();
+		try {
+			XMLStreamReader reader = factory.createXMLStreamReader(input);
+			try {
+				List<String> path = new ArrayList<String>();
+				Dependency dependency = null;
+				while (reader.hasNext()) {
+					int event = reader.next();
+					if (event == XMLStreamReader.START_ELEMENT) {
+						path.add(reader.getLocalName());
+						String current = String.join("/", path);
+						if (current.equals("project/dependencies/dependency")) {
+							dependency = new Dependency();
+							pom.dependencies.add(dependency);
+						}
+						else if (current.equals("project/dependencyManagement/dependencies/dependency")) {
+							dependency = new Dependency();
+							pom.managedDependencies.add(dependency);
+						}
+						else if (isValue(path, dependency)) {
+							// this consumes the end element as well
+							set(pom, dependency, path, reader.getElementText().trim());
+							path.remove(path.size() - 1);
+						}
+					}
+					else if (event == XMLStreamReader.END_ELEMENT) {
+						if (path.get(path.size() - 1).equals("dependency")) {
+							dependency = null;
+						}
+						path.remove(path.size() - 1);
+					}
+				}
+			}
+			finally {
+				reader.close();
+			}
+		}
+		catch (XMLStreamException e) {
+			throw new IOException("Could not parse pom", e);
+		}
+		return pom;
+	}
+	
+	private static boolean isValue(List<String> path, Dependency dependency) {
+		String name = path.get(path.size() - 1);
+		if (path.size() == 2) {
+			return name.equals("groupId") || name.equals("artifactId") || name.equals("version") || name.equals("packaging");
+		}
+		else if (path.size() == 3 && path.get(1).equals("parent")) {
+			return name.equals("groupId") || name.equals("artifactId") || name.equals("version");
+		}
+		else if (path.size() == 3 && path.get(1).equals("properties")) {
+			return true;
+		}
+		// the direct children of the dependency, not those of the exclusions
+		else if (dependency != null && path.get(path.size() - 2).equals("dependency")) {
+			return name.equals("groupId") || name.equals("artifactId") || name.equals("version") || name.equals("scope") 
+				|| name.equals("type") || name.equals("classifier") || name.equals("optional");
+		}
+		return false;
+	}
+	
+	private static void set(Pom pom, Dependency dependency, List<String> path, String value) {
+		String name = path.get(path.size() - 1);
+		if (path.size() == 2) {
+			if (name.equals("groupId")) {
+				pom.groupId = value;
+			}
+			else if (name.equals("artifactId")) {
+				pom.artifactId = value;
+			}
+			else if (name.equals("version")) {
+				pom.version = value;
+			}
+			else if (name.equals("packaging")) {
+				pom.packaging = value;
+			}
+		}
+		else if (path.size() == 3 && path.get(1).equals("properties")) {
+			pom.properties.put(name, value);
+		}
+		else if (path.size() == 3 && path.get(1).equals("parent")) {
+			if (name.equals("groupId")) {
+				pom.parentGroupId = value;
+			}
+			else if (name.equals("artifactId")) {
+				pom.parentArtifactId = value;
+			}
+			else if (name.equals("version")) {
+				pom.parentVersion = value;
+			}
+		}
+		else if (dependency != null) {
+			if (name.equals("groupId")) {
+				dependency.groupId = value;
+			}
+			else if (name.equals("artifactId")) {
+				dependency.artifactId = value;
+			}
+			else if (name.equals("version")) {
+				dependency.version = value;
+			}
+			else if (name.equals("scope")) {
+				dependency.scope = value;
+			}
+			else if (name.equals("type")) {
+				dependency.type = value;
+			}
+			else if (name.equals("classifier")) {
+				dependency.classifier = value;
+			}
+			else if (name.equals("optional")) {
+				dependency.optional = Boolean.parseBoolean(value);
+			}
+		}
+	}
+	
+	private static Pattern placeholder = Pattern.compile("\\$\\{([^}]+)\\}");
+	
+	/**
+	 * Replaces the ${...} placeholders with the given properties, unknown placeholders are left as is
+	 */
+	public static String interpolate(String value, Map<String, String> properties) {
+		if (value == null || value.indexOf("${") < 0) {
+			return value;
+		}
+		// properties can refer to other properties, but we don't want to loop forever
+		for (int i = 0; i < 10 && value.indexOf("${") >= 0; i++) {
+			Matcher matcher = placeholder.matcher(value);
+			StringBuffer buffer = new StringBuffer();
+			boolean replaced = false;
+			while (matcher.find()) {
+				String replacement = properties.get(matcher.group(1));
+				if (replacement != null) {
+					replaced = true;
+				}
+				matcher.appendReplacement(buffer, Matcher.quoteReplacement(replacement == null ? matcher.group() : replacement));
+			}
+			matcher.appendTail(buffer);
+			value = buffer.toString();
+			if (!replaced) {
+				break;
+			}
+		}
+		return value;
+	}
+	
+	/**
+	 * The properties that can be used in the pom: the declared properties and the coordinates of the project
+	 */
+	public static Map<String, String> getProperties(Pom pom) {
+		Map<String, String> properties = new HashMap<String, String>(pom.getProperties());
+		if (pom.getGroupId() != null) {
+			properties.put("project.groupId", pom.getGroupId());
+			properties.put("pom.groupId", pom.getGroupId());
+		}
+		if (pom.getVersion() != null) {
+			properties.put("project.version", pom.getVersion());
+			properties.put("pom.version", pom.getVersion());
+		}
+		if (pom.getArtifactId() != null) {
+			properties.put("project.artifactId", pom.getArtifactId());
+		}
+		if (pom.getParentVersion() != null) {
+			properties.put("project.parent.version", pom.getParentVersion());
+		}
+		if (pom.getParentGroupId() != null) {
+			properties.put("project.parent.groupId", pom.getParentGroupId());
+		}
+		return properties;
+	}
+}
@@ -0,0 +1,207 @@
+/*
+* Copyright (C) 2016 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package be.nabu.libs.maven;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import be.nabu.libs.maven.api.Artifact;
+
+/**
+ * When a pom is served, the client will almost certainly ask for the poms of its dependencies next.
+ * The prefetcher parses the served pom in the background and warms the pom, checksum and metadata caches for the dependencies (and the parent) that are in the repository.
+ * Checksums are only loaded if they are stored, they are never calculated: that would read every archive the pom depends on.
+ * 
+ * The work is done on a bounded executor, if it is full the prefetch is simply skipped: it is only an optimization.
+ * A pom that was prefetched recently is not prefetched again, popular poms are served far more often than their dependencies change.
+ */
+public class PomPrefetcher {
+	
+	/**
+	 * Loads a pom into the cache of whoever serves it
+	 */
+	public interface PomLoader {
+		public CachedContent load(Artifact artifact) throws IOException;
+	}
+	
+	private ResourceRepository repository;
+	private PomLoader pomLoader;
+	private int threads, capacity;
+	private ThreadFactory threadFactory;
+	private volatile ThreadPoolExecutor executor;
+	
+	// how long (in ms) the dependencies of a pom are not prefetched again
+	private long interval = 1000l * 60;
+	// the amount of recently prefetched poms that are remembered, it is reset when it grows beyond this
+	private int maxRecent = 10000;
+	private Map<String, Long> recent = new ConcurrentHashMap<String, Long>();
+	
+	private LongAdder submitted = new LongAdder(), dropped = new LongAdder(), warmed = new LongAdder(), failed = new LongAdder();
+	
+	public PomPrefetcher(ResourceRepository repository, int threads, int capacity) {
+		this.repository = repository;
+		this.threads = threads;
+		this.capacity = capacity;
+	}
+	
+	public synchronized void start() {
+		if (executor == null) {
+			executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(capacity), 
+				threadFactory == null ? MavenServer.newThreadFactory("maven-prefetch", false) : threadFactory);
+			executor.allowCoreThreadTimeOut(true);
+		}
+	}
+	
+	public synchronized void stop() {
+		if (executor != null) {
+			executor.shutdownNow();
+			executor = null;
+		}
+	}
+	
+	/**
+	 * Schedules the warming of the dependencies of a pom that was just served
+	 */
+	public void prefetch(Artifact artifact, CachedContent pom) {
+		ThreadPoolExecutor executor = this.executor;
+		if (executor == null || pom == null) {
+			return;
+		}
+		String key = artifact.getGroupId() + ":" + artifact.getArtifactId() + ":" + artifact.getVersion();
+		long now = System.currentTimeMillis();
+		Long last = recent.get(key);
+		if (last != null && now - last < interval) {
+			return;
+		}
+		if (recent.size() >= maxRecent) {
+			recent.clear();
+		}
+		recent.put(key, now);
+		try {
+			executor.execute(() -> warm(pom.getContent()));
+			submitted.increment();
+		}
+		catch (RejectedExecutionException e) {
+			// try again the next time it is served
+			recent.remove(key, now);
+			dropped.increment();
+		}
+	}
+	
+	private void warm(byte [] content) {
+		List<BatchResolver.Coordinate> coordinates;
+		try {
+			PomParser.Pom pom = PomParser.parse(new ByteArrayInputStream(content));
+			DependencyResolver resolver = new DependencyResolver(repository, BatchResolver.getDefaultScopes());
+			coordinates = new ArrayList<BatchResolver.Coordinate>(resolver.getDependencies(pom));
+			if (pom.getParentGroupId() != null && pom.getParentArtifactId() != null && pom.getParentVersion() != null) {
+				coordinates.add(new BatchResolver.Coordinate(pom.getParentGroupId(), pom.getParentArtifactId(), pom.getParentVersion(), false));
+			}
+		}
+		catch (Exception e) {
+			failed.increment();
+			return;
+		}
+		// one dependency that can not be read should not stop the others
+		for (BatchResolver.Coordinate coordinate : coordinates) {
+			try {
+				// only what we have locally, an upstream fetch is not worth it for a guess
+				Artifact artifact = repository.getArtifact(coordinate.getGroupId(), coordinate.getArtifactId(), coordinate.getVersion(), coordinate.isTest());
+				if (artifact != null) {
+					warm(artifact);
+				}
+			}
+			catch (Exception e) {
+				failed.increment();
+			}
+		}
+	}
+	
+	private void warm(Artifact artifact) throws IOException {
+		repository.getCachedMetaData(artifact);
+		// calculating a checksum means reading the entire archive, so only checksums that are already stored are loaded
+		repository.getStoredChecksums(artifact, false);
+		repository.getStoredChecksums(artifact, true);
+		if (pomLoader != null) {
+			CachedContent pom = pomLoader.load(artifact);
+			// most clients accept gzip, the compressed variant is cached along with the pom
+			if (pom != null) {
+				pom.getContent(ContentEncoding.GZIP);
+			}
+		}
+		warmed.increment();
+	}
+	
+	public PomLoader getPomLoader() {
+		return pomLoader;
+	}
+
+	public void setPomLoader(PomLoader pomLoader) {
+		this.pomLoader = pomLoader;
+	}
+
+	public ThreadFactory getThreadFactory() {
+		return threadFactory;
+	}
+
+	public void setThreadFactory(ThreadFactory threadFactory) {
+		this.threadFactory = threadFactory;
+	}
+
+	public long getInterval() {
+		return interval;
+	}
+
+	public void setInterval(long interval) {
+		this.interval = interval;
+	}
+
+	public int getMaxRecent() {
+		return maxRecent;
+	}
+
+	public void setMaxRecent(int maxRecent) {
+		this.maxRecent = maxRecent;
+	}
+
+	public long getSubmitted() {
+		return submitted.sum();
+	}
+	
+	public long getDropped() {
+		return dropped.sum();
+	}
+	
+	public long getWarmed() {
+		return warmed.sum();
+	}
+	
+	public long getFailed() {
+		return failed.sum();
+	}
+}
@@ -0,0 +1,578 @@
+/*
+* Copyright (C) 2016 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package be.nabu.libs.maven;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import be.nabu.libs.events.api.EventHandler;
+import be.nabu.libs.maven.api.Artifact;
+
+/**
+ * Replicates the artifacts of a repository to peer servers.
+ * 
+ * Every create and delete is written to a persistent outbox per peer (in "{root}/.replication") before the upload is acknowledged, so nothing is lost when a peer is down or the server restarts.
+ * An outbox entry records the operation and the coordinate, when it is sent the current content is uploaded so replaying an entry is always safe.
+ * A delete is only sent if the artifact is still absent locally, a delete that is followed by a create (a replace) is skipped.
+ * Failed entries are retried with an exponential backoff, entries the peer rejects outright (400, 404, 409,...) are dropped.
+ * 
+ * Artifacts that are not announced with an event (for example files copied into the repository) are picked up by the catch up: the index of the peer (/-/index) is compared to the local one and every difference is added to the outbox.
+ * Deletes are never inferred from absence: an artifact the peer has and we do not is only deleted there if we recorded a tombstone for it when it was deleted here.
+ * This way an empty or partially scanned repository can never wipe its peers.
+ * 
+ * Replication is one way, peers should not replicate back to this server.
+ */
+public class Replicator {
+	
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	
+	private ResourceRepository repository;
+	private File directory;
+	private List<Peer> peers = new ArrayList<Peer>();
+	private ThreadFactory threadFactory;
+	private volatile boolean running;
+	// the coordinates that were deleted locally, persisted in "{directory}/tombstones"
+	private Set<String> tombstones;
+	
+	private int connectTimeout = 10000, readTimeout = 60000;
+	// the first retry is after this many ms, it doubles on every failure up to the maximum
+	private long initialBackoff = 1000, maxBackoff = 1000l * 60 * 5;
+	// how often (in ms) the index of the peers is compared to ours, 0 to only do it at startup
+	private long catchUpInterval = 1000l * 60 * 10;
+	
+	private AtomicLong replicated = new AtomicLong(), failed = new AtomicLong(), dropped = new AtomicLong();
+	
+	public Replicator(ResourceRepository repository, File directory) {
+		this.repository = repository;
+		this.directory = directory;
+		// the internal dispatcher is synchronous, the entry is written before the upload is acknowledged
+		repository.getInternalDispatcher().subscribe(CreateResourceRepositoryEvent.class, new EventHandler<CreateResourceRepositoryEvent, Void>() {
+			@Override
+			public Void handle(CreateResourceRepositoryEvent event) {
+				changed(event.getArtifact(), false);
+				return null;
+			}
+		});
+		repository.getInternalDispatcher().subscribe(DeleteResourceRepositoryEvent.class, new EventHandler<DeleteResourceRepositoryEvent, Void>() {
+			@Override
+			public Void handle(DeleteResourceRepositoryEvent event) {
+				changed(event.getArtifact(), true);
+				return null;
+			}
+		});
+	}
+	
+	/**
+	 * Creates a replicator with the outbox in the default location "{root}/.replication", returns null if the repository is not on the local filesystem
+	 */
+	public static Replicator newInstance(ResourceRepository repository) {
+		File file = ResourceRepository.getFile(repository.getRoot());
+		return file == null ? null : new Replicator(repository, new File(file, ".replication"));
+	}
+	
+	public synchronized void addPeer(URI uri) throws IOException {
+		String value = uri.toString();
+		Peer peer = new Peer(value.endsWith("/") ? uri : URI.create(value + "/"));
+		peers.add(peer);
+		if (running) {
+			peer.start();
+		}
+	}
+	
+	public synchronized void start() {
+		if (!running) {
+			running = true;
+			for (Peer peer : peers) {
+				peer.start();
+			}
+		}
+	}
+	
+	public synchronized void stop() {
+		running = false;
+		for (Peer peer : peers) {
+			peer.stop();
+		}
+	}
+	
+	private void changed(Artifact artifact, boolean deleted) {
+		String coordinate = getCoordinate(artifact.getGroupId(), artifact.getArtifactId(), artifact.getVersion(), artifact.isTest());
+		try {
+			setTombstone(coordinate, deleted);
+		}
+		catch (IOException e) {
+			failed.incrementAndGet();
+		}
+		for (Peer peer : getPeers()) {
+			try {
+				peer.add(deleted ? DELETE : PUT, coordinate);
+			}
+			catch (IOException e) {
+				// the next catch up will find it
+				failed.incrementAndGet();
+			}
+		}
+	}
+	
+	private synchronized Set<String> getTombstones() throws IOException {
+		if (tombstones == null) {
+			tombstones = new HashSet<String>();
+			File file = new File(directory, "tombstones");
+			if (file.exists()) {
+				for (String line : Files.readAllLines(file.toPath(), UTF8)) {
+					if (!line.trim().isEmpty()) {
+						tombstones.add(line.trim());
+					}
+				}
+			}
+		}
+		return tombstones;
+	}
+	
+	private synchronized boolean isTombstone(String coordinate) throws IOException {
+		return getTombstones().contains(coordinate);
+	}
+	
+	private synchronized void setTombstone(String coordinate, boolean deleted) throws IOException {
+		Set<String> tombstones = getTombstones();
+		if (deleted ? tombstones.add(coordinate) : tombstones.remove(coordinate)) {
+			if (!directory.exists() && !directory.mkdirs()) {
+				throw new IOException("Could not create the directory: " + directory);
+			}
+			StringBuilder builder = new StringBuilder();
+			for (String tombstone : tombstones) {
+				builder.append(tombstone).append("\n");
+			}
+			write(new File(directory, ".tombstones"), builder.toString().getBytes(UTF8), new File(directory, "tombstones"));
+		}
+	}
+	
+	/**
+	 * Writes the content to a temporary file, forces it to disk and then moves it in place so a crash leaves either nothing or the complete file
+	 */
+	private static void write(File temporary, byte [] content, File target) throws IOException {
+		FileChannel channel = FileChannel.open(temporary.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+		try {
+			ByteBuffer buffer = ByteBuffer.wrap(content);
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			channel.force(true);
+		}
+		finally {
+			channel.close();
+		}
+		Files.move(temporary.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		// the move itself is only durable once the directory is synced, not every platform allows this
+		try {
+			FileChannel parent = FileChannel.open(target.getParentFile().toPath(), StandardOpenOption.READ);
+			try {
+				parent.force(true);
+			}
+			finally {
+				parent.close();
+			}
+		}
+		catch (IOException e) {
+			// best effort
+		}
+	}
+	
+	/**
+	 * Compares the index of every peer to the local one and adds the differences to their outbox
+	 */
+	public void catchUp() {
+		for (Peer peer : getPeers()) {
+			try {
+				peer.catchUp();
+			}
+			catch (IOException e) {
+				failed.incrementAndGet();
+			}
+		}
+	}
+	
+	/**
+	 * The index of the repository as served on /-/index: one line per artifact with the coordinate, the packaging and the sha1 of the content
+	 */
+	public static void writeIndex(ResourceRepository repository, Appendable writer) throws IOException {
+		for (Artifact artifact : repository.getArtifacts()) {
+			Checksums checksums = repository.getChecksums(artifact);
+			writer.append(getCoordinate(artifact.getGroupId(), artifact.getArtifactId(), artifact.getVersion(), artifact.isTest()))
+				.append(" ").append(artifact.getPackaging())
+				.append(" ").append(checksums == null ? "-" : checksums.getSha1())
+				.append("\n");
+		}
+	}
+	
+	private static Map<String, String> readIndex(BufferedReader reader) throws IOException {
+		Map<String, String> index = new HashMap<String, String>();
+		String line;
+		while ((line = reader.readLine()) != null) {
+			String [] parts = line.trim().split(" ");
+			if (parts.length == 3) {
+				index.put(parts[0], parts[2]);
+			}
+		}
+		return index;
+	}
+	
+	private static final String PUT = "PUT", DELETE = "DELETE";
+	
+	private static String getCoordinate(String groupId, String artifactId, String version, boolean isTest) {
+		return groupId + ":" + artifactId + ":" + version + (isTest ? ":tests" : "");
+	}
+	
+	private synchronized List<Peer> getPeers() {
+		return new ArrayList<Peer>(peers);
+	}
+	
+	private class Peer implements Runnable {
+		
+		private URI uri;
+		private File outbox;
+		private long sequence;
+		private Thread thread;
+		private long lastCatchUp;
+		
+		Peer(URI uri) throws IOException {
+			this.uri = uri;
+			this.outbox = new File(directory, uri.toString().replaceAll("^[a-z]+://", "").replaceAll("[^\\w.-]+", "_"));
+			if (!outbox.exists() && !outbox.mkdirs()) {
+				throw new IOException("Could not create the outbox: " + outbox);
+			}
+			// continue numbering after the entries that are still pending
+			for (File file : getEntries()) {
+				sequence = Math.max(sequence, Long.parseLong(file.getName()));
+			}
+		}
+		
+		synchronized void start() {
+			if (thread == null) {
+				thread = (threadFactory == null ? MavenServer.newThreadFactory("maven-replication", false) : threadFactory).newThread(this);
+				thread.start();
+			}
+		}
+		
+		synchronized void stop() {
+			if (thread != null) {
+				thread.interrupt();
+				thread = null;
+			}
+		}
+		
+		synchronized void add(String operation, String coordinate) throws IOException {
+			// the entry is on disk before the upload is acknowledged and a crash never leaves a partial entry
+			write(new File(outbox, ".entry"), (operation + " " + coordinate).getBytes(UTF8), new File(outbox, String.format("%019d", ++sequence)));
+			notifyAll();
+		}
+		
+		// the operation and coordinate of every entry that is still pending
+		Set<String> getPending() throws IOException {
+			Set<String> pending = new HashSet<String>();
+			for (File entry : getEntries()) {
+				try {
+					String [] parts = new String(Files.readAllBytes(entry.toPath()), UTF8).trim().split(" ");
+					pending.add((parts.length > 1 ? parts[0] : PUT) + " " + parts[parts.length - 1]);
+				}
+				catch (NoSuchFileException e) {
+					// it was sent in the meantime
+				}
+			}
+			return pending;
+		}
+		
+		// the entries in the order they were added
+		File [] getEntries() {
+			File [] files = outbox.listFiles((dir, name) -> name.matches("[0-9]+"));
+			if (files == null) {
+				return new File[0];
+			}
+			Arrays.sort(files);
+			return files;
+		}
+		
+		@Override
+		public void run() {
+			long backoff = initialBackoff;
+			while (running && !Thread.currentThread().isInterrupted()) {
+				try {
+					if (lastCatchUp == 0 || (catchUpInterval > 0 && System.currentTimeMillis() - lastCatchUp > catchUpInterval)) {
+						catchUp();
+					}
+					File [] entries = getEntries();
+					if (entries.length > 0) {
+						// make sure the local state is complete before deciding what to send
+						repository.refresh();
+					}
+					else {
+						synchronized (this) {
+							if (getEntries().length == 0) {
+								wait(catchUpInterval > 0 ? catchUpInterval : 60000);
+							}
+						}
+						continue;
+					}
+					for (File entry : entries) {
+						String [] parts = new String(Files.readAllBytes(entry.toPath()), UTF8).trim().split(" ");
+						try {
+							// entries without an operation are uploads
+							if (send(parts.length > 1 ? parts[0] : PUT, parts[parts.length - 1])) {
+								replicated.incrementAndGet();
+							}
+						}
+						catch (RejectedException e) {
+							dropped.incrementAndGet();
+						}
+						Files.delete(entry.toPath());
+						backoff = initialBackoff;
+					}
+				}
+				catch (InterruptedException e) {
+					break;
+				}
+				// the peer is unavailable, the entry stays in the outbox
+				catch (Exception e) {
+					failed.incrementAndGet();
+					try {
+						Thread.sleep(backoff);
+					}
+					catch (InterruptedException e1) {
+						break;
+					}
+					backoff = Math.min(maxBackoff, backoff * 2);
+				}
+			}
+		}
+		
+		void catchUp() throws IOException {
+			// never compare against a repository that has not been (fully) scanned yet
+			repository.refresh();
+			Map<String, String> remote;
+			HttpURLConnection connection = open("-/index", "GET");
+			try {
+				if (connection.getResponseCode() != 200) {
+					throw new IOException("The peer returned " + connection.getResponseCode() + " for its index");
+				}
+				InputStream input = connection.getInputStream();
+				try {
+					remote = readIndex(new BufferedReader(new InputStreamReader(input, UTF8)));
+				}
+				finally {
+					input.close();
+				}
+			}
+			finally {
+				connection.disconnect();
+			}
+			// a slow peer may not have processed the entries of the previous catch up yet, they are not added again
+			Set<String> pending = getPending();
+			Set<String> local = new HashSet<String>();
+			for (Artifact artifact : repository.getArtifacts()) {
+				String coordinate = getCoordinate(artifact.getGroupId(), artifact.getArtifactId(), artifact.getVersion(), artifact.isTest());
+				local.add(coordinate);
+				if (pending.contains(PUT + " " + coordinate)) {
+					continue;
+				}
+				Checksums checksums = repository.getChecksums(artifact);
+				if (checksums == null || !checksums.getSha1().equals(remote.get(coordinate))) {
+					add(PUT, coordinate);
+				}
+			}
+			for (String coordinate : remote.keySet()) {
+				if (!local.contains(coordinate) && !pending.contains(DELETE + " " + coordinate) && isTombstone(coordinate)) {
+					add(DELETE, coordinate);
+				}
+			}
+			lastCatchUp = System.currentTimeMillis();
+		}
+		
+		// returns false if there was nothing to send
+		private boolean send(String operation, String coordinate) throws IOException {
+			String [] parts = coordinate.split(":");
+			boolean isTest = parts.length > 3;
+			Artifact artifact = repository.getArtifact(parts[0], parts[1], parts[2], isTest);
+			String path = parts[0].replace('.', '/') + "/" + parts[1] + "/" + parts[2] + "/" + parts[1] + "-" + parts[2] + (isTest ? "-tests" : "");
+			HttpURLConnection connection;
+			if (DELETE.equals(operation)) {
+				// it was created again since, the create has its own entry
+				if (artifact != null) {
+					return false;
+				}
+				// the packaging is not known anymore but the peer only needs the coordinate
+				connection = open(path + ".jar", "DELETE");
+			}
+			// it was deleted since, the delete has its own entry
+			else if (artifact == null) {
+				return false;
+			}
+			else {
+				connection = open(path + "." + artifact.getPackaging(), "PUT");
+				connection.setDoOutput(true);
+				long size = artifact instanceof ResourceArtifact ? ((ResourceArtifact) artifact).getSize() : -1;
+				if (size >= 0) {
+					connection.setFixedLengthStreamingMode(size);
+				}
+				else {
+					connection.setChunkedStreamingMode(8192);
+				}
+				InputStream input = artifact.getContent();
+				try {
+					OutputStream output = connection.getOutputStream();
+					try {
+						byte [] buffer = new byte[8192];
+						int read;
+						while ((read = input.read(buffer)) > 0) {
+							output.write(buffer, 0, read);
+						}
+					}
+					finally {
+						output.close();
+					}
+				}
+				finally {
+					input.close();
+				}
+			}
+			try {
+				int code = connection.getResponseCode();
+				// a delete of something the peer does not have is fine
+				if (code == 404 && artifact == null) {
+					return true;
+				}
+				// authentication and throttling problems are temporary
+				else if (code == 400 || code == 404 || code == 405 || code == 409 || code == 410 || code == 413 || code == 422) {
+					throw new RejectedException("The peer " + uri + " rejected " + coordinate + ": " + code);
+				}
+				else if (code >= 300) {
+					throw new IOException("The peer " + uri + " returned " + code + " for " + coordinate);
+				}
+				return true;
+			}
+			finally {
+				connection.disconnect();
+			}
+		}
+		
+		private HttpURLConnection open(String path, String method) throws IOException {
+			HttpURLConnection connection = (HttpURLConnection) uri.resolve(path).toURL().openConnection();
+			connection.setConnectTimeout(connectTimeout);
+			connection.setReadTimeout(readTimeout);
+			connection.setRequestMethod(method);
+			return connection;
+		}
+	}
+	
+	// the peer will never accept this entry, retrying is pointless
+	private static class RejectedException extends IOException {
+		private static final long serialVersionUID = 1L;
+		public RejectedException(String message) {
+			super(message);
+		}
+	}
+	
+	public long getReplicated() {
+		return replicated.get();
+	}
+	
+	public long getFailed() {
+		return failed.get();
+	}
+	
+	public long getDropped() {
+		return dropped.get();
+	}
+	
+	public long getPending() {
+		long pending = 0;
+		for (Peer peer : getPeers()) {
+			pending += peer.getEntries().length;
+		}
+		return pending;
+	}
+	
+	public ThreadFactory getThreadFactory() {
+		return threadFactory;
+	}
+
+	public void setThreadFactory(ThreadFactory threadFactory) {
+		this.threadFactory = threadFactory;
+	}
+
+	public int getConnectTimeout() {
+		return connectTimeout;
+	}
+
+	public void setConnectTimeout(int connectTimeout) {
+		this.connectTimeout = connectTimeout;
+	}
+
+	public int getReadTimeout() {
+		return readTimeout;
+	}
+
+	public void setReadTimeout(int readTimeout) {
+		this.readTimeout = readTimeout;
+	}
+
+	public long getInitialBackoff() {
+		return initialBackoff;
+	}
+
+	public void setInitialBackoff(long initialBackoff) {
+		this.initialBackoff = initialBackoff;
+	}
+
+	public long getMaxBackoff() {
+		return maxBackoff;
+	}
+
+	public void setMaxBackoff(long maxBackoff) {
+		this.maxBackoff = maxBackoff;
+	}
+
+	public long getCatchUpInterval() {
+		return catchUpInterval;
+	}
+
+	public void setCatchUpInterval(long catchUpInterval) {
+		this.catchUpInterval = catchUpInterval;
+	}
+}
@@ -17,13 +17,16 @@
 
 package be.nabu.libs.maven;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Date;
 
 import be.nabu.libs.maven.BaseArtifact;
 import be.nabu.libs.resources.ResourceUtils;
+import be.nabu.libs.resources.api.FiniteResource;
 import be.nabu.libs.resources.api.ReadableResource;
+import be.nabu.libs.resources.api.Resource;
 import be.nabu.libs.resources.api.TimestampedResource;
 import be.nabu.utils.io.IOUtils;
 
@@ -31,10 +34,137 @@ public class ResourceArtifact extends BaseArtifact {
 
 	private ReadableResource resource;
 	private Date lastModified = new Date();
+	private File file;
+	private boolean fileResolved;
+	
+	// the checksums are cached for as long as the resource does not change
+	private volatile Checksums checksums, pomChecksums;
+	private volatile long checksumsModified;
+	
+	// coordinates that are known up front, the properties are then only parsed from the archive when they are actually needed
+	private String groupId, artifactId, version, packaging;
+	private boolean isTest;
+	private volatile boolean parsed;
+	
+	// the modification date and size of the resource when the artifact was indexed, a scan compares them to find content that was replaced outside of the server
+	private volatile long indexedModified = -1, indexedSize = -1;
 	
 	public ResourceArtifact(ReadableResource resource) throws IOException {
 		this.resource = resource;
 		parseProperties();
+		this.parsed = true;
+	}
+	
+	public ResourceArtifact(ReadableResource resource, String groupId, String artifactId, String version, String packaging, boolean isTest) {
+		this.resource = resource;
+		this.groupId = groupId;
+		this.artifactId = artifactId;
+		this.version = version;
+		this.packaging = packaging;
+		this.isTest = isTest;
+	}
+	
+	/**
+	 * Derives the coordinates from the path in a maven layout (e.g. "be/nabu/test/1.0/test-1.0.jar") without opening the archive.
+	 * Returns null if the path does not follow the layout.
+	 */
+	public static ResourceArtifact fromPath(ReadableResource resource, String path) {
+		String [] parts = path.split("/");
+		// we need at least one group part
+		if (parts.length < 4) {
+			return null;
+		}
+		String fileName = parts[parts.length - 1];
+		String version = parts[parts.length - 2];
+		String artifactId = parts[parts.length - 3];
+		int extension = fileName.lastIndexOf('.');
+		if (extension < 0) {
+			return null;
+		}
+		String name = fileName.substring(0, extension);
+		boolean isTest;
+		if (name.equals(artifactId + "-" + version)) {
+			isTest = false;
+		}
+		else if (name.equals(artifactId + "-" + version + "-tests")) {
+			isTest = true;
+		}
+		else {
+			return null;
+		}
+		StringBuilder groupId = new StringBuilder();
+		for (int i = 0; i < parts.length - 3; i++) {
+			if (i > 0) {
+				groupId.append('.');
+			}
+			groupId.append(parts[i]);
+		}
+		return new ResourceArtifact(resource, groupId.toString(), artifactId, version, fileName.substring(extension + 1).toLowerCase(), isTest);
+	}
+	
+	private void parse() throws IOException {
+		if (!parsed) {
+			synchronized(this) {
+				if (!parsed) {
+					parseProperties();
+					parsed = true;
+				}
+			}
+		}
+	}
+	
+	@Override
+	public String getGroupId() {
+		return groupId == null ? super.getGroupId() : groupId;
+	}
+
+	@Override
+	public String getArtifactId() {
+		return artifactId == null ? super.getArtifactId() : artifactId;
+	}
+
+	@Override
+	public String getVersion() {
+		return version == null ? super.getVersion() : version;
+	}
+
+	@Override
+	public String getPackaging() {
+		return packaging == null ? super.getPackaging() : packaging;
+	}
+
+	@Override
+	public boolean isTest() {
+		return groupId == null ? super.isTest() : isTest;
+	}
+
+	/**
+	 * A pom next to the archive (like in a regular maven repository) takes precedence over the one inside it, not every archive contains one
+	 */
+	@Override
+	public InputStream getPom() throws IOException {
+		ReadableResource pom = getPomResource();
+		if (pom != null) {
+			return IOUtils.toInputStream(pom.getReadable());
+		}
+		parse();
+		return super.getPom();
+	}
+	
+	/**
+	 * The pom that is stored next to the archive or null if there is none
+	 */
+	public ReadableResource getPomResource() {
+		String name = resource.getName();
+		if (name.endsWith(".pom") || resource.getParent() == null) {
+			return null;
+		}
+		Resource pom = resource.getParent().getChild(getPomName(name));
+		return pom instanceof ReadableResource ? (ReadableResource) pom : null;
+	}
+	
+	static String getPomName(String name) {
+		return name.replaceAll("\\.[^.]+$", ".pom");
 	}
 	
 	@Override
@@ -52,6 +182,76 @@ public class ResourceArtifact extends BaseArtifact {
 		return IOUtils.toInputStream(resource.getReadable());
 	}
 
+	public ReadableResource getResource() {
+		return resource;
+	}
+	
+	/**
+	 * The size of the artifact in bytes or -1 if it is not known
+	 */
+	public long getSize() {
+		return getSize(resource, getFile());
+	}
+	
+	private static long getSize(ReadableResource resource, File file) {
+		if (file != null) {
+			return file.length();
+		}
+		else if (resource instanceof FiniteResource) {
+			return ((FiniteResource) resource).getSize();
+		}
+		return -1;
+	}
+	
+	private static long getModified(ReadableResource resource) {
+		return resource instanceof TimestampedResource ? ((TimestampedResource) resource).getLastModified().getTime() : -1;
+	}
+	
+	void setIndexed() {
+		indexedModified = getModified(resource);
+		indexedSize = getSize();
+	}
+	
+	/**
+	 * Whether the given resource (at the path of this artifact) differs in modification date or size from what was indexed
+	 */
+	boolean isChanged(ReadableResource current) {
+		return getModified(current) != indexedModified || getSize(current, ResourceRepository.getFile(current)) != indexedSize;
+	}
+	
+	/**
+	 * The file backing this artifact or null if it does not live on the local file system
+	 */
+	public File getFile() {
+		if (!fileResolved) {
+			file = ResourceRepository.getFile(resource);
+			fileResolved = true;
+		}
+		return file;
+	}
+
+	Checksums getChecksums(boolean pom) {
+		if (getLastModified().getTime() != checksumsModified) {
+			return null;
+		}
+		return pom ? pomChecksums : checksums;
+	}
+	
+	void setChecksums(Checksums checksums, boolean pom) {
+		long modified = getLastModified().getTime();
+		if (modified != checksumsModified) {
+			this.checksums = null;
+			this.pomChecksums = null;
+			checksumsModified = modified;
+		}
+		if (pom) {
+			this.pomChecksums = checksums;
+		}
+		else {
+			this.checksums = checksums;
+		}
+	}
+
 	@Override
 	protected String getArtifactName() {
 		return resource.getName();
@@ -17,15 +17,33 @@
 
 package be.nabu.libs.maven;
 
+import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.ArrayList;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 import be.nabu.libs.events.EventDispatcherFactory;
 import be.nabu.libs.events.api.EventDispatcher;
+import be.nabu.libs.events.impl.EventDispatcherImpl;
 import be.nabu.libs.maven.api.Artifact;
 import be.nabu.libs.maven.api.WritableRepository;
 import be.nabu.libs.resources.ResourceUtils;
@@ -44,7 +62,65 @@ public class ResourceRepository extends BaseRepository implements WritableReposi
 	
 	private EventDispatcher dispatcher;
 	
-	private Map<Resource, ResourceArtifact> artifacts = new HashMap<Resource, ResourceArtifact>();
+	// the artifacts are keyed on their path relative to the root
+	private Map<String, ResourceArtifact> artifacts = new ConcurrentHashMap<String, ResourceArtifact>();
+	
+	// the same artifacts indexed on their coordinates
+	private ArtifactIndex<ResourceArtifact> index = new ArtifactIndex<ResourceArtifact>();
+	// the path of the indexed artifact per coordinate (with a ":tests" suffix for test artifacts)
+	private Map<String, String> paths = new ConcurrentHashMap<String, String>();
+	
+	private ChecksumStore checksumStore = new ChecksumStore();
+	
+	private MetaDataCache metaDataCache = new MetaDataCache();
+	// if set, the classes in the archives are indexed
+	private ClassIndex classIndex;
+	
+	// the paths of containers that have changed since the last scan, mapped to whether they should be scanned recursively
+	private Map<String, Boolean> dirtyPaths = new ConcurrentHashMap<String, Boolean>();
+	
+	// if the repository is dirty, a full scan is performed on the next refresh
+	private volatile boolean dirty = true;
+	private volatile long lastScan;
+	// whether the index has been populated by a full scan or a snapshot
+	private volatile boolean populated;
+	
+	// how often (in ms) a full reconciliation scan is done, regardless of change notifications, set to 0 to disable
+	private long reconcileInterval = 1000l * 60;
+	
+	private ResourceRepositoryWatcher watcher;
+	
+	// only one scan runs at a time, readers never wait for it
+	private ReentrantLock scanLock = new ReentrantLock();
+	
+	// creates only lock the coordinate they are writing
+	private CoordinateLocks locks = new CoordinateLocks();
+	
+	// whether a snapshot of the index is persisted so a restart does not need a full scan
+	private boolean persistIndex = true;
+	private volatile boolean snapshotLoaded, indexChanged;
+	private volatile long lastSnapshot;
+	private AtomicBoolean savingSnapshot = new AtomicBoolean();
+	private ExecutorService snapshotExecutor;
+	// the minimum time (in ms) between two snapshots
+	private long snapshotInterval = 1000l * 30;
+	
+	// whether artifacts found by a scan derive their coordinates from the path instead of reading them from the archive
+	private boolean lazy = true;
+	
+	// incremented whenever the index changes, allows derived content (like listings) to be validated cheaply
+	private AtomicLong modifications = new AtomicLong();
+	
+	private MavenMetrics metrics;
+	
+	// caches that must be up to date when create() returns subscribe to this dispatcher, it is always synchronous
+	private EventDispatcher internalDispatcher = new EventDispatcherImpl();
+	// if set, events are delivered to the dispatcher asynchronously
+	private AsyncEventQueue eventQueue;
+	// if set, the content of uploads is deduplicated
+	private BlobStore blobStore;
+	// if set, popular artifacts that are not on the local file system are kept in memory
+	private HotArtifactCache hotArtifactCache;
 		
 	public ResourceRepository(ResourceContainer<?> root) {
 		this(root, null);
@@ -52,53 +128,495 @@ public class ResourceRepository extends BaseRepository implements WritableReposi
 	public ResourceRepository(ResourceContainer<?> root, EventDispatcher dispatcher) {
 		this.root = root;
 		this.dispatcher = dispatcher;
+		setMetrics(new MavenMetrics());
+		// the cached metadata is invalidated by the events fired on create
+		metaDataCache.subscribe(internalDispatcher);
+	}
+	
+	/**
+	 * Brings the index up to date without walking the whole tree unless necessary.
+	 * A full scan is only done when the repository is dirty or the reconcile interval has expired, otherwise only the containers that were reported as changed are rescanned.
+	 * When nothing has changed, this does not touch the backend at all.
+	 */
+	public void refresh() throws IOException {
+		if (persistIndex && !snapshotLoaded) {
+			load();
+		}
+		if (isFullScanDue() || !dirtyPaths.isEmpty()) {
+			// if another thread is already scanning, we use the index as it is instead of waiting
+			// unless it is still empty, a request during the first scan would not find anything
+			boolean locked;
+			if (!populated) {
+				scanLock.lock();
+				locked = true;
+			}
+			else {
+				locked = scanLock.tryLock();
+			}
+			if (locked) {
+				try {
+					// we may have waited for a scan that did the work
+					if (isFullScanDue()) {
+						scanAll();
+					}
+					else if (!dirtyPaths.isEmpty()) {
+						scanDirtyPaths();
+					}
+				}
+				finally {
+					scanLock.unlock();
+				}
+			}
+		}
+		// the snapshot is written in the background, the thread that refreshes is usually serving a request
+		if (isSnapshotDue() && savingSnapshot.compareAndSet(false, true)) {
+			getSnapshotExecutor().execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						saveSnapshot();
+					}
+					catch (IOException e) {
+						// try again on the next refresh
+						indexChanged = true;
+					}
+					finally {
+						savingSnapshot.set(false);
+					}
+				}
+			});
+		}
+	}
+	
+	// saves the snapshots and does the scan after a snapshot was loaded
+	private synchronized ExecutorService getSnapshotExecutor() {
+		if (snapshotExecutor == null) {
+			ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), MavenServer.newThreadFactory("maven-snapshot", false));
+			executor.allowCoreThreadTimeOut(true);
+			snapshotExecutor = executor;
+		}
+		return snapshotExecutor;
+	}
+	
+	private boolean isFullScanDue() {
+		return dirty || (reconcileInterval > 0 && System.currentTimeMillis() - lastScan > reconcileInterval);
+	}
+	
+	private boolean isSnapshotDue() {
+		return persistIndex && indexChanged && System.currentTimeMillis() - lastSnapshot > snapshotInterval;
+	}
+	
+	/**
+	 * Loads the persisted snapshot of the index. Entries are only accepted if the resource still has the same size and modification date, the archives themselves are not opened.
+	 * Returns true if a snapshot was loaded, in which case no full scan is needed before requests can be served: it is done in the background instead.
+	 */
+	public boolean load() throws IOException {
+		scanLock.lock();
+		try {
+			if (snapshotLoaded) {
+				return false;
+			}
+			snapshotLoaded = true;
+			if (classIndex != null) {
+				classIndex.read(root);
+			}
+			List<IndexSnapshot.Entry> entries = IndexSnapshot.read(root);
+			if (entries == null) {
+				return false;
+			}
+			// most entries share a container with the previous one
+			Map<String, ResourceContainer<?>> containers = new HashMap<String, ResourceContainer<?>>();
+			for (IndexSnapshot.Entry entry : entries) {
+				int separator = entry.getPath().lastIndexOf('/');
+				String parentPath = separator < 0 ? "" : entry.getPath().substring(0, separator);
+				if (!containers.containsKey(parentPath)) {
+					containers.put(parentPath, parentPath.isEmpty() ? root : resolveContainer(parentPath));
+				}
+				ResourceContainer<?> container = containers.get(parentPath);
+				Resource resource = container == null ? null : container.getChild(entry.getPath().substring(separator + 1));
+				if (!(resource instanceof ReadableResource)) {
+					continue;
+				}
+				ResourceArtifact artifact = new ResourceArtifact((ReadableResource) resource, entry.getGroupId(), entry.getArtifactId(), entry.getVersion(), entry.getPackaging(), entry.isTest());
+				// it was changed since the snapshot was taken, rescan that container
+				if (!IndexSnapshot.isValid(entry, artifact)) {
+					markDirty(parentPath, false);
+					continue;
+				}
+				if (entry.getChecksums() != null) {
+					artifact.setChecksums(entry.getChecksums(), false);
+				}
+				index(entry.getPath(), artifact);
+			}
+			// requests are served from the snapshot right away
+			dirty = false;
+			populated = true;
+			lastScan = System.currentTimeMillis();
+			indexChanged = false;
+			lastSnapshot = lastScan;
+			// the watcher can not see what changed while the server was down, so we reconcile in the background (once we release the lock)
+			getSnapshotExecutor().execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						scan();
+					}
+					catch (IOException e) {
+						// the next refresh tries again
+						markDirty();
+					}
+				}
+			});
+			return true;
+		}
+		finally {
+			scanLock.unlock();
+		}
+	}
+	
+	/**
+	 * Persists a snapshot of the current index, this is done in the background by refresh when it is due
+	 */
+	public void saveSnapshot() throws IOException {
+		indexChanged = false;
+		lastSnapshot = System.currentTimeMillis();
+		IndexSnapshot.write(root, artifacts);
+		if (classIndex != null) {
+			classIndex.write(root);
+		}
+	}
+	
+	/**
+	 * Forces a full scan on the next refresh
+	 */
+	public void markDirty() {
+		dirty = true;
+	}
+	
+	/**
+	 * Marks a single container (relative to the root) as changed, it will be rescanned on the next refresh
+	 */
+	public void markDirty(String path, boolean recursive) {
+		if (path == null || path.isEmpty()) {
+			// the root itself only needs a recursive scan if explicitly requested
+			if (recursive) {
+				markDirty();
+				return;
+			}
+			path = "";
+		}
+		Boolean current = dirtyPaths.put(path, recursive);
+		if (current != null && current && !recursive) {
+			dirtyPaths.put(path, true);
+		}
+	}
+	
+	/**
+	 * Starts watching the root for changes, this is only possible if the root is on the local file system.
+	 * Returns false if the root can not be watched, in which case only the periodic reconciliation will pick up external changes.
+	 */
+	public synchronized boolean watch() throws IOException {
+		if (watcher == null) {
+			watcher = ResourceRepositoryWatcher.watch(this);
+		}
+		return watcher != null;
+	}
+	
+	public synchronized void unwatch() throws IOException {
+		if (watcher != null) {
+			watcher.close();
+			watcher = null;
+		}
 	}
 	
 	@Override
-	public synchronized void scan() throws IOException {
-		scan(root, true);
+	public void scan() throws IOException {
+		scanLock.lock();
+		try {
+			scanAll();
+		}
+		finally {
+			scanLock.unlock();
+		}
+	}
+	
+	public void scan(boolean recursive) throws IOException {
+		scanLock.lock();
+		try {
+			long started = System.nanoTime();
+			Set<String> found = new HashSet<String>();
+			scan(root, null, recursive, found);
+			metrics.scanned(System.nanoTime() - started, found.size());
+		}
+		finally {
+			scanLock.unlock();
+		}
+	}
+	
+	private void scanAll() throws IOException {
+		// reset the flags before the scan so any change that comes in during the scan triggers a new one
+		dirty = false;
+		dirtyPaths.clear();
+		long started = System.nanoTime();
+		Set<String> found = new HashSet<String>();
+		try {
+			scan(root, null, true, found);
+		}
+		catch (IOException | RuntimeException e) {
+			// an incomplete scan can not be used to remove anything, try again on the next refresh
+			dirty = true;
+			throw e;
+		}
+		// remove anything that no longer exists
+		boolean removed = false;
+		for (String path : artifacts.keySet()) {
+			if (!found.contains(path)) {
+				removed |= unindexIfMissing(path);
+			}
+		}
+		// artifacts that were removed outside of the server may have left unused blobs
+		if (removed && blobStore != null) {
+			blobStore.collect();
+		}
+		lastScan = System.currentTimeMillis();
+		populated = true;
+		metrics.scanned(System.nanoTime() - started, found.size());
 	}
 	
-	public synchronized void scan(boolean recursive) throws IOException {
-		scan(root, recursive);
+	private void scanDirtyPaths() throws IOException {
+		long started = System.nanoTime();
+		long visited = 0;
+		Iterator<String> iterator = dirtyPaths.keySet().iterator();
+		while (iterator.hasNext()) {
+			String path = iterator.next();
+			Boolean recursive = dirtyPaths.remove(path);
+			if (recursive == null) {
+				continue;
+			}
+			ResourceContainer<?> container = path.isEmpty() ? root : resolveContainer(path);
+			Set<String> found = new HashSet<String>();
+			if (container != null) {
+				scan(container, path.isEmpty() ? null : path, recursive, found);
+			}
+			visited += found.size();
+			// remove the artifacts in that container that no longer exist
+			String prefix = path.isEmpty() ? "" : path + "/";
+			for (String key : artifacts.keySet()) {
+				if (key.startsWith(prefix) && !found.contains(key) && (recursive || key.indexOf('/', prefix.length()) < 0)) {
+					unindexIfMissing(key);
+				}
+			}
+		}
+		metrics.scanned(System.nanoTime() - started, visited);
 	}
 	
-	private synchronized void scan(ResourceContainer<?> container, boolean recursive) throws IOException {
+	// an artifact that was created while the scan was running may not have been seen, so check that it is really gone
+	private boolean unindexIfMissing(String path) {
+		int separator = path.lastIndexOf('/');
+		ResourceContainer<?> container = separator < 0 ? root : resolveContainer(path.substring(0, separator));
+		if (container == null || container.getChild(path.substring(separator + 1)) == null) {
+			unindex(path);
+			return true;
+		}
+		return false;
+	}
+	
+	private ResourceContainer<?> resolveContainer(String path) {
+		ResourceContainer<?> container = root;
+		for (String part : path.split("/")) {
+			Resource child = container.getChild(part);
+			if (!(child instanceof ResourceContainer)) {
+				return null;
+			}
+			container = (ResourceContainer<?>) child;
+		}
+		return container;
+	}
+	
+	private void scan(ResourceContainer<?> container, String path, boolean recursive, Set<String> found) throws IOException {
 		for (Resource child : container) {
+			String childPath = path == null ? child.getName() : path + "/" + child.getName();
 			if (child.getName().endsWith(".jar") || child.getName().endsWith(".war") || child.getName().endsWith(".pom")) {
-				if (!artifacts.containsKey(child)) {
-					ResourceArtifact artifact = new ResourceArtifact((ReadableResource) child);
+				ResourceArtifact known = artifacts.get(childPath);
+				if (known != null && !known.isChanged((ReadableResource) child)) {
+					found.add(childPath);
+				}
+				// it is new or it was replaced outside of the server, either way it is parsed again
+				else {
+					// in lazy mode the coordinates are derived from the path, the archive is only opened when its content is needed
+					ResourceArtifact artifact = lazy ? ResourceArtifact.fromPath((ReadableResource) child, childPath) : null;
 					// if the extension is pom but the packaging is not, it is not actually an interesting pom
 					if (child.getName().endsWith(".pom")) {
-						// if the packaging declared in the pom file is not "pom", it is simply a descriptive pom, ignore it
-						if (!artifact.getPackaging().equals("pom")) {
-							continue;
-						}
-						// otherwise, let's check for an actual artifact by the same name
+						// let's check for an actual artifact by the same name
 						if (container.getChild(child.getName().replaceAll("\\.pom$", ".jar")) != null
 								|| container.getChild(child.getName().replaceAll("\\.pom$", ".war")) != null) {
+							if (known != null) {
+								unindex(childPath);
+							}
 							continue;
 						}
+						// if the packaging declared in the pom file is not "pom", it is simply a descriptive pom, ignore it
+						String packaging;
+						if (artifact == null) {
+							artifact = new ResourceArtifact((ReadableResource) child);
+							packaging = artifact.getPackaging();
+						}
+						else {
+							InputStream input = artifact.getContent();
+							try {
+								packaging = PomParser.getPackaging(input);
+							}
+							finally {
+								input.close();
+							}
+						}
+						if (!"pom".equals(packaging)) {
+							if (known != null) {
+								unindex(childPath);
+							}
+							continue;
+						}
+					}
+					else if (artifact == null) {
+						artifact = new ResourceArtifact((ReadableResource) child);
+					}
+					index(childPath, artifact);
+					found.add(childPath);
+					// no events are fired for artifacts that are picked up by a scan
+					metaDataCache.invalidate(artifact);
+					if (known != null) {
+						metaDataCache.invalidate(known);
 					}
-					artifacts.put(child, artifact);
 				}
 			}
-			else if (recursive && child instanceof ResourceContainer) {
-				scan((ResourceContainer<?>) child, recursive);
+			// hidden containers are used for bookkeeping, for example to spool uploads
+			else if (recursive && child instanceof ResourceContainer && !child.getName().startsWith(".")) {
+				scan((ResourceContainer<?>) child, childPath, recursive, found);
 			}
 		}
 	}
 
+	private void index(String path, ResourceArtifact artifact) {
+		indexChanged = true;
+		modifications.incrementAndGet();
+		artifact.setIndexed();
+		ResourceArtifact previous = artifacts.put(path, artifact);
+		if (previous != null) {
+			index.remove(previous);
+			removePath(previous, path);
+		}
+		index.put(artifact);
+		if (artifact.getGroupId() != null && artifact.getArtifactId() != null && artifact.getVersion() != null) {
+			paths.put(getPathKey(artifact), path);
+		}
+		if (classIndex != null) {
+			classIndex.add(path, artifact);
+		}
+	}
+	
+	// only used by scans so the metadata cache has to be invalidated explicitly
+	private void unindex(String path) {
+		ResourceArtifact artifact = artifacts.remove(path);
+		if (artifact != null) {
+			indexChanged = true;
+			modifications.incrementAndGet();
+			index.remove(artifact);
+			removePath(artifact, path);
+			if (classIndex != null) {
+				classIndex.remove(path);
+			}
+			metaDataCache.invalidate(artifact);
+		}
+	}
+
+	private void removePath(ResourceArtifact artifact, String path) {
+		if (artifact.getGroupId() != null && artifact.getArtifactId() != null && artifact.getVersion() != null) {
+			// another path may have been indexed for the same coordinate since
+			paths.remove(getPathKey(artifact), path);
+		}
+	}
+	
+	private static String getPathKey(Artifact artifact) {
+		return CoordinateLocks.getCoordinate(artifact.getGroupId(), artifact.getArtifactId(), artifact.getVersion()) + (artifact.isTest() ? ":tests" : "");
+	}
+	
 	@Override
 	protected List<? extends Artifact> getArtifacts() {
-		return new ArrayList<ResourceArtifact>(artifacts.values());
+		return index.getAll();
+	}
+	
+	@Override
+	public Artifact getArtifact(String groupId, String artifactId, String version, boolean isTest) throws IOException {
+		return index.get(groupId, artifactId, version, isTest);
+	}
+	
+	@Override
+	public SortedSet<String> getGroups() throws IOException {
+		return index.getGroups();
+	}
+	
+	@Override
+	public SortedSet<String> getArtifacts(String groupId) throws IOException {
+		return index.getArtifacts(groupId);
+	}
+	
+	@Override
+	public SortedSet<String> getVersions(String groupId, String artifactId) throws IOException {
+		return index.getVersions(groupId, artifactId);
 	}
 
 	@Override
 	public Artifact create(String groupId, String artifactId, String version, String packaging, InputStream input, boolean isTest) throws IOException {
+		// spool it first so the artifact is only replaced once it is complete
+		SpooledUpload upload = spool(input);
+		try {
+			return create(groupId, artifactId, version, packaging, upload, isTest);
+		}
+		finally {
+			upload.close();
+		}
+	}
+	
+	/**
+	 * Spools the input to a temporary file, if possible on the same file system as the repository so it can be moved into place
+	 */
+	public SpooledUpload spool(InputStream input) throws IOException {
+		File file = getFile(root);
+		return SpooledUpload.spool(input, file == null ? null : new File(file, ".uploads"));
+	}
+	
+	/**
+	 * Creates the artifact from a spooled upload, only the coordinate of the artifact is locked while it is moved into place
+	 */
+	public Artifact create(String groupId, String artifactId, String version, String packaging, SpooledUpload upload, boolean isTest) throws IOException {
+		return create(groupId, artifactId, version, packaging, upload, isTest, null);
+	}
+	
+	/**
+	 * Creates the artifact with the given pom stored next to it, the pom is served instead of the one inside the archive.
+	 * Without a pom, a pom that was stored next to a previous version of the artifact is removed.
+	 */
+	public Artifact create(String groupId, String artifactId, String version, String packaging, SpooledUpload upload, boolean isTest, byte [] pom) throws IOException {
+		String coordinate = CoordinateLocks.getCoordinate(groupId, artifactId, version);
+		locks.lock(coordinate);
+		try {
+			return createLocked(groupId, artifactId, version, packaging, upload, isTest, pom);
+		}
+		finally {
+			locks.unlock(coordinate);
+		}
+	}
+	
+	private Artifact createLocked(String groupId, String artifactId, String version, String packaging, SpooledUpload upload, boolean isTest, byte [] pom) throws IOException {
 		Artifact current = getArtifact(groupId, artifactId, version, isTest);
+		// uploading the exact same content again changes nothing, it is not even announced so it is not replicated again
+		if (pom == null && isUnchanged(current, packaging, upload)) {
+			return current;
+		}
+		// the blob of the content that is replaced may no longer be used afterwards
+		Checksums replaced = current != null && blobStore != null ? getChecksums(current) : null;
 		if (current != null) {
-			getDispatcher().fire(new DeleteResourceRepositoryEvent(current, isInternal(groupId)), this);	
+			fire(CoordinateLocks.getCoordinate(groupId, artifactId, version), new DeleteResourceRepositoryEvent(current, isInternal(groupId)));
 		}
 		String fileName = formatFileName(groupId, artifactId, version, packaging);
 		
@@ -115,27 +633,219 @@ public class ResourceRepository extends BaseRepository implements WritableReposi
 		fileName = fileName.indexOf('/') >= 0 ? fileName.replaceAll(".*/([^/]+)$", "$1") : fileName;
 		
 		ResourceContainer<?> target = path == null ? root : ResourceUtils.mkdirs(root, path);
-		Resource resource = target.getChild(fileName);
-		if (resource == null) {
-			resource = ((ManageableContainer<?>) target).create(fileName, "application/zip");
+		
+		// on the file system we can simply move (or link) the spooled file into place, otherwise we copy it
+		File directory = getFile(target);
+		// the pom is written first so it is never older than the artifact it belongs to
+		if (!fileName.endsWith(".pom")) {
+			writePom(target, directory, ResourceArtifact.getPomName(fileName), pom);
 		}
-
-		WritableContainer<ByteBuffer> output = ((WritableResource) resource).getWritable();
-		try {
-			IOUtils.copyBytes(IOUtils.wrap(input), output);
+		Resource resource;
+		if (directory != null && (blobStore != null ? blobStore.store(upload, new File(directory, fileName)) : upload.moveTo(new File(directory, fileName)))) {
+			resource = target.getChild(fileName);
+			if (resource == null) {
+				throw new IOException("Could not find the moved artifact: " + fileName);
+			}
 		}
-		finally {
-			output.close();
+		// the existing file may be a hard link to a shared blob, so we never write into it: we copy next to it and move the copy in place
+		else if (directory != null) {
+			File temporary = new File(directory, "." + fileName + "." + UUID.randomUUID().toString() + ".upload");
+			InputStream input = upload.getInputStream();
+			try {
+				Files.copy(input, temporary.toPath());
+			}
+			finally {
+				input.close();
+			}
+			try {
+				Files.move(temporary.toPath(), new File(directory, fileName).toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			}
+			finally {
+				Files.deleteIfExists(temporary.toPath());
+			}
+			resource = target.getChild(fileName);
+			if (resource == null) {
+				throw new IOException("Could not find the copied artifact: " + fileName);
+			}
+		}
+		else {
+			resource = target.getChild(fileName);
+			if (resource == null) {
+				resource = ((ManageableContainer<?>) target).create(fileName, "application/zip");
+			}
+			InputStream input = upload.getInputStream();
+			try {
+				WritableContainer<ByteBuffer> output = ((WritableResource) resource).getWritable();
+				try {
+					IOUtils.copyBytes(IOUtils.wrap(input), output);
+				}
+				finally {
+					output.close();
+				}
+			}
+			finally {
+				input.close();
+			}
+		}
+		// we already know the coordinates, no need to parse them again
+		ResourceArtifact artifact = new ResourceArtifact((ReadableResource) resource, groupId, artifactId, version, packaging, isTest);
+		// the checksums were calculated while spooling
+		checksumStore.put(artifact, upload.getChecksums());
+		if (replaced != null && !replaced.getSha256().equals(upload.getChecksums().getSha256())) {
+			blobStore.release(replaced.getSha256());
 		}
-		ResourceArtifact artifact = new ResourceArtifact((ReadableResource) resource);
 		
-		// add it to the artifacts
-		artifacts.put(resource, artifact);
+		// add it to the artifacts, the class index reads it in the background
+		index(path == null ? fileName : path + "/" + fileName, artifact);
 		
-		getDispatcher().fire(new CreateResourceRepositoryEvent(artifact, isInternal(groupId)), this);
+		fire(CoordinateLocks.getCoordinate(groupId, artifactId, version), new CreateResourceRepositoryEvent(artifact, isInternal(groupId)));
 		return artifact;
 	}
+	
+	private boolean isUnchanged(Artifact current, String packaging, SpooledUpload upload) throws IOException {
+		// the size is checked first so the checksums of the current content are only calculated if they can match
+		if (!(current instanceof ResourceArtifact) || ((ResourceArtifact) current).getSize() != upload.getSize() || !packaging.equals(current.getPackaging())) {
+			return false;
+		}
+		Checksums checksums = getChecksums(current);
+		return checksums != null && checksums.getSha256() != null && checksums.getSha256().equals(upload.getChecksums().getSha256());
+	}
+	
+	private void writePom(ResourceContainer<?> target, File directory, String name, byte [] pom) throws IOException {
+		if (pom == null) {
+			if (target.getChild(name) != null && target instanceof ManageableContainer) {
+				((ManageableContainer<?>) target).delete(name);
+			}
+		}
+		else if (directory != null) {
+			File temporary = new File(directory, "." + name + "." + UUID.randomUUID().toString() + ".upload");
+			try {
+				Files.write(temporary.toPath(), pom);
+				Files.move(temporary.toPath(), new File(directory, name).toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			}
+			finally {
+				Files.deleteIfExists(temporary.toPath());
+			}
+		}
+		else {
+			Resource resource = target.getChild(name);
+			if (resource == null) {
+				resource = ((ManageableContainer<?>) target).create(name, "application/xml");
+			}
+			WritableContainer<ByteBuffer> output = ((WritableResource) resource).getWritable();
+			try {
+				IOUtils.copyBytes(IOUtils.wrap(pom, true), output);
+			}
+			finally {
+				output.close();
+			}
+		}
+	}
+	
+	/**
+	 * Removes the artifact from the repository, returns false if it does not exist
+	 */
+	public boolean delete(String groupId, String artifactId, String version, boolean isTest) throws IOException {
+		String coordinate = CoordinateLocks.getCoordinate(groupId, artifactId, version);
+		locks.lock(coordinate);
+		try {
+			Artifact artifact = getArtifact(groupId, artifactId, version, isTest);
+			if (artifact == null) {
+				return false;
+			}
+			String path = paths.get(getPathKey(artifact));
+			ReadableResource resource = ((ResourceArtifact) artifact).getResource();
+			if (!(resource.getParent() instanceof ManageableContainer)) {
+				throw new IOException("Can not delete: " + artifact);
+			}
+			Checksums checksums = blobStore != null ? getChecksums(artifact) : null;
+			((ManageableContainer<?>) resource.getParent()).delete(resource.getName());
+			if (((ResourceArtifact) artifact).getPomResource() != null) {
+				((ManageableContainer<?>) resource.getParent()).delete(ResourceArtifact.getPomName(resource.getName()));
+			}
+			if (checksums != null) {
+				blobStore.release(checksums.getSha256());
+			}
+			if (path != null) {
+				unindex(path);
+			}
+			fire(coordinate, new DeleteResourceRepositoryEvent(artifact, isInternal(groupId)));
+			return true;
+		}
+		finally {
+			locks.unlock(coordinate);
+		}
+	}
+
+	/**
+	 * The internal caches are always updated synchronously, other listeners are notified through the event queue if there is one.
+	 * The coordinate is used to guarantee the order of the events per coordinate.
+	 */
+	private void fire(String coordinate, Object event) {
+		internalDispatcher.fire(event, this);
+		// if the queue was stopped in the meantime, the event is delivered synchronously
+		if ((eventQueue == null || !eventQueue.offer(coordinate, event)) && getDispatcher() != null) {
+			getDispatcher().fire(event, this);
+		}
+	}
+	
+	/**
+	 * Returns the file for a resource or null if it is not on the local file system
+	 */
+	public static File getFile(Resource resource) {
+		URI uri = ResourceUtils.getURI(resource);
+		return uri != null && "file".equals(uri.getScheme()) ? new File(uri) : null;
+	}
 
+	@Override
+	public InputStream getMetaData(String groupId, String artifactId) throws IOException {
+		CachedContent content = getCachedMetaData(groupId, artifactId);
+		return content == null ? null : new ByteArrayInputStream(content.getContent());
+	}
+	
+	@Override
+	public InputStream getMetaData(Artifact artifact) throws IOException {
+		CachedContent content = getCachedMetaData(artifact);
+		return content == null ? null : new ByteArrayInputStream(content.getContent());
+	}
+	
+	/**
+	 * Returns the rendered group level metadata, it is only rendered again after a change to the artifact
+	 */
+	public CachedContent getCachedMetaData(String groupId, String artifactId) throws IOException {
+		return metaDataCache.get(groupId, artifactId, () -> super.getMetaData(groupId, artifactId));
+	}
+	
+	public CachedContent getCachedMetaData(Artifact artifact) throws IOException {
+		return metaDataCache.get(artifact, () -> super.getMetaData(artifact));
+	}
+	
+	/**
+	 * Returns the checksums of the artifact, they are only calculated if they are not yet known
+	 */
+	public Checksums getChecksums(Artifact artifact) throws IOException {
+		if (artifact instanceof ResourceArtifact) {
+			return checksumStore.getChecksums((ResourceArtifact) artifact);
+		}
+		InputStream input = artifact.getContent();
+		return input == null ? null : Checksums.calculate(input);
+	}
+	
+	/**
+	 * Returns the checksums of the artifact (or its pom) if they are already known or stored, returns null if they would have to be calculated
+	 */
+	public Checksums getStoredChecksums(Artifact artifact, boolean pom) throws IOException {
+		return artifact instanceof ResourceArtifact ? checksumStore.getStoredChecksums((ResourceArtifact) artifact, pom) : null;
+	}
+	
+	public Checksums getPomChecksums(Artifact artifact) throws IOException {
+		if (artifact instanceof ResourceArtifact) {
+			return checksumStore.getPomChecksums((ResourceArtifact) artifact);
+		}
+		InputStream input = artifact.getPom();
+		return input == null ? null : Checksums.calculate(input);
+	}
+	
 	public EventDispatcher getDispatcher() {
 		if (dispatcher == null) {
 			dispatcher = EventDispatcherFactory.getInstance().getEventDispatcher();
@@ -143,7 +853,139 @@ public class ResourceRepository extends BaseRepository implements WritableReposi
 		return dispatcher;
 	}
 	
+	/**
+	 * Subscribers of this dispatcher are always notified before create() returns, regardless of the event queue
+	 */
+	public EventDispatcher getInternalDispatcher() {
+		return internalDispatcher;
+	}
+	
+	public AsyncEventQueue getEventQueue() {
+		return eventQueue;
+	}
+	
+	/**
+	 * Delivers the events to the dispatcher asynchronously, the queue should be created for the dispatcher of this repository and started
+	 */
+	public void setEventQueue(AsyncEventQueue eventQueue) {
+		this.eventQueue = eventQueue;
+	}
+	
+	/**
+	 * Searches the classes (or packages) in the repository, recently changed artifacts are only found once the index has been updated in the background.
+	 * Returns null if there is no class index.
+	 */
+	public List<ClassIndex.Match> searchClasses(String query, boolean exact, boolean packages, int limit) {
+		return classIndex == null ? null : classIndex.search(query, exact, packages, limit);
+	}
+	
+	public ClassIndex getClassIndex() {
+		return classIndex;
+	}
+	
+	/**
+	 * Indexes the classes in the archives, this should be set before the first refresh so the persisted index can be used
+	 */
+	public void setClassIndex(ClassIndex classIndex) {
+		this.classIndex = classIndex;
+		if (classIndex != null) {
+			for (Map.Entry<String, ResourceArtifact> entry : artifacts.entrySet()) {
+				classIndex.add(entry.getKey(), entry.getValue());
+			}
+		}
+	}
+	
+	public BlobStore getBlobStore() {
+		return blobStore;
+	}
+	
+	/**
+	 * Stores the content of uploads in the blob store, this only works if the repository is on the local filesystem
+	 */
+	public void setBlobStore(BlobStore blobStore) {
+		this.blobStore = blobStore;
+		if (blobStore != null) {
+			metrics.register("blobs", blobStore.getStatistics());
+		}
+	}
+	
+	/**
+	 * Enables the blob store in the default location "{root}/.blobs", returns false if the repository is not on the local filesystem
+	 */
+	public boolean enableBlobStore() {
+		File file = getFile(root);
+		if (file == null) {
+			return false;
+		}
+		setBlobStore(new BlobStore(new File(file, ".blobs")));
+		return true;
+	}
+	
+	public HotArtifactCache getHotArtifactCache() {
+		return hotArtifactCache;
+	}
+	
+	public void setHotArtifactCache(HotArtifactCache hotArtifactCache) {
+		this.hotArtifactCache = hotArtifactCache;
+		if (hotArtifactCache != null) {
+			hotArtifactCache.subscribe(internalDispatcher);
+			metrics.register("artifacts", hotArtifactCache.getStatistics());
+		}
+	}
+	
+	public long getModificationCount() {
+		return modifications.get();
+	}
+	
+	public MavenMetrics getMetrics() {
+		return metrics;
+	}
+	
+	public void setMetrics(MavenMetrics metrics) {
+		this.metrics = metrics;
+		metrics.register("metadata", metaDataCache.getStatistics());
+		metrics.register("checksums", checksumStore.getStatistics());
+		if (blobStore != null) {
+			metrics.register("blobs", blobStore.getStatistics());
+		}
+		if (hotArtifactCache != null) {
+			metrics.register("artifacts", hotArtifactCache.getStatistics());
+		}
+	}
+	
 	public ResourceContainer<?> getRoot() {
 		return root;
 	}
+	
+	public long getReconcileInterval() {
+		return reconcileInterval;
+	}
+	
+	public void setReconcileInterval(long reconcileInterval) {
+		this.reconcileInterval = reconcileInterval;
+	}
+	
+	public boolean isPersistIndex() {
+		return persistIndex;
+	}
+	
+	public void setPersistIndex(boolean persistIndex) {
+		this.persistIndex = persistIndex;
+	}
+	
+	public boolean isLazy() {
+		return lazy;
+	}
+	
+	public void setLazy(boolean lazy) {
+		this.lazy = lazy;
+	}
+	
+	public long getSnapshotInterval() {
+		return snapshotInterval;
+	}
+	
+	public void setSnapshotInterval(long snapshotInterval) {
+		this.snapshotInterval = snapshotInterval;
+	}
 }
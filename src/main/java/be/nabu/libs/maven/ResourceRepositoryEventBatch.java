@@ -0,0 +1,40 @@
+/*
+* Copyright (C) 2016 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package be.nabu.libs.maven;
+
+import java.util.List;
+
+/**
+ * Fired by the asynchronous event queue after the events of a batch were delivered individually.
+ * Listeners that do expensive work per event (e.g. rebuilding an index) can subscribe to this instead and handle a bulk deploy in one go.
+ */
+public class ResourceRepositoryEventBatch {
+	
+	private List<Object> events;
+
+	public ResourceRepositoryEventBatch(List<Object> events) {
+		this.events = events;
+	}
+
+	/**
+	 * The create and delete events in the order they were fired
+	 */
+	public List<Object> getEvents() {
+		return events;
+	}
+}
@@ -0,0 +1,139 @@
+/*
+* Copyright (C) 2016 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package be.nabu.libs.maven;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+
+import be.nabu.libs.resources.ResourceUtils;
+
+/**
+ * Watches a file based repository root and marks the containers that change as dirty so they can be rescanned incrementally
+ */
+public class ResourceRepositoryWatcher implements Runnable, Closeable {
+
+	private ResourceRepository repository;
+	private Path root;
+	private WatchService service;
+	private Thread thread;
+	
+	private ResourceRepositoryWatcher(ResourceRepository repository, Path root) throws IOException {
+		this.repository = repository;
+		this.root = root;
+		this.service = FileSystems.getDefault().newWatchService();
+	}
+	
+	/**
+	 * Starts watching the root of the repository, returns null if the root is not on the local file system
+	 */
+	public static ResourceRepositoryWatcher watch(ResourceRepository repository) throws IOException {
+		URI uri = ResourceUtils.getURI(repository.getRoot());
+		if (uri == null || !"file".equals(uri.getScheme())) {
+			return null;
+		}
+		ResourceRepositoryWatcher watcher = new ResourceRepositoryWatcher(repository, new File(uri).toPath());
+		watcher.register(watcher.root);
+		watcher.thread = new Thread(watcher, "maven-repository-watcher");
+		watcher.thread.setDaemon(true);
+		watcher.thread.start();
+		return watcher;
+	}
+	
+	private void register(Path directory) throws IOException {
+		Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+				// hidden folders are used for internal bookkeeping
+				if (!dir.equals(root) && dir.getFileName().toString().startsWith(".")) {
+					return FileVisitResult.SKIP_SUBTREE;
+				}
+				dir.register(service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+	
+	private String relativize(Path path) {
+		return root.relativize(path).toString().replace(File.separatorChar, '/');
+	}
+
+	@Override
+	public void run() {
+		while (true) {
+			WatchKey key;
+			try {
+				key = service.take();
+			}
+			catch (InterruptedException e) {
+				break;
+			}
+			catch (ClosedWatchServiceException e) {
+				break;
+			}
+			Path directory = (Path) key.watchable();
+			for (WatchEvent<?> event : key.pollEvents()) {
+				// we missed events, fall back to a full scan
+				if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+					repository.markDirty();
+					continue;
+				}
+				Path child = directory.resolve((Path) event.context());
+				if (child.getFileName().toString().startsWith(".")) {
+					continue;
+				}
+				// a new directory has to be watched as well and may already contain files by the time we register it
+				if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(child)) {
+					try {
+						register(child);
+					}
+					catch (IOException e) {
+						// we can not watch it, make sure the next refresh at least picks up the current state
+						repository.markDirty();
+					}
+					repository.markDirty(relativize(child), true);
+				}
+				else {
+					// a deleted directory removes everything below it
+					repository.markDirty(relativize(directory), event.kind() == StandardWatchEventKinds.ENTRY_DELETE);
+				}
+			}
+			key.reset();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		service.close();
+		if (thread != null) {
+			thread.interrupt();
+		}
+	}
+}
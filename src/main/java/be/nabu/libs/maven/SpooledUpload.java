@@ -0,0 +1,178 @@
+/*
+* Copyright (C) 2016 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package be.nabu.libs.maven;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Enumeration;
+import java.util.Properties;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * An upload that is streamed to a temporary file, the checksums are calculated while writing.
+ * Once the coordinates are known, the file can be moved into place.
+ */
+public class SpooledUpload implements Closeable {
+	
+	private File file;
+	private Checksums checksums;
+	
+	private SpooledUpload(File file, Checksums checksums) {
+		this.file = file;
+		this.checksums = checksums;
+	}
+	
+	/**
+	 * Spools the input to a temporary file in the given directory (or the default temporary directory if none is given), the input is not closed
+	 */
+	public static SpooledUpload spool(InputStream input, File directory) throws IOException {
+		if (directory != null && !directory.exists() && !directory.mkdirs()) {
+			throw new IOException("Could not create upload directory: " + directory);
+		}
+		File file = File.createTempFile("upload", ".tmp", directory);
+		ChecksumCalculator calculator = new ChecksumCalculator();
+		try {
+			OutputStream output = new FileOutputStream(file);
+			try {
+				byte [] buffer = new byte[1024 * 64];
+				int read;
+				while ((read = input.read(buffer)) >= 0) {
+					output.write(buffer, 0, read);
+					calculator.write(buffer, 0, read);
+				}
+			}
+			finally {
+				output.close();
+			}
+		}
+		catch (IOException e) {
+			file.delete();
+			throw e;
+		}
+		return new SpooledUpload(file, calculator.getChecksums());
+	}
+	
+	/**
+	 * Reads the pom.properties from the central directory of the archive, returns null if there is none
+	 */
+	public Properties getPropertiesFromZip() throws IOException {
+		ZipFile zip;
+		try {
+			zip = new ZipFile(file);
+		}
+		catch (IOException e) {
+			// not a valid archive
+			return null;
+		}
+		try {
+			Enumeration<? extends ZipEntry> entries = zip.entries();
+			while (entries.hasMoreElements()) {
+				ZipEntry entry = entries.nextElement();
+				if (entry.getName().startsWith("META-INF/maven/") && entry.getName().endsWith("/pom.properties")) {
+					InputStream input = zip.getInputStream(entry);
+					try {
+						Properties properties = new Properties();
+						properties.load(input);
+						return properties;
+					}
+					finally {
+						input.close();
+					}
+				}
+			}
+			return null;
+		}
+		finally {
+			zip.close();
+		}
+	}
+	
+	/**
+	 * Reads the properties from an uploaded pom
+	 */
+	public Properties getPropertiesFromPom() throws IOException {
+		InputStream input = getInputStream();
+		try {
+			return RepositoryUtils.getPropertiesFromXML(input);
+		}
+		finally {
+			input.close();
+		}
+	}
+	
+	/**
+	 * Reads the packaging from an uploaded pom, the parser stops as soon as it is found
+	 */
+	public String getPackaging() throws IOException {
+		InputStream input = getInputStream();
+		try {
+			return PomParser.getPackaging(input);
+		}
+		finally {
+			input.close();
+		}
+	}
+	
+	/**
+	 * Moves the file to the target location, replacing whatever is there.
+	 * Returns false if it can not be moved atomically (for example because the target is on another file system), the upload should be copied instead.
+	 */
+	public boolean moveTo(File target) throws IOException {
+		try {
+			Files.move(file.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			return true;
+		}
+		catch (AtomicMoveNotSupportedException e) {
+			return false;
+		}
+	}
+	
+	public InputStream getInputStream() throws IOException {
+		return new BufferedInputStream(new FileInputStream(file));
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	public Checksums getChecksums() {
+		return checksums;
+	}
+	
+	public long getSize() {
+		return checksums.getSize();
+	}
+
+	@Override
+	public void close() {
+		// if it was moved into place, this does nothing
+		if (file.exists()) {
+			file.delete();
+		}
+	}
+}
@@ -0,0 +1,246 @@
+/*
+* Copyright (C) 2016 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package be.nabu.libs.maven;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+import be.nabu.libs.maven.api.Artifact;
+import be.nabu.utils.io.IOUtils;
+
+/**
+ * Fetches artifacts that are not available locally from an upstream maven repository and stores them in the local repository.
+ * Concurrent requests for the same artifact share a single upstream fetch and artifacts that upstream does not have are remembered for a while.
+ */
+public class UpstreamMirror {
+	
+	private URI upstream;
+	private ResourceRepository repository;
+	
+	// how long (in ms) we remember that upstream does not have an artifact
+	private long missTimeout = 1000l * 60 * 5;
+	private int connectTimeout = 10000, readTimeout = 60000;
+	
+	private Map<String, CompletableFuture<Artifact>> fetching = new ConcurrentHashMap<String, CompletableFuture<Artifact>>();
+	private Map<String, Long> misses = new ConcurrentHashMap<String, Long>();
+	
+	public UpstreamMirror(ResourceRepository repository, URI upstream) {
+		this.repository = repository;
+		String uri = upstream.toString();
+		this.upstream = uri.endsWith("/") ? upstream : URI.create(uri + "/");
+	}
+	
+	/**
+	 * Returns the artifact, it is fetched from upstream if it is not available locally. Returns null if upstream does not have it either.
+	 */
+	public Artifact get(String groupId, String artifactId, String version, boolean isTest) throws IOException {
+		Artifact artifact = repository.getArtifact(groupId, artifactId, version, isTest);
+		if (artifact != null) {
+			return artifact;
+		}
+		String key = CoordinateLocks.getCoordinate(groupId, artifactId, version) + (isTest ? ":tests" : "");
+		Long expires = misses.get(key);
+		if (expires != null) {
+			if (expires > System.currentTimeMillis()) {
+				return null;
+			}
+			misses.remove(key, expires);
+		}
+		CompletableFuture<Artifact> future = new CompletableFuture<Artifact>();
+		CompletableFuture<Artifact> current = fetching.putIfAbsent(key, future);
+		// someone else is already fetching it, wait for the result
+		if (current != null) {
+			return await(current);
+		}
+		try {
+			// it may have been stored while we were checking
+			artifact = repository.getArtifact(groupId, artifactId, version, isTest);
+			if (artifact == null) {
+				artifact = fetch(groupId, artifactId, version, isTest);
+				if (artifact == null) {
+					misses.put(key, System.currentTimeMillis() + missTimeout);
+				}
+			}
+			future.complete(artifact);
+			return artifact;
+		}
+		catch (IOException e) {
+			future.completeExceptionally(e);
+			throw e;
+		}
+		catch (RuntimeException e) {
+			future.completeExceptionally(e);
+			throw e;
+		}
+		finally {
+			fetching.remove(key, future);
+		}
+	}
+	
+	private Artifact await(CompletableFuture<Artifact> future) throws IOException {
+		try {
+			return future.get();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for upstream", e);
+		}
+		catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException("Could not fetch from upstream", e.getCause());
+		}
+	}
+	
+	private Artifact fetch(String groupId, String artifactId, String version, boolean isTest) throws IOException {
+		String base = groupId.replace('.', '/') + "/" + artifactId + "/" + version + "/" + artifactId + "-" + version;
+		String packaging;
+		byte [] pom = null;
+		if (isTest) {
+			packaging = "jar";
+		}
+		else {
+			// the pom tells us which artifact to fetch
+			pom = download(base + ".pom");
+			if (pom == null) {
+				return null;
+			}
+			verify(base + ".pom", Checksums.calculate(pom).getSha1());
+			packaging = PomParser.getPackaging(new ByteArrayInputStream(pom));
+			if (packaging.equals("pom")) {
+				return store(groupId, artifactId, version, "pom", new ByteArrayInputStream(pom), base + ".pom", isTest, null);
+			}
+			// other packagings like "bundle" or "maven-plugin" are jars
+			else if (!packaging.equals("war")) {
+				packaging = "jar";
+			}
+		}
+		String path = base + (isTest ? "-tests" : "") + "." + packaging;
+		HttpURLConnection connection = open(path);
+		try {
+			if (connection.getResponseCode() == 404) {
+				return null;
+			}
+			else if (connection.getResponseCode() != 200) {
+				throw new IOException("Upstream returned " + connection.getResponseCode() + " for " + path);
+			}
+			InputStream input = connection.getInputStream();
+			try {
+				// the pom is kept next to the archive, not every archive contains its pom
+				return store(groupId, artifactId, version, packaging, input, path, isTest, pom);
+			}
+			finally {
+				input.close();
+			}
+		}
+		finally {
+			connection.disconnect();
+		}
+	}
+	
+	private Artifact store(String groupId, String artifactId, String version, String packaging, InputStream input, String path, boolean isTest, byte [] pom) throws IOException {
+		SpooledUpload upload = repository.spool(input);
+		try {
+			verify(path, upload.getChecksums().getSha1());
+			return repository.create(groupId, artifactId, version, packaging, upload, isTest, pom);
+		}
+		finally {
+			upload.close();
+		}
+	}
+	
+	// if upstream publishes a checksum, it must match
+	private void verify(String path, String actual) throws IOException {
+		byte [] sha1 = download(path + ".sha1");
+		if (sha1 != null) {
+			String expected = new String(sha1, Charset.forName("ASCII")).trim().split("\\s+")[0];
+			if (!expected.equalsIgnoreCase(actual)) {
+				throw new IOException("The checksum of " + path + " does not match the one published upstream");
+			}
+		}
+	}
+	
+	private byte [] download(String path) throws IOException {
+		HttpURLConnection connection = open(path);
+		try {
+			if (connection.getResponseCode() == 404) {
+				return null;
+			}
+			else if (connection.getResponseCode() != 200) {
+				throw new IOException("Upstream returned " + connection.getResponseCode() + " for " + path);
+			}
+			InputStream input = connection.getInputStream();
+			try {
+				return IOUtils.toBytes(IOUtils.wrap(input));
+			}
+			finally {
+				input.close();
+			}
+		}
+		finally {
+			connection.disconnect();
+		}
+	}
+	
+	private HttpURLConnection open(String path) throws IOException {
+		URL url = upstream.resolve(path).toURL();
+		HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+		connection.setConnectTimeout(connectTimeout);
+		connection.setReadTimeout(readTimeout);
+		connection.setRequestMethod("GET");
+		return connection;
+	}
+	
+	public URI getUpstream() {
+		return upstream;
+	}
+
+	public long getMissTimeout() {
+		return missTimeout;
+	}
+
+	public void setMissTimeout(long missTimeout) {
+		this.missTimeout = missTimeout;
+	}
+
+	public int getConnectTimeout() {
+		return connectTimeout;
+	}
+
+	public void setConnectTimeout(int connectTimeout) {
+		this.connectTimeout = connectTimeout;
+	}
+
+	public int getReadTimeout() {
+		return readTimeout;
+	}
+
+	public void setReadTimeout(int readTimeout) {
+		this.readTimeout = readTimeout;
+	}
+}
@@ -0,0 +1,134 @@
+/*
+* Copyright (C) 2016 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+
+package be.nabu.libs.maven;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class MavenPathTest {
+	
+	@Test
+	public void testDottedGroup() {
+		MavenPath path = MavenPath.parse("com.example/app/1.0/app-1.0.jar");
+		assertEquals(MavenPath.Kind.ARCHIVE, path.getKind());
+		assertEquals("com.example", path.getGroupId());
+		assertEquals("app", path.getArtifactId());
+		assertEquals("1.0", path.getVersion());
+		assertEquals("jar", path.getExtension());
+		assertNull(path.getClassifier());
+		assertNull(path.getChecksum());
+		assertEquals("com.example/app/1.0/app-1.0.jar", path.getCanonicalPath());
+	}
+	
+	@Test
+	public void testSplitGroup() {
+		MavenPath path = MavenPath.parse("com/example/app/1.0/app-1.0.pom");
+		assertEquals(MavenPath.Kind.POM, path.getKind());
+		assertEquals("com.example", path.getGroupId());
+		assertEquals("app", path.getArtifactId());
+		assertEquals("1.0", path.getVersion());
+		assertEquals("com.example/app/1.0/app-1.0.pom", path.getCanonicalPath());
+	}
+	
+	@Test
+	public void testNavigation() {
+		assertEquals(MavenPath.Kind.GROUPS, MavenPath.parse("").getKind());
+		assertEquals(MavenPath.Kind.ARTIFACTS, MavenPath.parse("com.example").getKind());
+		assertEquals(MavenPath.Kind.VERSIONS, MavenPath.parse("com.example/app/").getKind());
+		assertEquals(MavenPath.Kind.VERSION, MavenPath.parse("com.example/app/1.0").getKind());
+		assertEquals(MavenPath.Kind.API, MavenPath.parse("-/listing/x").getKind());
+	}
+	
+	@Test
+	public void testMetaData() {
+		MavenPath path = MavenPath.parse("com.example/app/maven-metadata.xml.sha256");
+		assertEquals(MavenPath.Kind.METADATA, path.getKind());
+		assertEquals("com.example", path.getGroupId());
+		assertEquals("app", path.getArtifactId());
+		assertEquals(ChecksumAlgorithm.SHA256, path.getChecksum());
+		
+		// with a split groupId this is ambiguous
+		path = MavenPath.parse("com/example/app/maven-metadata.xml");
+		MavenPath alternative = path.getArtifactMetaData();
+		assertEquals("com.example", alternative.getGroupId());
+		assertEquals("app", alternative.getArtifactId());
+	}
+	
+	@Test
+	public void testClassifier() {
+		MavenPath path = MavenPath.parse("com/example/app/1.0/app-1.0-sources.jar");
+		assertEquals("sources", path.getClassifier());
+		assertTrue(path.isClassified());
+		assertFalse(path.isTest());
+		
+		path = MavenPath.parse("com/example/app/1.0/app-1.0-tests.jar");
+		assertEquals("tests", path.getClassifier());
+		assertTrue(path.isTest());
+		assertFalse(path.isClassified());
+	}
+	
+	@Test
+	public void testTimestampedSnapshot() {
+		MavenPath path = MavenPath.parse("com/example/app/1.0-SNAPSHOT/app-1.0-20240101.120000-1.jar");
+		assertEquals(MavenPath.Kind.ARCHIVE, path.getKind());
+		assertEquals("1.0-SNAPSHOT", path.getVersion());
+		assertNull(path.getClassifier());
+		
+		path = MavenPath.parse("com/example/app/1.0-SNAPSHOT/app-1.0-20240101.120000-12-sources.jar");
+		assertEquals("sources", path.getClassifier());
+		assertTrue(path.isClassified());
+		
+		path = MavenPath.parse("com/example/app/1.0-SNAPSHOT/app-1.0-20240101.120000-1-tests.jar");
+		assertTrue(path.isTest());
+		
+		path = MavenPath.parse("com/example/app/1.0-SNAPSHOT/app-1.0-SNAPSHOT-javadoc.jar");
+		assertEquals("javadoc", path.getClassifier());
+	}
+	
+	@Test
+	public void testSignature() {
+		MavenPath path = MavenPath.parse("com/example/app/1.0/app-1.0.pom.asc");
+		assertEquals(MavenPath.Kind.SIGNATURE, path.getKind());
+		assertEquals("pom", path.getExtension());
+		
+		path = MavenPath.parse("com/example/app/1.0-SNAPSHOT/app-1.0-20240101.120000-1-sources.jar.asc");
+		assertEquals(MavenPath.Kind.SIGNATURE, path.getKind());
+		assertEquals("sources", path.getClassifier());
+	}
+	
+	@Test
+	public void testChecksum() {
+		MavenPath path = MavenPath.parse("com/example/app/1.0/app-1.0-tests.jar.sha1");
+		assertEquals(MavenPath.Kind.ARCHIVE, path.getKind());
+		assertEquals(ChecksumAlgorithm.SHA1, path.getChecksum());
+		assertTrue(path.isTest());
+		
+		path = MavenPath.parse("com/example/app/1.0/app-1.0.pom.sha512");
+		assertEquals(MavenPath.Kind.POM, path.getKind());
+		assertEquals(ChecksumAlgorithm.SHA512, path.getChecksum());
+		
+		path = MavenPath.parse("com/example/app/1.0-SNAPSHOT/app-1.0-20240101.120000-1-sources.jar.md5");
+		assertEquals(ChecksumAlgorithm.MD5, path.getChecksum());
+		assertEquals("sources", path.getClassifier());
+	}
+}
@@ -0,0 +1,247 @@
+/*
+* Copyright (C) 2016 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+
+package be.nabu.libs.maven;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Runs a primary and a replica in process on localhost and checks what reaches the replica
+ */
+public class ReplicationTest {
+	
+	private File primaryRoot, replicaRoot;
+	private int replicaPort;
+	private List<MavenServer> servers = new ArrayList<MavenServer>();
+	
+	@Before
+	public void setUp() throws IOException {
+		primaryRoot = Files.createTempDirectory("primary").toFile();
+		replicaRoot = Files.createTempDirectory("replica").toFile();
+		replicaPort = getFreePort();
+	}
+	
+	@After
+	public void tearDown() throws Exception {
+		for (MavenServer server : servers) {
+			server.stop();
+		}
+		TestArtifacts.delete(primaryRoot);
+		TestArtifacts.delete(replicaRoot);
+	}
+	
+	@Test
+	public void testEmptyPrimaryDoesNotWipeReplica() throws Exception {
+		start(replicaPort, "--root=" + replicaRoot.toURI(), "--deletes=true");
+		upload(replicaPort, "test.group", "existing", "1.0");
+		String existing = TestArtifacts.path("test.group", "existing", "1.0", "jar");
+		
+		// the primary does not know the existing artifact, it must not delete it on the replica
+		int primaryPort = getFreePort();
+		MavenServer primary = start(primaryPort, "--root=" + primaryRoot.toURI(), "--replicas=http://localhost:" + replicaPort + "/");
+		upload(primaryPort, "test.group", "created", "1.0");
+		awaitStatus(replicaPort, TestArtifacts.path("test.group", "created", "1.0", "jar"), 200);
+		assertEquals(200, request("GET", replicaPort, existing, null));
+		
+		// nor after a restart
+		stop(primary);
+		primaryPort = getFreePort();
+		start(primaryPort, "--root=" + primaryRoot.toURI(), "--replicas=http://localhost:" + replicaPort + "/");
+		upload(primaryPort, "test.group", "restarted", "1.0");
+		awaitStatus(replicaPort, TestArtifacts.path("test.group", "restarted", "1.0", "jar"), 200);
+		assertEquals(200, request("GET", replicaPort, existing, null));
+		assertEquals(200, request("GET", replicaPort, TestArtifacts.path("test.group", "created", "1.0", "jar"), null));
+	}
+	
+	@Test
+	public void testOutboxSurvivesRestart() throws Exception {
+		// the replica is down when the artifact is uploaded
+		int primaryPort = getFreePort();
+		MavenServer primary = start(primaryPort, "--root=" + primaryRoot.toURI(), "--replicas=http://localhost:" + replicaPort + "/");
+		upload(primaryPort, "test.group", "queued", "1.0");
+		stop(primary);
+		
+		start(replicaPort, "--root=" + replicaRoot.toURI(), "--deletes=true");
+		upload(replicaPort, "test.group", "existing", "1.0");
+		start(getFreePort(), "--root=" + primaryRoot.toURI(), "--replicas=http://localhost:" + replicaPort + "/");
+		awaitStatus(replicaPort, TestArtifacts.path("test.group", "queued", "1.0", "jar"), 200);
+		assertEquals(200, request("GET", replicaPort, TestArtifacts.path("test.group", "existing", "1.0", "jar"), null));
+	}
+	
+	@Test
+	public void testDeletesAreReplicated() throws Exception {
+		start(replicaPort, "--root=" + replicaRoot.toURI(), "--deletes=true");
+		int primaryPort = getFreePort();
+		start(primaryPort, "--root=" + primaryRoot.toURI(), "--replicas=http://localhost:" + replicaPort + "/", "--deletes=true");
+		upload(primaryPort, "test.group", "kept", "1.0");
+		upload(primaryPort, "test.group", "deleted", "1.0");
+		String deleted = TestArtifacts.path("test.group", "deleted", "1.0", "jar");
+		awaitStatus(replicaPort, deleted, 200);
+		
+		assertEquals(200, request("DELETE", primaryPort, deleted, null));
+		awaitStatus(replicaPort, deleted, 404);
+		assertEquals(200, request("GET", replicaPort, TestArtifacts.path("test.group", "kept", "1.0", "jar"), null));
+	}
+	
+	@Test
+	public void testDeleteIsDisabledByDefault() throws Exception {
+		start(replicaPort, "--root=" + replicaRoot.toURI());
+		upload(replicaPort, "test.group", "protected", "1.0");
+		String path = TestArtifacts.path("test.group", "protected", "1.0", "jar");
+		assertEquals(403, request("DELETE", replicaPort, path, null));
+		assertEquals(200, request("GET", replicaPort, path, null));
+	}
+	
+	@Test
+	public void testReplaceIsNotReplicatedAsDelete() throws Exception {
+		start(replicaPort, "--root=" + replicaRoot.toURI(), "--deletes=true");
+		int primaryPort = getFreePort();
+		start(primaryPort, "--root=" + primaryRoot.toURI(), "--replicas=http://localhost:" + replicaPort + "/");
+		String path = TestArtifacts.path("test.group", "replaced", "1.0", "jar");
+		upload(primaryPort, "test.group", "replaced", "1.0");
+		byte [] replacement = TestArtifacts.jar("test.group", "replaced", "1.0", "second");
+		assertEquals(200, request("PUT", primaryPort, path, replacement));
+		
+		// the delete of the old version must not overtake the new one
+		long timeout = System.currentTimeMillis() + 30000;
+		while (!Arrays.equals(replacement, get(replicaPort, path))) {
+			if (System.currentTimeMillis() > timeout) {
+				throw new AssertionError("The replacement never reached the replica");
+			}
+			Thread.sleep(100);
+		}
+		Thread.sleep(1000);
+		assertEquals(200, request("GET", replicaPort, path, null));
+	}
+	
+	private MavenServer start(final int port, String...arguments) throws Exception {
+		List<String> list = new ArrayList<String>(Arrays.asList(arguments));
+		list.add("--port=" + port);
+		list.add("--watch=false");
+		list.add("--prefetchThreads=0");
+		final MavenServer server = new MavenServer(list.toArray(new String[list.size()]));
+		servers.add(server);
+		// starting the http server blocks
+		Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					server.start();
+				}
+				catch (Exception e) {
+					e.printStackTrace();
+				}
+			}
+		});
+		thread.setDaemon(true);
+		thread.start();
+		long timeout = System.currentTimeMillis() + 30000;
+		while (true) {
+			try {
+				new Socket("localhost", port).close();
+				return server;
+			}
+			catch (IOException e) {
+				if (System.currentTimeMillis() > timeout) {
+					throw new IOException("The server on port " + port + " did not start", e);
+				}
+				Thread.sleep(50);
+			}
+		}
+	}
+	
+	private void stop(MavenServer server) throws Exception {
+		server.stop();
+		servers.remove(server);
+	}
+	
+	private static void upload(int port, String groupId, String artifactId, String version) throws IOException {
+		assertEquals(200, request("PUT", port, TestArtifacts.path(groupId, artifactId, version, "jar"), TestArtifacts.jar(groupId, artifactId, version, artifactId)));
+	}
+	
+	private static void awaitStatus(int port, String path, int code) throws Exception {
+		long timeout = System.currentTimeMillis() + 30000;
+		while (request("GET", port, path, null) != code) {
+			if (System.currentTimeMillis() > timeout) {
+				throw new AssertionError("Expected " + code + " for " + path);
+			}
+			Thread.sleep(100);
+		}
+	}
+	
+	private static byte [] get(int port, String path) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + port + "/" + path).openConnection();
+		try {
+			if (connection.getResponseCode() != 200) {
+				return null;
+			}
+			return TestArtifacts.read(connection.getInputStream());
+		}
+		finally {
+			connection.disconnect();
+		}
+	}
+	
+	private static int request(String method, int port, String path, byte [] content) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + port + "/" + path).openConnection();
+		connection.setRequestMethod(method);
+		try {
+			if (content != null) {
+				connection.setDoOutput(true);
+				connection.setFixedLengthStreamingMode(content.length);
+				OutputStream output = connection.getOutputStream();
+				try {
+					output.write(content);
+				}
+				finally {
+					output.close();
+				}
+			}
+			return connection.getResponseCode();
+		}
+		finally {
+			connection.disconnect();
+		}
+	}
+	
+	private static int getFreePort() throws IOException {
+		ServerSocket socket = new ServerSocket(0);
+		try {
+			return socket.getLocalPort();
+		}
+		finally {
+			socket.close();
+		}
+	}
+}
@@ -0,0 +1,257 @@
+/*
+* Copyright (C) 2016 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+
+package be.nabu.libs.maven;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import be.nabu.libs.maven.api.Artifact;
+import be.nabu.libs.resources.ResourceUtils;
+
+/**
+ * Runs the mirror against a stand-in upstream that serves fixed content
+ */
+public class UpstreamMirrorTest {
+	
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	
+	private HttpServer upstream;
+	// the content per path, a path that is not in here is a 404
+	private Map<String, byte []> content = new ConcurrentHashMap<String, byte []>();
+	// paths that fail with a 500
+	private Map<String, Boolean> failing = new ConcurrentHashMap<String, Boolean>();
+	private AtomicInteger requests = new AtomicInteger();
+	// the requests per path
+	private Map<String, AtomicInteger> gets = new ConcurrentHashMap<String, AtomicInteger>();
+	// if set, a request for the path is only answered once the latch is released
+	private Map<String, CountDownLatch> blocking = new ConcurrentHashMap<String, CountDownLatch>();
+	private CountDownLatch arrived = new CountDownLatch(1);
+	private File root;
+	private ResourceRepository repository;
+	private UpstreamMirror mirror;
+	
+	@Before
+	public void setUp() throws Exception {
+		upstream = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		upstream.createContext("/", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				requests.incrementAndGet();
+				String path = exchange.getRequestURI().getPath().substring(1);
+				gets.computeIfAbsent(path, key -> new AtomicInteger()).incrementAndGet();
+				CountDownLatch latch = blocking.get(path);
+				if (latch != null) {
+					arrived.countDown();
+					try {
+						latch.await(10, TimeUnit.SECONDS);
+					}
+					catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+				byte [] bytes = content.get(path);
+				if (failing.containsKey(path)) {
+					exchange.sendResponseHeaders(500, -1);
+				}
+				else if (bytes == null) {
+					exchange.sendResponseHeaders(404, -1);
+				}
+				else {
+					exchange.sendResponseHeaders(200, bytes.length);
+					OutputStream output = exchange.getResponseBody();
+					output.write(bytes);
+					output.close();
+				}
+				exchange.close();
+			}
+		});
+		upstream.start();
+		root = Files.createTempDirectory("mirror").toFile();
+		repository = new ResourceRepository(ResourceUtils.mkdir(root.toURI(), null));
+		repository.refresh();
+		mirror = new UpstreamMirror(repository, new URI("http://localhost:" + upstream.getAddress().getPort() + "/"));
+	}
+	
+	@After
+	public void tearDown() {
+		upstream.stop(0);
+		TestArtifacts.delete(root);
+	}
+	
+	@Test
+	public void testMiss() throws IOException {
+		assertNull(mirror.get("test.group", "missing", "1.0", false));
+		int afterFirst = requests.get();
+		// the miss is remembered, upstream is not asked again
+		assertNull(mirror.get("test.group", "missing", "1.0", false));
+		assertEquals(afterFirst, requests.get());
+	}
+	
+	@Test
+	public void testFetch() throws IOException {
+		byte [] jar = publish("fetched", true);
+		Artifact artifact = mirror.get("test.group", "fetched", "1.0", false);
+		assertNotNull(artifact);
+		assertArrayEquals(jar, TestArtifacts.read(artifact.getContent()));
+		assertNotNull(repository.getArtifact("test.group", "fetched", "1.0", false));
+		
+		// it is served locally from now on
+		int afterFirst = requests.get();
+		assertNotNull(mirror.get("test.group", "fetched", "1.0", false));
+		assertEquals(afterFirst, requests.get());
+	}
+	
+	@Test
+	public void testPomIsKept() throws IOException {
+		publish("gradle", true);
+		byte [] pom = content.get(TestArtifacts.path("test.group", "gradle", "1.0", "pom"));
+		// the jar does not contain a pom, the one from upstream is served
+		Artifact artifact = mirror.get("test.group", "gradle", "1.0", false);
+		assertNotNull(artifact);
+		assertArrayEquals(pom, TestArtifacts.read(artifact.getPom()));
+		assertArrayEquals(pom, TestArtifacts.read(repository.getArtifact("test.group", "gradle", "1.0", false).getPom()));
+	}
+	
+	@Test
+	public void testConcurrentRequestsShareOneFetch() throws Exception {
+		byte [] jar = publish("popular", true);
+		String path = TestArtifacts.path("test.group", "popular", "1.0", "jar");
+		CountDownLatch release = new CountDownLatch(1);
+		blocking.put(path, release);
+		int amount = 8;
+		ExecutorService executor = Executors.newFixedThreadPool(amount);
+		try {
+			List<Future<Artifact>> results = new ArrayList<Future<Artifact>>();
+			for (int i = 0; i < amount; i++) {
+				results.add(executor.submit(new Callable<Artifact>() {
+					@Override
+					public Artifact call() throws Exception {
+						return mirror.get("test.group", "popular", "1.0", false);
+					}
+				}));
+			}
+			// hold the upstream response until the other requests are waiting for it
+			assertTrue(arrived.await(10, TimeUnit.SECONDS));
+			Thread.sleep(200);
+			release.countDown();
+			for (Future<Artifact> result : results) {
+				Artifact artifact = result.get(10, TimeUnit.SECONDS);
+				assertNotNull(artifact);
+				assertArrayEquals(jar, TestArtifacts.read(artifact.getContent()));
+			}
+		}
+		finally {
+			release.countDown();
+			executor.shutdownNow();
+		}
+		assertEquals(1, gets.get(path).get());
+		assertEquals(1, gets.get(TestArtifacts.path("test.group", "popular", "1.0", "pom")).get());
+	}
+	
+	@Test
+	public void testChecksumMismatch() throws IOException {
+		publish("corrupt", false);
+		content.put(TestArtifacts.path("test.group", "corrupt", "1.0", "jar.sha1"), "0000000000000000000000000000000000000000".getBytes(UTF8));
+		try {
+			mirror.get("test.group", "corrupt", "1.0", false);
+			fail("A checksum mismatch should fail");
+		}
+		catch (IOException e) {
+			// expected
+		}
+		assertNull(repository.getArtifact("test.group", "corrupt", "1.0", false));
+	}
+	
+	@Test
+	public void testUpstreamError() throws IOException {
+		publish("unavailable", true);
+		failing.put(TestArtifacts.path("test.group", "unavailable", "1.0", "jar"), true);
+		try {
+			mirror.get("test.group", "unavailable", "1.0", false);
+			fail("An upstream error should fail");
+		}
+		catch (IOException e) {
+			// expected
+		}
+		assertNull(repository.getArtifact("test.group", "unavailable", "1.0", false));
+		
+		// an error is not remembered as a miss, once upstream recovers the artifact is fetched
+		failing.clear();
+		assertNotNull(mirror.get("test.group", "unavailable", "1.0", false));
+	}
+	
+	// puts the pom and the jar (optionally with its checksum) upstream, returns the jar
+	private byte [] publish(String artifactId, boolean checksum) throws IOException {
+		byte [] jar = TestArtifacts.jar("test.group", artifactId, "1.0", artifactId);
+		content.put(TestArtifacts.path("test.group", artifactId, "1.0", "pom"), ("<project xmlns=\"http://maven.apache.org/POM/4.0.0\">"
+			+ "<modelVersion>4.0.0</modelVersion><groupId>test.group</groupId><artifactId>" + artifactId + "</artifactId><version>1.0</version><packaging>jar</packaging>"
+			+ "</project>").getBytes(UTF8));
+		content.put(TestArtifacts.path("test.group", artifactId, "1.0", "jar"), jar);
+		if (checksum) {
+			content.put(TestArtifacts.path("test.group", artifactId, "1.0", "jar.sha1"), sha1(jar).getBytes(UTF8));
+		}
+		return jar;
+	}
+	
+	private static String sha1(byte [] bytes) {
+		try {
+			StringBuilder builder = new StringBuilder();
+			for (byte single : MessageDigest.getInstance("SHA-1").digest(bytes)) {
+				builder.append(String.format("%02x", single & 0xff));
+			}
+			return builder.toString();
+		}
+		catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		}
+	}
+}